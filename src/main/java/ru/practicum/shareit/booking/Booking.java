@@ -1,6 +1,5 @@
 package ru.practicum.shareit.booking;
 
-import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import ru.practicum.shareit.item.model.Item;
@@ -14,10 +13,24 @@ import java.time.LocalDateTime;
  */
 @Entity
 @Table(name = "bookings")
+@NamedEntityGraph(name = Booking.LISTING_GRAPH,
+        attributeNodes = {
+                @NamedAttributeNode(value = "item", subgraph = "item"),
+                @NamedAttributeNode("booker")
+        },
+        subgraphs = {
+                @NamedSubgraph(name = "item", attributeNodes = {
+                        @NamedAttributeNode("owner"),
+                        @NamedAttributeNode(value = "request", subgraph = "request")
+                }),
+                @NamedSubgraph(name = "request", attributeNodes = @NamedAttributeNode("requestor"))
+        })
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
 public class Booking {
+    //Граф для списков бронирований: все данные для BookingDto загружаются одним запросом
+    public static final String LISTING_GRAPH = "Booking.listing";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private long id;                //уникальный идентификатор бронирования;
@@ -39,4 +52,23 @@ public class Booking {
     @Enumerated(EnumType.STRING)
     private BookingStatus status;   //статус бронирования.
                                     //Может принимать одно из следующих значений: WAITING, APPROVED, REJECTED, CANCELED
+
+    @Column(name = "owner_id")
+    private Long ownerId;           //владелец вещи, копия items.owner_id для запросов владельца без соединения.
+
+    public Booking(long id, LocalDateTime start, LocalDateTime end, Item item, User booker, BookingStatus status) {
+        this.id = id;
+        this.start = start;
+        this.end = end;
+        this.item = item;
+        this.booker = booker;
+        this.status = status;
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        if (item != null && item.getOwner() != null) {
+            ownerId = item.getOwner().getId();
+        }
+    }
 }
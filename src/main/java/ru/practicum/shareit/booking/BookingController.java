@@ -1,16 +1,26 @@
 package ru.practicum.shareit.booking;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Slice;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.practicum.shareit.booking.dto.BookingBatchResultDto;
 import ru.practicum.shareit.booking.dto.BookingDto;
+import ru.practicum.shareit.booking.dto.BookingHoldDto;
 import ru.practicum.shareit.booking.dto.BookingInDto;
 import ru.practicum.shareit.booking.service.BookingService;
+import ru.practicum.shareit.paging.SliceResponse;
 
 import javax.validation.Valid;
 import javax.validation.constraints.Positive;
 import javax.validation.constraints.PositiveOrZero;
-import java.util.Collection;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Контроллер для работы с бронированиями
@@ -19,6 +29,8 @@ import java.util.Collection;
 @Validated
 @RequestMapping(path = "/bookings")
 public class BookingController {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final BookingService bookingService;
 
     @Autowired
@@ -38,6 +50,42 @@ public class BookingController {
         return bookingService.add(bookingInDto, userId);
     }
 
+    /**
+     * Добавление пакета запросов на бронирование.
+     * Эндпоинт — POST /bookings/batch?atomic={atomic}.
+     * При atomic=true (по умолчанию) ошибка в любом бронировании отклоняет весь пакет,
+     * при atomic=false сохраняются корректные бронирования, а для остальных возвращается причина отказа.
+     */
+    @PostMapping("/batch")
+    public List<BookingBatchResultDto> postBookings(@RequestBody List<BookingInDto> bookingInDtos,
+                                                    @RequestParam(defaultValue = "true", required = false)
+                                                        Boolean atomic,
+                                                    @RequestHeader("X-Sharer-User-Id") long userId) {
+        return bookingService.addAll(bookingInDtos, userId, atomic);
+    }
+
+    /**
+     * Кратковременное удержание вещи на период будущего бронирования.
+     * Эндпоинт — POST /bookings/holds, в теле передаются вещь и период.
+     * Возвращает токен, который передаётся в поле holdToken при POST /bookings: пока удержание действует,
+     * другие пользователи не могут удержать или забронировать вещь на пересекающийся период (409 и 400).
+     */
+    @PostMapping("/holds")
+    public BookingHoldDto postHold(@RequestBody BookingInDto bookingInDto,
+                                   @RequestHeader("X-Sharer-User-Id") long userId) {
+        return bookingService.hold(bookingInDto, userId);
+    }
+
+    /**
+     * Снятие удержания до истечения его срока.
+     * Эндпоинт — DELETE /bookings/holds/{token}.
+     */
+    @DeleteMapping("/holds/{token}")
+    public void deleteHold(@PathVariable String token,
+                           @RequestHeader("X-Sharer-User-Id") long userId) {
+        bookingService.releaseHold(token, userId);
+    }
+
     /**
      * Подтверждение или отклонение запроса на бронирование. Может быть выполнено только владельцем вещи.
      * Затем статус бронирования становится либо APPROVED, либо REJECTED.
@@ -51,6 +99,18 @@ public class BookingController {
         return bookingService.updateStatus(bookingId, userId, approved);
     }
 
+    /**
+     * Подтверждение или отклонение нескольких запросов на бронирование владельцем вещей.
+     * Эндпоинт — PATCH /bookings/owner/status?approved={approved}, в теле передаётся список идентификаторов
+     * бронирований. Проверки те же, что и для одного бронирования, при ошибке не меняется ни одно бронирование.
+     */
+    @PatchMapping("/owner/status")
+    public List<BookingDto> updateStatuses(@RequestBody List<Long> bookingIds,
+                                           @RequestParam Boolean approved,
+                                           @RequestHeader("X-Sharer-User-Id") Long userId) {
+        return bookingService.updateStatuses(bookingIds, userId, approved);
+    }
+
     /**
      * Получение данных о конкретном бронировании (включая его статус). Может быть выполнено либо автором бронирования,
      * либо владельцем вещи, к которой относится бронирование.
@@ -73,9 +133,13 @@ public class BookingController {
      *      WAITING (англ. «ожидающие подтверждения»),
      *      REJECTED (англ. «отклонённые»).
      * Бронирования должны возвращаться отсортированными по дате от более новых к более старым.
+     * Вместо from можно передать курсор after из заголовка X-Next-Cursor предыдущего ответа.
+     * Заголовок X-Has-More сообщает, есть ли следующая порция, X-Total-Count передаётся только при total=true.
+     * Необязательные параметры start и end (ISO, например 2023-03-01T00:00:00) оставляют бронирования,
+     * начинающиеся в периоде [start, end), и сочетаются с state и постраничным выводом.
      */
     @GetMapping
-    public Collection<BookingDto> findUserBookings(
+    public ResponseEntity<List<BookingDto>> findUserBookings(
             @RequestParam(defaultValue = "0",required = false)
             @PositiveOrZero(message = "From должно быть положительным числом или 0")
                 Integer from,
@@ -84,19 +148,30 @@ public class BookingController {
                 Integer size,
             @RequestParam(defaultValue = "ALL", required = false)
                 String state,
+            @RequestParam(required = false)
+                String after,
+            @RequestParam(defaultValue = "false", required = false)
+                Boolean total,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                LocalDateTime start,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                LocalDateTime end,
             @RequestHeader("X-Sharer-User-Id")
                 long userId) {
-        return bookingService.findUserBookings(state, userId, from, size);
+        Slice<BookingDto> bookings = after != null
+                ? bookingService.findUserBookingsAfter(state, userId, after, size, start, end)
+                : bookingService.findUserBookings(state, userId, from, size, start, end);
+        return withNextCursor(bookings, total ? bookingService.countUserBookings(state, userId, start, end) : null);
     }
 
     /**
      * Получение списка бронирований для всех вещей текущего пользователя.
      * Эндпоинт — GET /bookings/owner?state={state}.
      * Этот запрос имеет смысл для владельца хотя бы одной вещи.
-     * Работа параметра state аналогична его работе в предыдущем сценарии.
+     * Работа параметров state, after, start и end аналогична их работе в предыдущем сценарии.
      */
     @GetMapping("/owner")
-    public Collection<BookingDto> findOwnerBookings(
+    public ResponseEntity<List<BookingDto>> findOwnerBookings(
             @RequestParam(defaultValue = "0",required = false)
             @PositiveOrZero(message = "From должно быть положительным числом или 0")
                 Integer from,
@@ -105,8 +180,82 @@ public class BookingController {
                 Integer size,
             @RequestParam(defaultValue = "ALL", required = false)
                 String state,
+            @RequestParam(required = false)
+                String after,
+            @RequestParam(defaultValue = "false", required = false)
+                Boolean total,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                LocalDateTime start,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                LocalDateTime end,
             @RequestHeader("X-Sharer-User-Id")
                 long userId) {
-        return bookingService.findOwnerBookings(state, userId, from, size);
+        Slice<BookingDto> bookings = after != null
+                ? bookingService.findOwnerBookingsAfter(state, userId, after, size, start, end)
+                : bookingService.findOwnerBookings(state, userId, from, size, start, end);
+        return withNextCursor(bookings, total ? bookingService.countOwnerBookings(state, userId, start, end) : null);
+    }
+
+    /**
+     * Бронирования вещей текущего пользователя, ожидающие подтверждения (WAITING), от более новых к более старым.
+     * Эндпоинт — GET /bookings/owner/inbox?after={after}&size={size}.
+     * Список читается из отдельной таблицы ожидающих бронирований и не затрагивает историю бронирований.
+     * Следующая порция запрашивается по курсору after из заголовка X-Next-Cursor предыдущего ответа.
+     */
+    @GetMapping("/owner/inbox")
+    public ResponseEntity<List<BookingDto>> findOwnerInbox(
+            @RequestParam(required = false)
+                String after,
+            @RequestParam(defaultValue = "10",required = false)
+            @Positive(message = "Size должно быть положительным числом")
+                Integer size,
+            @RequestHeader("X-Sharer-User-Id")
+                long userId) {
+        return withNextCursor(bookingService.findOwnerInbox(userId, after, size), null);
+    }
+
+    /**
+     * Количество бронирований текущего пользователя по каждому состоянию state (ALL, CURRENT, PAST, FUTURE,
+     * WAITING, REJECTED) для счётчиков в интерфейсе вместо отдельного запроса GET /bookings на каждое состояние.
+     * Эндпоинт — GET /bookings/counts.
+     */
+    @GetMapping("/counts")
+    public Map<BookingSearchStatus, Long> countUserBookings(@RequestHeader("X-Sharer-User-Id") long userId) {
+        return bookingService.countUserBookingsByState(userId);
+    }
+
+    /**
+     * Количество бронирований вещей текущего пользователя по каждому состоянию.
+     * Эндпоинт — GET /bookings/owner/counts.
+     */
+    @GetMapping("/owner/counts")
+    public Map<BookingSearchStatus, Long> countOwnerBookings(@RequestHeader("X-Sharer-User-Id") long userId) {
+        return bookingService.countOwnerBookingsByState(userId);
+    }
+
+    /**
+     * Выгрузка всей истории бронирований вещей текущего пользователя для отчётов.
+     * Эндпоинт — GET /bookings/owner/export.
+     * Ответ в формате NDJSON (application/x-ndjson): по одному бронированию в строке, от более новых к более старым.
+     * Ответ передаётся по мере чтения из базы, без постраничного вывода.
+     */
+    @GetMapping(value = "/owner/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportOwnerBookings(@RequestHeader("X-Sharer-User-Id") long userId) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(bookingService.exportOwnerBookings(userId));
+    }
+
+    /**
+     * Если есть следующая порция, в заголовке X-Next-Cursor передаётся курсор для её получения
+     */
+    private ResponseEntity<List<BookingDto>> withNextCursor(Slice<BookingDto> bookings, Long total) {
+        ResponseEntity.BodyBuilder response = SliceResponse.builder(bookings, total);
+
+        if (bookings.hasNext() && bookings.hasContent()) {
+            BookingDto last = bookings.getContent().get(bookings.getNumberOfElements() - 1);
+            response.header(NEXT_CURSOR_HEADER, new BookingCursor(last.getStart(), last.getId()).encode());
+        }
+        return response.body(bookings.getContent());
     }
 }
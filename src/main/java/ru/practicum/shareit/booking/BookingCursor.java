@@ -0,0 +1,37 @@
+package ru.practicum.shareit.booking;
+
+import lombok.Data;
+import ru.practicum.shareit.errorHandle.exception.ValidationException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Курсор для постраничного вывода бронирований по ключу (start_date, id) последней выданной записи.
+ * Клиенту передаётся в непрозрачном виде (base64url).
+ */
+@Data
+public class BookingCursor {
+    private static final String SEPARATOR = "|";
+
+    private final LocalDateTime start;  //дата начала последнего выданного бронирования;
+    private final long id;              //идентификатор последнего выданного бронирования.
+
+    public String encode() {
+        String raw = start + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static BookingCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int pos = raw.lastIndexOf(SEPARATOR);
+            return new BookingCursor(LocalDateTime.parse(raw.substring(0, pos)),
+                                     Long.parseLong(raw.substring(pos + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new ValidationException("Некорректный курсор: " + cursor);
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package ru.practicum.shareit.booking;
 
 import ru.practicum.shareit.booking.dto.BookingDto;
+import ru.practicum.shareit.booking.dto.BookingHoldDto;
+import ru.practicum.shareit.booking.service.BookingHolds;
 import ru.practicum.shareit.item.ItemMapper;
+import ru.practicum.shareit.outbox.OutboxEvent;
+import ru.practicum.shareit.outbox.OutboxEventType;
 import ru.practicum.shareit.user.UserMapper;
 
 public class BookingMapper {
@@ -39,4 +43,25 @@ public class BookingMapper {
 
         return booking;
     }
+
+    public static BookingHoldDto toBookingHoldDto(BookingHolds.Hold hold) {
+        return BookingHoldDto.builder()
+                .token(hold.getToken())
+                .itemId(hold.getItemId())
+                .start(hold.getStart())
+                .end(hold.getEnd())
+                .expires(hold.getExpires())
+                .build();
+    }
+
+    public static OutboxEvent toOutboxEvent(Booking booking, OutboxEventType type) {
+        OutboxEvent event = new OutboxEvent();
+        event.setType(type);
+        event.setBookingId(booking.getId());
+        event.setItemId(booking.getItem().getId());
+        event.setOwnerId(booking.getItem().getOwner().getId());
+        event.setBookerId(booking.getBooker().getId());
+
+        return event;
+    }
 }
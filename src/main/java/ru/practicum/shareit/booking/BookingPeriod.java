@@ -0,0 +1,16 @@
+package ru.practicum.shareit.booking;
+
+import java.time.LocalDateTime;
+
+/**
+ * Проекция бронирования, содержащая только период аренды
+ */
+public interface BookingPeriod {
+    Long getId();               //уникальный идентификатор бронирования;
+
+    Long getItemId();           //идентификатор вещи;
+
+    LocalDateTime getStart();   //дата начала бронирования;
+
+    LocalDateTime getEnd();     //дата конца бронирования.
+}
@@ -0,0 +1,40 @@
+package ru.practicum.shareit.booking;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Отбор бронирований для списков: роль пользователя, состояние и необязательные фильтры по вещи и датам начала.
+ * Форма отбора (роль, состояние и заданные фильтры) определяет текст запроса, значения передаются параметрами.
+ */
+@Getter
+@Builder
+public class BookingQuery {
+    private final boolean byOwner;              //true - бронирования вещей пользователя, false - самого пользователя
+    private final long userId;                  //пользователь
+    @Builder.Default
+    private final BookingSearchStatus state = BookingSearchStatus.ALL;
+    private final LocalDateTime now;            //текущий момент для состояний CURRENT, PAST, FUTURE
+    private final Long itemId;                  //только бронирования вещи, null - все вещи
+    private final LocalDateTime windowStart;    //начало не раньше, null - без ограничения
+    private final LocalDateTime windowEnd;      //начало раньше, null - без ограничения
+
+    /**
+     * Ключ формы отбора: запросы с одинаковой формой отличаются только значениями параметров
+     */
+    public String shape() {
+        return (byOwner ? "owner" : "booker") + ":" + state +
+               (itemId != null ? ":item" : "") +
+               (windowStart != null ? ":from" : "") +
+               (windowEnd != null ? ":to" : "");
+    }
+
+    /**
+     * Отбор задан только ролью и состоянием
+     */
+    public boolean isStateOnly() {
+        return itemId == null && windowStart == null && windowEnd == null;
+    }
+}
@@ -1,50 +1,72 @@
 package ru.practicum.shareit.booking;
 
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 
-public interface BookingRepository extends JpaRepository<Booking, Long> {
-    Boolean existsByItem_IdAndBooker_IdAndStatusAndEndBefore(Long itemId, Long bookerId, BookingStatus status, LocalDateTime end);
+/**
+ * Условия отбора записываются через колонки таблицы bookings (b.booker.id, b.item.id, b.ownerId),
+ * а не через соединения, чтобы запросы использовали индексы таблицы bookings.
+ * Списки бронирований пользователя строятся по отбору BookingQuery в BookingRepositoryCustomImpl.
+ */
+public interface BookingRepository extends JpaRepository<Booking, Long>, BookingRepositoryCustom {
+    @Query(" select min(b.end) from Booking b where b.item.id = ?1 and b.booker.id = ?2 and b.status = ?3")
+    LocalDateTime findFirstEnd(Long itemId, Long bookerId, BookingStatus status);
 
-    Page<Booking> findAllByBooker_IdOrderByStartDesc(Long bookerId, Pageable pageable);
-
-    Page<Booking> findAllByBooker_IdAndStartAfterOrderByStartDesc(Long bookerId, LocalDateTime date, Pageable pageable);
-
-    Page<Booking> findAllByBooker_IdAndStartBeforeAndStatusOrderByStartDesc(Long bookerId,
-                                                                            LocalDateTime date,
-                                                                            BookingStatus status,
-                                                                            Pageable pageable);
-
-    Page<Booking> findAllByBooker_IdAndStartBeforeAndEndAfterOrderByStartDesc(Long bookerId,
-                                                                              LocalDateTime sDate,
-                                                                              LocalDateTime eDate, Pageable pageable);
+    @Query(value = " select count(*) from bookings " +
+                   " where item_id = ?1 " +
+                   " and start_date <= ?3 and end_date >= ?2 " +
+                   " and status = 'APPROVED'",
+           nativeQuery = true)
+    Long isBooked(Long itemId, LocalDateTime startDate, LocalDateTime endDate);
 
-    Page<Booking> findAllByBooker_IdAndStatusOrderByStartDesc(Long bookerId, BookingStatus status, Pageable pageable);
+    @Query(" select b.id as id, b.item.id as itemId, b.start as start, b.end as end " +
+           " from Booking b " +
+           " where b.item.id = ?1 and b.status = ?2")
+    List<BookingPeriod> findPeriods(Long itemId, BookingStatus status);
 
-    Page<Booking> findAllByItem_Owner_IdOrderByStartDesc(Long ownerId, Pageable pageable);
+    @Query(" select b.id as id, b.item.id as itemId, b.start as start, b.end as end " +
+           " from Booking b " +
+           " where b.item.id = ?1 and b.status = ?2 and b.end >= ?3")
+    List<BookingPeriod> findPeriodsEndingFrom(Long itemId, BookingStatus status, LocalDateTime endFrom);
 
-    Page<Booking> findAllByItem_Owner_IdAndStartAfterOrderByStartDesc(Long ownerId, LocalDateTime date, Pageable pageable);
+    @Query(" select b.id as id, b.item.id as itemId, b.start as start, b.end as end " +
+           " from Booking b " +
+           " where b.item.id in ?1 and b.status = ?2 and b.end >= ?3")
+    List<BookingPeriod> findPeriodsByItems(Collection<Long> itemIds, BookingStatus status, LocalDateTime endFrom);
 
-    Page<Booking> findAllByItem_Owner_IdAndStartBeforeAndStatusOrderByStartDesc(Long ownerId,
-                                                                                LocalDateTime date,
-                                                                                BookingStatus status,
-                                                                                Pageable pageable);
+    @EntityGraph(Booking.LISTING_GRAPH)
+    List<Booking> findAllByIdIn(Collection<Long> ids);
 
-    Page<Booking> findAllByItem_Owner_IdAndStartBeforeAndEndAfterOrderByStartDesc(Long ownerId,
-                                                                                  LocalDateTime sDate,
-                                                                                  LocalDateTime eDate,
-                                                                                  Pageable pageable);
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query(" update Booking b set b.status = ?3 " +
+           " where b.id in ?1 and b.status <> ?3 and b.ownerId = ?2")
+    int updateOwnerStatus(Collection<Long> ids, Long ownerId, BookingStatus status);
 
-    Page<Booking> findAllByItem_Owner_IdAndStatusOrderByStartDesc(Long ownerId, BookingStatus status, Pageable pageable);
+    //Нативные запросы не поддерживают графы загрузки, поэтому возвращают только периоды,
+    //а сами бронирования догружаются одним запросом findAllByIdIn.
+    //Колонка period включает границы ('[]'), поэтому индекс по period @> отбирает кандидатов,
+    //а строгие условия на start_date и end_date исключают границы, как и запрос CURRENT без диапазонов
+    @Query(value = " select id as id, item_id as itemId, start_date as start, end_date as end from bookings " +
+                   " where booker_id = ?1 and period @> cast(?2 as timestamp) " +
+                   " and start_date < ?2 and end_date > ?2 " +
+                   " order by start_date desc",
+           nativeQuery = true)
+    Slice<BookingPeriod> findCurrentByBookerInRange(Long bookerId, LocalDateTime date, Pageable pageable);
 
-    @Query(value = " select count(*) from bookings " +
-                   " where item_id = ?1 " +
-                   " and (start_date between ?2 and ?3 or end_date between ?2 and ?3) " +
-                   " and status = 'APPROVED'",
+    @Query(value = " select id as id, item_id as itemId, start_date as start, end_date as end from bookings " +
+                   " where owner_id = ?1 and period @> cast(?2 as timestamp) " +
+                   " and start_date < ?2 and end_date > ?2 " +
+                   " order by start_date desc",
            nativeQuery = true)
-    Long isBooked(Long itemId, LocalDateTime startDate, LocalDateTime endDate);
+    Slice<BookingPeriod> findCurrentByOwnerInRange(Long ownerId, LocalDateTime date, Pageable pageable);
 }
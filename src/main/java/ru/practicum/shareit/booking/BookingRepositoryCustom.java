@@ -0,0 +1,43 @@
+package ru.practicum.shareit.booking;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Запросы к бронированиям, которые не выражаются производными методами репозитория
+ */
+public interface BookingRepositoryCustom {
+    /**
+     * Порция бронирований по смещению в порядке (start_date, id) по убыванию
+     * @param query отбор
+     * @param pageable номер и размер порции
+     * @return бронирования и признак наличия следующей порции
+     */
+    Slice<Booking> findBookings(BookingQuery query, Pageable pageable);
+
+    /**
+     * Порция бронирований, следующих за курсором в порядке (start_date, id) по убыванию
+     * @param query отбор
+     * @param after курсор последней выданной записи, null - с начала
+     * @param size размер порции
+     * @return бронирования
+     */
+    List<Booking> findPageAfter(BookingQuery query, BookingCursor after, int size);
+
+    /**
+     * Количество бронирований с тем же отбором, что и в findBookings
+     */
+    long countBookings(BookingQuery query);
+
+    /**
+     * Количество бронирований по всем состояниям одним агрегирующим запросом
+     * @param byOwner true - бронирования вещей пользователя, false - бронирования самого пользователя
+     * @param userId пользователь
+     * @param now текущий момент для состояний CURRENT, PAST, FUTURE
+     * @return количества и ближайший момент их изменения со временем
+     */
+    BookingStateCounts countByState(boolean byOwner, long userId, LocalDateTime now);
+}
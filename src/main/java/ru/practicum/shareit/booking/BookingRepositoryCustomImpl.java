@@ -0,0 +1,180 @@
+package ru.practicum.shareit.booking;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Списки бронирований строятся одним построителем запросов по отбору BookingQuery.
+ * Текст запроса зависит только от формы отбора и кэшируется, поэтому для каждой формы
+ * Hibernate, пул соединений и база повторно используют разобранный запрос и его план.
+ */
+public class BookingRepositoryCustomImpl implements BookingRepositoryCustom {
+    private static final String FETCH_GRAPH_HINT = "javax.persistence.fetchgraph";
+    private static final String ORDER = " order by b.start desc, b.id desc";
+
+    private final ConcurrentMap<String, String> jpqlCache = new ConcurrentHashMap<>();
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Override
+    public Slice<Booking> findBookings(BookingQuery query, Pageable pageable) {
+        String jpql = jpql("page", query, () -> "select b from Booking b where " + filter(query) + ORDER);
+
+        //Запрашивается на одну запись больше, чтобы узнать, есть ли следующая порция
+        List<Booking> bookings = listQuery(jpql, query)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize() + 1)
+                .getResultList();
+        boolean hasNext = bookings.size() > pageable.getPageSize();
+
+        return new SliceImpl<>(hasNext ? bookings.subList(0, pageable.getPageSize()) : bookings, pageable, hasNext);
+    }
+
+    @Override
+    public List<Booking> findPageAfter(BookingQuery query, BookingCursor after, int size) {
+        if (after == null) {
+            return listQuery(jpql("page", query, () -> "select b from Booking b where " + filter(query) + ORDER), query)
+                    .setMaxResults(size)
+                    .getResultList();
+        }
+
+        String jpql = jpql("after", query, () -> "select b from Booking b where " + filter(query) +
+                " and (b.start < :afterStart or (b.start = :afterStart and b.id < :afterId))" + ORDER);
+        return listQuery(jpql, query)
+                .setParameter("afterStart", after.getStart())
+                .setParameter("afterId", after.getId())
+                .setMaxResults(size)
+                .getResultList();
+    }
+
+    @Override
+    public long countBookings(BookingQuery query) {
+        String jpql = jpql("count", query, () -> "select count(b) from Booking b where " + filter(query));
+
+        TypedQuery<Long> count = em.createQuery(jpql, Long.class);
+        bind(count, query);
+        return count.getSingleResult();
+    }
+
+    @Override
+    public BookingStateCounts countByState(boolean byOwner, long userId, LocalDateTime now) {
+        //Условия состояний те же, что и в filter, каждое состояние считается своей суммой по одному проходу
+        String jpql = "select count(b)," +
+                " sum(case when b.start < :now and b.end > :now then 1 else 0 end)," +
+                " sum(case when b.start < :now and b.status = :approved then 1 else 0 end)," +
+                " sum(case when b.start > :now then 1 else 0 end)," +
+                " sum(case when b.status = :waiting then 1 else 0 end)," +
+                " sum(case when b.status = :rejected then 1 else 0 end)," +
+                " min(case when b.start > :now then b.start else null end)," +
+                " min(case when b.start < :now and b.end > :now then b.end else null end)" +
+                " from Booking b where " + (byOwner ? "b.ownerId = :userId" : "b.booker.id = :userId");
+
+        Object[] row = em.createQuery(jpql, Object[].class)
+                .setParameter("userId", userId)
+                .setParameter("now", now)
+                .setParameter("approved", BookingStatus.APPROVED)
+                .setParameter("waiting", BookingStatus.WAITING)
+                .setParameter("rejected", BookingStatus.REJECTED)
+                .getSingleResult();
+
+        BookingStateCounts ret = new BookingStateCounts(null);
+        BookingSearchStatus[] states = {BookingSearchStatus.ALL,
+                                        BookingSearchStatus.CURRENT,
+                                        BookingSearchStatus.PAST,
+                                        BookingSearchStatus.FUTURE,
+                                        BookingSearchStatus.WAITING,
+                                        BookingSearchStatus.REJECTED};
+        for (int i = 0; i < states.length; i++) {
+            //sum по пустому набору строк возвращает null
+            ret.add(states[i], row[i] == null ? 0L : ((Number) row[i]).longValue());
+        }
+        for (int i = states.length; i < row.length; i++) {
+            if (row[i] != null) {
+                ret.changesAt((LocalDateTime) row[i]);
+            }
+        }
+        return ret;
+    }
+
+    private String jpql(String kind, BookingQuery query, Supplier<String> builder) {
+        return jpqlCache.computeIfAbsent(kind + ":" + query.shape(), key -> builder.get());
+    }
+
+    private TypedQuery<Booking> listQuery(String jpql, BookingQuery query) {
+        TypedQuery<Booking> ret = em.createQuery(jpql, Booking.class)
+                .setHint(FETCH_GRAPH_HINT, em.getEntityGraph(Booking.LISTING_GRAPH));
+        bind(ret, query);
+        return ret;
+    }
+
+    private static String filter(BookingQuery query) {
+        StringBuilder jpql = new StringBuilder(query.isByOwner() ? "b.ownerId = :userId" : "b.booker.id = :userId");
+
+        switch (query.getState()) {
+            case PAST:
+                jpql.append(" and b.start < :now and b.status = :status");
+                break;
+            case FUTURE:
+                jpql.append(" and b.start > :now");
+                break;
+            case CURRENT:
+                jpql.append(" and b.start < :now and b.end > :now");
+                break;
+            case WAITING: case REJECTED:
+                jpql.append(" and b.status = :status");
+                break;
+            default:
+                break;
+        }
+
+        if (query.getItemId() != null) {
+            jpql.append(" and b.item.id = :itemId");
+        }
+        if (query.getWindowStart() != null) {
+            jpql.append(" and b.start >= :windowStart");
+        }
+        if (query.getWindowEnd() != null) {
+            jpql.append(" and b.start < :windowEnd");
+        }
+        return jpql.toString();
+    }
+
+    private static void bind(TypedQuery<?> ret, BookingQuery query) {
+        ret.setParameter("userId", query.getUserId());
+
+        switch (query.getState()) {
+            case PAST:
+                ret.setParameter("now", query.getNow()).setParameter("status", BookingStatus.APPROVED);
+                break;
+            case FUTURE: case CURRENT:
+                ret.setParameter("now", query.getNow());
+                break;
+            case WAITING: case REJECTED:
+                ret.setParameter("status", BookingStatus.valueOf(query.getState().name()));
+                break;
+            default:
+                break;
+        }
+
+        if (query.getItemId() != null) {
+            ret.setParameter("itemId", query.getItemId());
+        }
+        if (query.getWindowStart() != null) {
+            ret.setParameter("windowStart", query.getWindowStart());
+        }
+        if (query.getWindowEnd() != null) {
+            ret.setParameter("windowEnd", query.getWindowEnd());
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package ru.practicum.shareit.booking;
+
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Количество бронирований пользователя по каждому состоянию BookingSearchStatus на момент подсчёта.
+ * nextChange - ближайший момент, когда начнётся или закончится одно из бронирований,
+ * то есть когда количества CURRENT, PAST и FUTURE изменятся без изменения самих бронирований.
+ */
+@Getter
+public class BookingStateCounts {
+    private final Map<BookingSearchStatus, Long> counts = new EnumMap<>(BookingSearchStatus.class);
+    private LocalDateTime nextChange;   //null - ни одно бронирование не начнётся и не закончится
+
+    public BookingStateCounts(LocalDateTime nextChange) {
+        for (BookingSearchStatus state : BookingSearchStatus.values()) {
+            counts.put(state, 0L);
+        }
+        this.nextChange = nextChange;
+    }
+
+    public void add(BookingSearchStatus state, long delta) {
+        counts.merge(state, delta, Long::sum);
+    }
+
+    /**
+     * Учёт бронирования, которое начнётся или закончится в момент date
+     */
+    public void changesAt(LocalDateTime date) {
+        if (nextChange == null || date.isBefore(nextChange)) {
+            nextChange = date;
+        }
+    }
+
+    public BookingStateCounts copy() {
+        BookingStateCounts ret = new BookingStateCounts(nextChange);
+        ret.counts.putAll(counts);
+        return ret;
+    }
+}
@@ -0,0 +1,34 @@
+package ru.practicum.shareit.booking;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Бронирование вещи владельца, ожидающее подтверждения (WAITING).
+ * Добавляется в той же транзакции, что и бронирование, и удаляется при подтверждении или отклонении,
+ * поэтому таблица содержит только ожидающие бронирования и не растёт вместе с историей.
+ */
+@Entity
+@Table(name = "owner_inbox")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OwnerInboxEntry {
+    @Id
+    @Column(name = "booking_id")
+    private long bookingId;         //бронирование
+
+    @Column(name = "owner_id")
+    private long ownerId;           //владелец вещи
+
+    @Column(name = "start_date")
+    private LocalDateTime start;    //дата начала бронирования, задаёт порядок вывода
+
+    public static OwnerInboxEntry of(Booking booking) {
+        return new OwnerInboxEntry(booking.getId(), booking.getOwnerId(), booking.getStart());
+    }
+}
@@ -0,0 +1,32 @@
+package ru.practicum.shareit.booking;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Запросы читают только индекс ix_owner_inbox_owner_start и не обращаются к таблице bookings
+ */
+public interface OwnerInboxRepository extends JpaRepository<OwnerInboxEntry, Long> {
+    //Первая порция ожидающих бронирований владельца в порядке (start_date, booking_id) по убыванию
+    @Query(" select e.bookingId from OwnerInboxEntry e where e.ownerId = ?1 " +
+           " order by e.start desc, e.bookingId desc")
+    List<Long> findBookingIds(long ownerId, Pageable pageable);
+
+    //Порция, следующая за курсором (start, bookingId)
+    @Query(" select e.bookingId from OwnerInboxEntry e where e.ownerId = ?1 " +
+           " and (e.start < ?2 or (e.start = ?2 and e.bookingId < ?3)) " +
+           " order by e.start desc, e.bookingId desc")
+    List<Long> findBookingIdsAfter(long ownerId, LocalDateTime start, long bookingId, Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query(" delete from OwnerInboxEntry e where e.bookingId in ?1")
+    int deleteAllByBookingIdIn(Collection<Long> bookingIds);
+}
@@ -0,0 +1,15 @@
+package ru.practicum.shareit.booking.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Класс представления результата создания одного бронирования из пакета
+ */
+@Data
+@Builder
+public class BookingBatchResultDto {
+    private int index;              //порядковый номер бронирования в пакете;
+    private BookingDto booking;     //созданное бронирование;
+    private String error;           //причина отказа, если бронирование не создано.
+}
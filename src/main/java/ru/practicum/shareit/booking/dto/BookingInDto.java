@@ -17,4 +17,5 @@ public class BookingInDto {
     private LocalDateTime  start;     //дата начала бронирования;
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss")
     private LocalDateTime end;       //дата конца бронирования;
+    private String holdToken;       //токен удержания вещи на период бронирования (необязательный).
 }
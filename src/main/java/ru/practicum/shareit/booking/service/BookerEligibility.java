@@ -0,0 +1,100 @@
+package ru.practicum.shareit.booking.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Кэш права оставить отзыв: для пары (вещь, арендатор) хранится самое раннее окончание
+ * подтверждённого бронирования. Если это окончание уже прошло, отзыв разрешается без запроса к базе.
+ * Таблица фиксированного размера (shareit.comment.eligibility-cache-size) хранит ключи и значения
+ * в массивах long, пара занимает ячейку по хэшу и вытесняет прежнюю пару этой ячейки.
+ * Отсутствие записи ничего не означает: проверка выполняется запросом к базе и её результат кэшируется.
+ * Запись действует shareit.comment.eligibility-ttl - этим ограничивается расхождение с отклонениями
+ * бронирований, сделанными другими экземплярами приложения.
+ */
+@Component
+public class BookerEligibility {
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final long[] itemIds;
+    private final long[] bookerIds;
+    private final long[] ends;      //окончание бронирования, секунды от эпохи в UTC
+    private final long[] expires;   //окончание действия записи, секунды от эпохи в UTC
+    private final Duration ttl;
+    private final Clock clock;
+
+    @Autowired
+    public BookerEligibility(@Value("${shareit.comment.eligibility-cache-size:65536}") int capacity,
+                             @Value("${shareit.comment.eligibility-ttl:5m}") Duration ttl) {
+        this(capacity, ttl, Clock.systemDefaultZone());
+    }
+
+    public BookerEligibility(int capacity, Duration ttl, Clock clock) {
+        this.itemIds = new long[capacity];
+        this.bookerIds = new long[capacity];
+        this.ends = new long[capacity];
+        this.expires = new long[capacity];
+        this.ttl = ttl;
+        this.clock = clock;
+        Arrays.fill(ends, EMPTY);
+    }
+
+    /**
+     * Проверка по кэшу, что подтверждённое бронирование вещи арендатором уже завершилось
+     * @return false, если пары нет в кэше, запись устарела или бронирование ещё не завершилось
+     */
+    public synchronized boolean isEligible(long itemId, long bookerId) {
+        int slot = slot(itemId, bookerId);
+        long now = toSeconds(LocalDateTime.now(clock));
+        return ends[slot] != EMPTY &&
+               itemIds[slot] == itemId &&
+               bookerIds[slot] == bookerId &&
+               ends[slot] < now &&
+               now < expires[slot];
+    }
+
+    /**
+     * Учёт подтверждённого бронирования, в кэше остаётся самое раннее окончание.
+     * Время действия записи продлевается только при её замене
+     */
+    public synchronized void approved(long itemId, long bookerId, LocalDateTime end) {
+        int slot = slot(itemId, bookerId);
+        long seconds = toSeconds(end);
+        LocalDateTime now = LocalDateTime.now(clock);
+        if (ends[slot] != EMPTY && itemIds[slot] == itemId && bookerIds[slot] == bookerId && ends[slot] <= seconds &&
+            toSeconds(now) < expires[slot]) {
+            return;
+        }
+        itemIds[slot] = itemId;
+        bookerIds[slot] = bookerId;
+        ends[slot] = seconds;
+        expires[slot] = toSeconds(now.plus(ttl));
+    }
+
+    /**
+     * Удаление пары после отклонения бронирования, право на отзыв будет проверено по базе
+     */
+    public synchronized void evict(long itemId, long bookerId) {
+        int slot = slot(itemId, bookerId);
+        if (itemIds[slot] == itemId && bookerIds[slot] == bookerId) {
+            ends[slot] = EMPTY;
+        }
+    }
+
+    private int slot(long itemId, long bookerId) {
+        long hash = itemId * 0x9E3779B97F4A7C15L + bookerId;
+        hash ^= hash >>> 32;
+        return (int) Math.floorMod(hash, (long) ends.length);
+    }
+
+    private static long toSeconds(LocalDateTime date) {
+        return date.toEpochSecond(ZoneOffset.UTC);
+    }
+}
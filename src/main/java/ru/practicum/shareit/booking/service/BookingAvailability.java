@@ -0,0 +1,166 @@
+package ru.practicum.shareit.booking.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.shareit.booking.BookingPeriod;
+import ru.practicum.shareit.booking.BookingRepository;
+import ru.practicum.shareit.booking.BookingStatus;
+import ru.practicum.shareit.booking.dto.AvailabilitySlotDto;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Свободные окна вещей.
+ * Занятые интервалы вещи (APPROVED, по запросу также WAITING) сливаются проходом по отсортированным
+ * периодам и кэшируются по вещи. Кэш сбрасывается при изменении бронирований вещи,
+ * а время жизни записи (shareit.booking.availability-ttl) ограничивает устаревание данных,
+ * изменённых другими экземплярами приложения.
+ */
+@Component
+public class BookingAvailability {
+    private static final int MAX_ENTRIES = 10_000;
+
+    private final BookingRepository bookingRepository;
+    private final ConcurrentMap<Long, Entry> approved = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, Entry> withWaiting = new ConcurrentHashMap<>();
+    private final Duration ttl;
+    private final Clock clock;
+
+    @Autowired
+    public BookingAvailability(BookingRepository bookingRepository,
+                               @Value("${shareit.booking.availability-ttl:60s}") Duration ttl) {
+        this(bookingRepository, ttl, Clock.systemUTC());
+    }
+
+    public BookingAvailability(BookingRepository bookingRepository, Duration ttl, Clock clock) {
+        this.bookingRepository = bookingRepository;
+        this.ttl = ttl;
+        this.clock = clock;
+    }
+
+    /**
+     * Свободные окна вещи в заданном периоде.
+     * Границы бронирований заняты, поэтому окно начинается в момент окончания предыдущего бронирования
+     * и заканчивается в момент начала следующего, но сами эти моменты в окно не входят.
+     * @param itemId идентификатор вещи
+     * @param from начало периода
+     * @param to конец периода
+     * @param includeWaiting учитывать бронирования, ожидающие подтверждения
+     * @return свободные окна в порядке возрастания
+     */
+    public List<AvailabilitySlotDto> freeSlots(long itemId, LocalDateTime from, LocalDateTime to, boolean includeWaiting) {
+        List<Busy> busy = busy(itemId, includeWaiting);
+        List<AvailabilitySlotDto> ret = new ArrayList<>();
+
+        LocalDateTime free = from;
+        for (int i = firstEndingNotBefore(busy, from); i < busy.size(); i++) {
+            Busy interval = busy.get(i);
+            if (interval.start.isAfter(to)) {
+                break;
+            }
+            if (interval.start.isAfter(free)) {
+                ret.add(new AvailabilitySlotDto(free, interval.start));
+            }
+            if (interval.end.isAfter(free)) {
+                free = interval.end;
+            }
+        }
+        if (free.isBefore(to)) {
+            ret.add(new AvailabilitySlotDto(free, to));
+        }
+
+        return ret;
+    }
+
+    /**
+     * Сброс занятых интервалов вещи после изменения её бронирований
+     */
+    public void evict(long itemId) {
+        approved.remove(itemId);
+        withWaiting.remove(itemId);
+    }
+
+    private List<Busy> busy(long itemId, boolean includeWaiting) {
+        ConcurrentMap<Long, Entry> cache = includeWaiting ? withWaiting : approved;
+        long now = clock.millis();
+        Entry entry = cache.get(itemId);
+        if (entry != null && entry.expiresAt > now) {
+            return entry.busy;
+        }
+
+        if (cache.size() >= MAX_ENTRIES) {
+            cache.values().removeIf(e -> e.expiresAt <= now);
+        }
+
+        List<BookingPeriod> periods = new ArrayList<>(bookingRepository.findPeriods(itemId, BookingStatus.APPROVED));
+        if (includeWaiting) {
+            periods.addAll(bookingRepository.findPeriods(itemId, BookingStatus.WAITING));
+        }
+        List<Busy> busy = merge(periods);
+        cache.put(itemId, new Entry(busy, now + ttl.toMillis()));
+        return busy;
+    }
+
+    //Слияние пересекающихся и соприкасающихся периодов проходом по периодам, отсортированным по началу
+    private static List<Busy> merge(List<BookingPeriod> periods) {
+        periods.sort(Comparator.comparing(BookingPeriod::getStart));
+
+        List<Busy> ret = new ArrayList<>();
+        Busy current = null;
+        for (BookingPeriod period : periods) {
+            if (current != null && !period.getStart().isAfter(current.end)) {
+                if (period.getEnd().isAfter(current.end)) {
+                    current = new Busy(current.start, period.getEnd());
+                    ret.set(ret.size() - 1, current);
+                }
+            } else {
+                current = new Busy(period.getStart(), period.getEnd());
+                ret.add(current);
+            }
+        }
+        return ret;
+    }
+
+    //Индекс первого занятого интервала, заканчивающегося не раньше заданной даты
+    private static int firstEndingNotBefore(List<Busy> busy, LocalDateTime date) {
+        int low = 0;
+        int high = busy.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (busy.get(mid).end.isBefore(date)) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private static class Busy {
+        private final LocalDateTime start;
+        private final LocalDateTime end;
+
+        Busy(LocalDateTime start, LocalDateTime end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private static class Entry {
+        private final List<Busy> busy;
+        private final long expiresAt;
+
+        Entry(List<Busy> busy, long expiresAt) {
+            this.busy = busy;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
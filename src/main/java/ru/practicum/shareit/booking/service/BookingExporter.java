@@ -0,0 +1,135 @@
+package ru.practicum.shareit.booking.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.practicum.shareit.booking.dto.BookingDto;
+import ru.practicum.shareit.item.dto.ItemDto;
+import ru.practicum.shareit.user.dto.UserDto;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+/**
+ * Выгрузка бронирований в формате NDJSON (один объект BookingDto в строке).
+ * Строки читаются курсором JDBC порциями по shareit.export.fetch-size и сразу записываются в ответ,
+ * поэтому расход памяти не зависит от числа бронирований.
+ * Выгрузка использует собственный пул из shareit.export.pool-size соединений только для чтения,
+ * чтобы долгие выгрузки не занимали соединения основного пула.
+ */
+@Component
+public class BookingExporter {
+    private static final String OWNER_BOOKINGS_SQL =
+            "select b.id, b.start_date, b.end_date, b.status, " +
+            "       i.id as item_id, i.name as item_name, i.description as item_description, " +
+            "       i.is_available, i.request_id, " +
+            "       u.id as booker_id, u.name as booker_name, u.email as booker_email " +
+            "  from bookings b " +
+            "  join items i on i.id = b.item_id " +
+            "  join users u on u.id = b.booker_id " +
+            " where b.owner_id = ? " +
+            " order by b.start_date desc, b.id desc";
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public BookingExporter(DataSourceProperties dataSourceProperties,
+                           ObjectMapper objectMapper,
+                           @Value("${shareit.export.pool-size:2}") int poolSize,
+                           @Value("${shareit.export.fetch-size:500}") int fetchSize) {
+        this(exportPool(dataSourceProperties, poolSize), objectMapper, fetchSize);
+    }
+
+    public BookingExporter(DataSource dataSource, ObjectMapper objectMapper, int fetchSize) {
+        this.dataSource = dataSource;
+        this.objectMapper = objectMapper;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+    }
+
+    /**
+     * Выгрузка всех бронирований вещей владельца, от более новых к более старым
+     * @param owner владелец вещей
+     * @param out поток ответа, не закрывается
+     */
+    public void exportOwnerBookings(UserDto owner, OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory()
+                .createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        try {
+            jdbcTemplate.query(OWNER_BOOKINGS_SQL, rs -> {
+                try {
+                    objectMapper.writeValue(generator, toBookingDto(rs, owner));
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    //Клиент прервал выгрузку, курсор закрывается вместе с запросом
+                    throw new UncheckedIOException(e);
+                }
+            }, owner.getId());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        generator.flush();
+    }
+
+    @PreDestroy
+    public void close() {
+        if (dataSource instanceof HikariDataSource) {
+            ((HikariDataSource) dataSource).close();
+        }
+    }
+
+    private static BookingDto toBookingDto(ResultSet rs, UserDto owner) throws SQLException {
+        long requestId = rs.getLong("request_id");
+        Long request = rs.wasNull() ? null : requestId;
+
+        return BookingDto.builder()
+                .id(rs.getLong("id"))
+                .start(rs.getObject("start_date", LocalDateTime.class))
+                .end(rs.getObject("end_date", LocalDateTime.class))
+                .status(rs.getString("status"))
+                .item(ItemDto.builder()
+                        .id(rs.getLong("item_id"))
+                        .name(rs.getString("item_name"))
+                        .description(rs.getString("item_description"))
+                        .available(rs.getBoolean("is_available"))
+                        .owner(owner)
+                        .requestId(request)
+                        .build())
+                .booker(UserDto.builder()
+                        .id(rs.getLong("booker_id"))
+                        .name(rs.getString("booker_name"))
+                        .email(rs.getString("booker_email"))
+                        .build())
+                .build();
+    }
+
+    /**
+     * Отдельный пул к той же базе. Курсор PostgreSQL читает порциями только вне режима autocommit,
+     * поэтому соединения пула открывают транзакцию только для чтения, которая откатывается при возврате в пул.
+     */
+    private static DataSource exportPool(DataSourceProperties dataSourceProperties, int poolSize) {
+        HikariDataSource pool = dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        pool.setPoolName("shareit-export");
+        pool.setMaximumPoolSize(poolSize);
+        pool.setMinimumIdle(0);
+        pool.setAutoCommit(false);
+        pool.setReadOnly(true);
+        return pool;
+    }
+}
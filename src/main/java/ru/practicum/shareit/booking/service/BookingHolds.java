@@ -0,0 +1,230 @@
+package ru.practicum.shareit.booking.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.shareit.errorHandle.exception.EntityAlreadyExistException;
+import ru.practicum.shareit.errorHandle.exception.ValidationException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Кратковременные удержания вещей на период будущего бронирования.
+ * Удержание действует shareit.booking.hold-ttl и хранится в памяти приложения, поэтому конкурирующие
+ * удержания отклоняются без обращения к базе. Удержания не разделяются между экземплярами приложения.
+ * Просроченные удержания не учитываются при проверках и удаляются по расписанию.
+ * Пользователь может одновременно удерживать не больше shareit.booking.hold-max-per-user периодов.
+ * Повторное удержание пользователем пересекающегося периода той же вещи продлевает прежнее удержание,
+ * но не дальше shareit.booking.hold-max-duration от начала первого. После такого удержания пользователь может
+ * снова удержать этот период вещи только через hold-ttl, чтобы вещь не удерживалась бесконечно.
+ */
+@Component
+public class BookingHolds {
+    private final Duration ttl;
+    private final int maxPerUser;
+    private final Duration maxDuration;
+    private final Clock clock;
+    private final ConcurrentMap<Long, List<Hold>> holdsByItem = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, List<Hold>> holdsByUser = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Hold> holdsByToken = new ConcurrentHashMap<>();
+
+    @Autowired
+    public BookingHolds(@Value("${shareit.booking.hold-ttl:5m}") Duration ttl,
+                        @Value("${shareit.booking.hold-max-per-user:5}") int maxPerUser,
+                        @Value("${shareit.booking.hold-max-duration:15m}") Duration maxDuration) {
+        this(ttl, maxPerUser, maxDuration, Clock.systemDefaultZone());
+    }
+
+    public BookingHolds(Duration ttl, int maxPerUser, Duration maxDuration, Clock clock) {
+        this.ttl = ttl;
+        this.maxPerUser = maxPerUser;
+        this.maxDuration = maxDuration;
+        this.clock = clock;
+    }
+
+    /**
+     * Удержание вещи на период (границы включаются).
+     * Действующие удержания пользователем пересекающихся периодов той же вещи заменяются новым.
+     * @return удержание с токеном для последующего бронирования
+     * @throws EntityAlreadyExistException если период пересекается с действующим удержанием другого пользователя
+     * @throws ValidationException если превышено число удержаний пользователя или время непрерывного удержания
+     */
+    public Hold place(long itemId, long userId, LocalDateTime start, LocalDateTime end) {
+        LocalDateTime now = LocalDateTime.now(clock);
+        String token = UUID.randomUUID().toString();
+        Hold[] placed = new Hold[1];
+
+        holdsByUser.compute(userId, (id, current) -> {
+            List<Hold> kept = unexpired(current, now);
+            List<Hold> renewed = new ArrayList<>();
+            LocalDateTime since = now;
+            long active = 0;
+            for (Hold other : kept) {
+                boolean expired = !other.expires.isAfter(now);
+                if (other.itemId == itemId && other.overlaps(start, end)) {
+                    if (expired) {
+                        throw new ValidationException("Вещь нельзя удерживать дольше " + maxDuration.toMinutes() +
+                                                      " мин. подряд, повторное удержание возможно после " +
+                                                      other.expires.plus(ttl));
+                    }
+                    renewed.add(other);
+                    since = other.since.isBefore(since) ? other.since : since;
+                }
+                active += expired ? 0 : 1;
+            }
+            LocalDateTime limit = since.plus(maxDuration);
+            if (active - renewed.size() >= maxPerUser) {
+                throw new ValidationException("Нельзя удерживать больше " + maxPerUser + " периодов одновременно!");
+            }
+
+            LocalDateTime expires = now.plus(ttl);
+            Hold hold = new Hold(token, itemId, userId, start, end, since, expires.isBefore(limit) ? expires : limit);
+            holdsByItem.compute(itemId, (item, holds) -> {
+                List<Hold> items = active(holds, now);
+                if (items.stream().anyMatch(other -> other.userId != userId && other.overlaps(start, end))) {
+                    throw new EntityAlreadyExistException("Вещь уже удерживается другим пользователем на эти даты!");
+                }
+                items.removeAll(renewed);
+                items.add(hold);
+                return items;
+            });
+            renewed.forEach(other -> holdsByToken.remove(other.token));
+            holdsByToken.put(token, hold);
+
+            kept.removeAll(renewed);
+            kept.add(hold);
+            placed[0] = hold;
+            return kept;
+        });
+
+        return placed[0];
+    }
+
+    /**
+     * Проверка пересечения периода с действующими удержаниями других пользователей
+     */
+    public boolean isHeldByOthers(long itemId, long userId, LocalDateTime start, LocalDateTime end) {
+        List<Hold> holds = holdsByItem.get(itemId);
+        if (holds == null) {
+            return false;
+        }
+        LocalDateTime now = LocalDateTime.now(clock);
+        return holds.stream()
+                .anyMatch(hold -> hold.expires.isAfter(now) && hold.userId != userId && hold.overlaps(start, end));
+    }
+
+    /**
+     * Проверка, что токен действует и удерживает вещь для пользователя на весь период
+     */
+    public boolean isHeld(String token, long itemId, long userId, LocalDateTime start, LocalDateTime end) {
+        Hold hold = token == null ? null : holdsByToken.get(token);
+        return hold != null &&
+               hold.expires.isAfter(LocalDateTime.now(clock)) &&
+               hold.itemId == itemId &&
+               hold.userId == userId &&
+               !hold.start.isAfter(start) &&
+               !hold.end.isBefore(end);
+    }
+
+    /**
+     * Снятие удержания (после бронирования или по запросу пользователя)
+     * @return false, если удержание не найдено или принадлежит другому пользователю
+     */
+    public boolean release(String token, long userId) {
+        Hold hold = token == null ? null : holdsByToken.get(token);
+        if (hold == null || hold.userId != userId) {
+            return false;
+        }
+        holdsByUser.computeIfPresent(userId, (id, current) -> without(current, hold));
+        holdsByItem.computeIfPresent(hold.itemId, (id, current) -> without(current, hold));
+        holdsByToken.remove(token);
+        return true;
+    }
+
+    /**
+     * Удаление просроченных удержаний
+     */
+    @Scheduled(fixedDelayString = "${shareit.booking.hold-purge-interval:60000}")
+    public void purge() {
+        LocalDateTime now = LocalDateTime.now(clock);
+        for (Long itemId : holdsByItem.keySet()) {
+            holdsByItem.computeIfPresent(itemId, (id, current) -> {
+                List<Hold> active = active(current, now);
+                return active.isEmpty() ? null : active;
+            });
+        }
+        for (Long userId : holdsByUser.keySet()) {
+            holdsByUser.computeIfPresent(userId, (id, current) -> {
+                List<Hold> active = unexpired(current, now);
+                return active.isEmpty() ? null : active;
+            });
+        }
+        holdsByToken.values().removeIf(hold -> !hold.expires.isAfter(now));
+    }
+
+    //Копия списка удержаний без заданного, пустой список удаляется из карты
+    private static List<Hold> without(List<Hold> holds, Hold hold) {
+        List<Hold> rest = new ArrayList<>(holds);
+        rest.remove(hold);
+        return rest.isEmpty() ? null : rest;
+    }
+
+    //Копия списка удержаний пользователя без просроченных, удержания наибольшей длительности
+    //остаются в списке ещё на ttl, чтобы отклонять их немедленное повторение
+    private List<Hold> unexpired(List<Hold> holds, LocalDateTime now) {
+        List<Hold> ret = new ArrayList<>();
+        if (holds != null) {
+            for (Hold hold : holds) {
+                boolean exhausted = hold.expires.equals(hold.since.plus(maxDuration));
+                if (hold.expires.isAfter(now) || (exhausted && hold.expires.plus(ttl).isAfter(now))) {
+                    ret.add(hold);
+                }
+            }
+        }
+        return ret;
+    }
+
+    //Копия списка удержаний вещи без просроченных, списки в карте не изменяются после публикации
+    private List<Hold> active(List<Hold> holds, LocalDateTime now) {
+        List<Hold> ret = new ArrayList<>();
+        if (holds != null) {
+            for (Hold hold : holds) {
+                if (hold.expires.isAfter(now)) {
+                    ret.add(hold);
+                } else {
+                    holdsByToken.remove(hold.token);
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Удержание вещи пользователем на период до момента expires, since - начало первого из продлённых удержаний
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Hold {
+        private final String token;
+        private final long itemId;
+        private final long userId;
+        private final LocalDateTime start;
+        private final LocalDateTime end;
+        private final LocalDateTime since;
+        private final LocalDateTime expires;
+
+        boolean overlaps(LocalDateTime otherStart, LocalDateTime otherEnd) {
+            return !start.isAfter(otherEnd) && !end.isBefore(otherStart);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package ru.practicum.shareit.booking.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.shareit.booking.BookingPeriod;
+import ru.practicum.shareit.booking.BookingRepository;
+import ru.practicum.shareit.booking.BookingStatus;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+/**
+ * Индекс подтверждённых (APPROVED) интервалов бронирования в памяти.
+ * Интервалы вещи загружаются из базы при первом обращении, затем поддерживаются при изменении статуса бронирования.
+ * Проверка пересечения выполняется за O(log n) без обращения к базе.
+ * Хранятся только интервалы, не закончившиеся к моменту загрузки (горизонт), периоды, начинающиеся раньше горизонта,
+ * проверяются запросом к базе. Запись вещи живёт shareit.booking.intervals-ttl, число вещей ограничено MAX_ENTRIES.
+ * Изменения других экземпляров приложения индекс не видит, поэтому между операциями ему можно доверять только
+ * при блокировках jvm (один экземпляр), в остальных режимах BookingServiceImpl проверяет пересечения
+ * запросом к базе по вещи и периоду.
+ */
+@Component
+public class BookingIntervalIndex {
+    static final int MAX_ENTRIES = 10_000;
+
+    private final BookingRepository bookingRepository;
+    private final ConcurrentMap<Long, ItemIntervals> intervals = new ConcurrentHashMap<>();
+    private final Duration ttl;
+    private final Clock clock;
+
+    @Autowired
+    public BookingIntervalIndex(BookingRepository bookingRepository,
+                                @Value("${shareit.booking.intervals-ttl:5m}") Duration ttl) {
+        this(bookingRepository, ttl, Clock.systemDefaultZone());
+    }
+
+    public BookingIntervalIndex(BookingRepository bookingRepository, Duration ttl, Clock clock) {
+        this.bookingRepository = bookingRepository;
+        this.ttl = ttl;
+        this.clock = clock;
+    }
+
+    /**
+     * Проверка пересечения периода с подтверждёнными бронированиями вещи (границы включаются)
+     * @param itemId идентификатор вещи
+     * @param start начало периода
+     * @param end конец периода
+     * @return true, если вещь уже забронирована на часть периода
+     */
+    public boolean isBooked(long itemId, LocalDateTime start, LocalDateTime end) {
+        long now = clock.millis();
+        ItemIntervals current = intervals.get(itemId);
+        if (current == null || current.expiresAt <= now) {
+            makeRoom(now);
+            current = intervals.compute(itemId, (id, old) -> old != null && old.expiresAt > now ? old : load(id));
+        }
+        if (start.isBefore(current.horizon)) {
+            //Закончившиеся интервалы в индексе не хранятся
+            return bookingRepository.isBooked(itemId, start, end) > 0;
+        }
+        return current.overlaps(start, end);
+    }
+
+    /**
+     * Загрузка интервалов нескольких вещей одним запросом, уже загруженные вещи пропускаются
+     * @param itemIds идентификаторы вещей
+     */
+    public void preload(Collection<Long> itemIds) {
+        long now = clock.millis();
+        List<Long> missing = itemIds.stream()
+                .filter(itemId -> {
+                    ItemIntervals current = intervals.get(itemId);
+                    return current == null || current.expiresAt <= now;
+                })
+                .collect(Collectors.toList());
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        makeRoom(now);
+        LocalDateTime horizon = LocalDateTime.now(clock);
+        Map<Long, List<BookingPeriod>> periods = bookingRepository.findPeriodsByItems(missing,
+                                                                                      BookingStatus.APPROVED,
+                                                                                      horizon)
+                .stream()
+                .collect(Collectors.groupingBy(BookingPeriod::getItemId));
+        for (Long itemId : missing) {
+            intervals.put(itemId, toIntervals(periods.getOrDefault(itemId, List.of()), horizon, now + ttl.toMillis()));
+        }
+    }
+
+    /**
+     * Добавление подтверждённого бронирования в индекс
+     */
+    public void add(long itemId, long bookingId, LocalDateTime start, LocalDateTime end) {
+        intervals.computeIfPresent(itemId, (id, current) -> current.with(bookingId, start, end, LocalDateTime.now(clock)));
+    }
+
+    /**
+     * Удаление бронирования из индекса (отклонение ранее подтверждённого бронирования)
+     */
+    public void remove(long itemId, long bookingId) {
+        intervals.computeIfPresent(itemId, (id, current) -> current.without(bookingId, LocalDateTime.now(clock)));
+    }
+
+    /**
+     * Сброс интервалов вещи, при следующем обращении они будут загружены из базы заново
+     */
+    public void evict(long itemId) {
+        intervals.remove(itemId);
+    }
+
+    int size() {
+        return intervals.size();
+    }
+
+    //Удаление просроченных записей, если места нет и после этого - записей, загруженных раньше остальных
+    private void makeRoom(long now) {
+        if (intervals.size() < MAX_ENTRIES) {
+            return;
+        }
+        intervals.values().removeIf(current -> current.expiresAt <= now);
+        if (intervals.size() >= MAX_ENTRIES) {
+            long olderHalf = now + ttl.toMillis() / 2;
+            intervals.values().removeIf(current -> current.expiresAt <= olderHalf);
+        }
+    }
+
+    private ItemIntervals load(Long itemId) {
+        LocalDateTime horizon = LocalDateTime.now(clock);
+        return toIntervals(bookingRepository.findPeriodsEndingFrom(itemId, BookingStatus.APPROVED, horizon),
+                           horizon,
+                           clock.millis() + ttl.toMillis());
+    }
+
+    private static ItemIntervals toIntervals(List<BookingPeriod> periods, LocalDateTime horizon, long expiresAt) {
+        Interval[] loaded = new Interval[periods.size()];
+        for (int i = 0; i < loaded.length; i++) {
+            BookingPeriod period = periods.get(i);
+            loaded[i] = new Interval(period.getId(), period.getStart(), period.getEnd());
+        }
+        return ItemIntervals.of(loaded, horizon, expiresAt);
+    }
+
+    private static class Interval {
+        private final long bookingId;
+        private final LocalDateTime start;
+        private final LocalDateTime end;
+
+        Interval(long bookingId, LocalDateTime start, LocalDateTime end) {
+            this.bookingId = bookingId;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Неизменяемый снимок интервалов одной вещи: интервалы отсортированы по началу,
+     * maxEnds[i] — наибольшее окончание среди первых i + 1 интервалов.
+     * Интервалы, закончившиеся раньше горизонта, отбрасываются.
+     */
+    private static class ItemIntervals {
+        private final Interval[] sorted;
+        private final LocalDateTime[] maxEnds;
+        private final LocalDateTime horizon;
+        private final long expiresAt;
+
+        private ItemIntervals(Interval[] sorted, LocalDateTime horizon, long expiresAt) {
+            this.sorted = sorted;
+            this.horizon = horizon;
+            this.expiresAt = expiresAt;
+            this.maxEnds = new LocalDateTime[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                LocalDateTime end = sorted[i].end;
+                maxEnds[i] = (i == 0 || end.isAfter(maxEnds[i - 1])) ? end : maxEnds[i - 1];
+            }
+        }
+
+        static ItemIntervals of(Interval[] intervals, LocalDateTime horizon, long expiresAt) {
+            Interval[] actual = Arrays.stream(intervals)
+                    .filter(interval -> !interval.end.isBefore(horizon))
+                    .sorted(Comparator.comparing((Interval interval) -> interval.start))
+                    .toArray(Interval[]::new);
+            return new ItemIntervals(actual, horizon, expiresAt);
+        }
+
+        boolean overlaps(LocalDateTime start, LocalDateTime end) {
+            int last = lastStartingNotAfter(end);
+            return last >= 0 && !maxEnds[last].isBefore(start);
+        }
+
+        ItemIntervals with(long bookingId, LocalDateTime start, LocalDateTime end, LocalDateTime now) {
+            Interval[] others = without(bookingId, now).sorted;
+            Interval[] copy = Arrays.copyOf(others, others.length + 1);
+            copy[others.length] = new Interval(bookingId, start, end);
+            return of(copy, now, expiresAt);
+        }
+
+        ItemIntervals without(long bookingId, LocalDateTime now) {
+            return of(Arrays.stream(sorted)
+                    .filter(interval -> interval.bookingId != bookingId)
+                    .toArray(Interval[]::new), now, expiresAt);
+        }
+
+        //Индекс последнего интервала, начинающегося не позже заданной даты, либо -1
+        private int lastStartingNotAfter(LocalDateTime date) {
+            int low = 0;
+            int high = sorted.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (sorted[mid].start.isAfter(date)) {
+                    high = mid - 1;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            return high;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package ru.practicum.shareit.booking.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Блокировки вещей на время проверки пересечений и сохранения бронирований.
+ * Режимы (shareit.booking.item-locks):
+ *      none - без блокировок;
+ *      jvm - блокировки в памяти приложения, подходят для одного экземпляра (в том числе с H2);
+ *      advisory - pg_advisory_xact_lock(item_id) в общей транзакции, подходят для нескольких экземпляров.
+ * Блокировка берётся отдельно на каждую вещь, поэтому бронирования разных вещей друг друга не ждут.
+ * Несколько вещей блокируются в порядке возрастания идентификаторов, чтобы исключить взаимоблокировки.
+ * Действие выполняется в одной транзакции, которая фиксируется до снятия блокировок,
+ * поэтому бронирование и его события в outbox сохраняются вместе.
+ * Время ожидания блокировок публикуется в метрике shareit.booking.item.lock.wait.
+ */
+@Component
+public class BookingItemLocks {
+    public static final String WAIT_METRIC = "shareit.booking.item.lock.wait";
+
+    public enum Mode {
+        NONE, JVM, ADVISORY
+    }
+
+    private final Mode mode;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Timer waitTimer;
+    private final ConcurrentMap<Long, ItemLock> locks = new ConcurrentHashMap<>();
+
+    @Autowired
+    public BookingItemLocks(@Value("${shareit.booking.item-locks:none}") String mode,
+                            JdbcTemplate jdbcTemplate,
+                            PlatformTransactionManager transactionManager,
+                            MeterRegistry meterRegistry) {
+        this.mode = Mode.valueOf(mode.toUpperCase());
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionManager == null ? null : new TransactionTemplate(transactionManager);
+        this.waitTimer = Timer.builder(WAIT_METRIC)
+                .description("Ожидание блокировки вещи при бронировании")
+                .tag("mode", this.mode.name().toLowerCase())
+                .register(meterRegistry);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Блокировки jvm действуют только внутри одного экземпляра, поэтому режим jvm означает, что приложение
+     * запущено в одном экземпляре и данные в памяти (индекс интервалов) не устаревают между операциями.
+     * В остальных режимах экземпляров может быть несколько и вместо таких данных выполняются запросы к базе
+     */
+    public boolean isSingleInstance() {
+        return mode == Mode.JVM;
+    }
+
+    /**
+     * Выполнение действия в транзакции под блокировкой вещей
+     * @param itemIds идентификаторы вещей
+     * @param action действие
+     * @return результат действия
+     */
+    public <T> T withItemLocks(Collection<Long> itemIds, Supplier<T> action) {
+        SortedSet<Long> sorted = new TreeSet<>(itemIds);
+
+        switch (mode) {
+            case ADVISORY:
+                return transactionTemplate.execute(status -> {
+                    for (Long itemId : sorted) {
+                        waitTimer.record(() -> jdbcTemplate.query("select pg_advisory_xact_lock(?)",
+                                rs -> null,
+                                itemId));
+                    }
+                    return action.get();
+                });
+            case JVM:
+                return withJvmLocks(sorted, () -> inTransaction(action));
+            default:
+                return inTransaction(action);
+        }
+    }
+
+    private <T> T inTransaction(Supplier<T> action) {
+        if (transactionTemplate == null) {
+            return action.get();
+        }
+        return transactionTemplate.execute(status -> action.get());
+    }
+
+    private <T> T withJvmLocks(SortedSet<Long> itemIds, Supplier<T> action) {
+        int locked = 0;
+        try {
+            for (Long itemId : itemIds) {
+                ItemLock itemLock = locks.compute(itemId, (id, current) -> {
+                    ItemLock ret = current == null ? new ItemLock() : current;
+                    ret.holders++;
+                    return ret;
+                });
+                waitTimer.record(itemLock.lock::lock);
+                locked++;
+            }
+            return action.get();
+        } finally {
+            for (Long itemId : itemIds) {
+                if (locked-- == 0) {
+                    break;
+                }
+                release(itemId);
+            }
+        }
+    }
+
+    //Освобождение блокировки, запись удаляется, когда блокировку больше никто не ждёт
+    private void release(Long itemId) {
+        locks.get(itemId).lock.unlock();
+        locks.computeIfPresent(itemId, (id, current) -> --current.holders == 0 ? null : current);
+    }
+
+    private static class ItemLock {
+        private final ReentrantLock lock = new ReentrantLock();
+        private int holders;        //число потоков, удерживающих или ожидающих блокировку
+    }
+}
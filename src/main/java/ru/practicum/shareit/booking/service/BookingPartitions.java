@@ -0,0 +1,168 @@
+package ru.practicum.shareit.booking.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.shareit.db.PostgresExtensions;
+import ru.practicum.shareit.errorHandle.exception.ValidationException;
+
+import javax.annotation.PostConstruct;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Помесячные секции таблицы bookings (только PostgreSQL, shareit.booking.partitions.enabled).
+ * При запуске таблица переводится на секции скриптом partitions-postgresql.sql, если это ещё не сделано.
+ * Секция месяца создаётся функцией create_bookings_partition до сохранения первого бронирования,
+ * начинающегося в этом месяце. Бронирования могут начинаться не позже months-ahead месяцев вперёд, поэтому
+ * по запросам пользователей создаются секции только этих месяцев. Созданные месяцы запоминаются, поэтому база запрашивается один раз на месяц.
+ * По расписанию секции создаются на months-ahead месяцев вперёд, а секции старше retention-months
+ * отсоединяются функцией detach_bookings_partitions и остаются отдельными таблицами для архивирования.
+ * Для секций нужно расширение btree_gist (PostgresExtensions) и отсутствие пересекающихся подтверждённых
+ * бронирований, иначе запуск останавливается до изменения таблицы.
+ */
+@Slf4j
+@Component
+public class BookingPartitions {
+    static final String SCRIPT = "partitions-postgresql.sql";
+
+    private final boolean enabled;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private final JdbcTemplate jdbcTemplate;
+    private final PostgresExtensions extensions;
+    private final Clock clock;
+    private final Set<YearMonth> created = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public BookingPartitions(@Value("${shareit.booking.partitions.enabled:false}") boolean enabled,
+                             @Value("${shareit.booking.partitions.months-ahead:12}") int monthsAhead,
+                             @Value("${shareit.booking.partitions.retention-months:0}") int retentionMonths,
+                             JdbcTemplate jdbcTemplate,
+                             PostgresExtensions extensions) {
+        this(enabled, monthsAhead, retentionMonths, jdbcTemplate, extensions, Clock.systemDefaultZone());
+    }
+
+    public BookingPartitions(boolean enabled,
+                             int monthsAhead,
+                             int retentionMonths,
+                             JdbcTemplate jdbcTemplate,
+                             PostgresExtensions extensions,
+                             Clock clock) {
+        this.enabled = enabled;
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+        this.jdbcTemplate = jdbcTemplate;
+        this.extensions = extensions;
+        this.clock = clock;
+    }
+
+    /**
+     * Перевод bookings на секции и создание секций на months-ahead месяцев вперёд при запуске
+     */
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        if (!extensions.isInstalled(PostgresExtensions.BTREE_GIST)) {
+            throw new IllegalStateException("Для секций bookings нужно расширение PostgreSQL "
+                                            + PostgresExtensions.BTREE_GIST);
+        }
+        if (extensions.isPlainBookings()) {
+            List<Long> overlaps = extensions.findApprovedOverlaps();
+            if (!overlaps.isEmpty()) {
+                throw new IllegalStateException("Секции bookings не созданы: пересекаются подтверждённые бронирования "
+                                                + overlaps);
+            }
+        }
+        new ResourceDatabasePopulator(new ClassPathResource(SCRIPT)).execute(jdbcTemplate.getDataSource());
+        ensureAhead(YearMonth.now(clock));
+    }
+
+    /**
+     * Проверка, что для бронирования с заданной датой начала будет создана секция
+     * @param start дата начала бронирования
+     */
+    public void checkStart(LocalDateTime start) {
+        if (enabled && !isAhead(YearMonth.from(start))) {
+            throw new ValidationException("Бронирование должно начинаться не позже чем через " + monthsAhead +
+                                          " мес.!");
+        }
+    }
+
+    /**
+     * Создание секций для проверенных бронирований с заданными датами начала.
+     * Выполняется до транзакции сохранения, чтобы DDL не удерживал блокировку таблицы bookings.
+     * @param starts даты начала бронирований, пустые значения и месяцы за пределами months-ahead пропускаются
+     */
+    public void ensure(Collection<LocalDateTime> starts) {
+        if (!enabled) {
+            return;
+        }
+        starts.stream()
+                .filter(Objects::nonNull)
+                .map(YearMonth::from)
+                .distinct()
+                .filter(this::isAhead)
+                .forEach(this::ensure);
+    }
+
+    /**
+     * Отсоединение секций, закончившихся до начала заданного месяца
+     * @param month первый месяц, секции которого остаются в таблице
+     * @return имена отсоединённых таблиц
+     */
+    public List<String> detachBefore(YearMonth month) {
+        if (!enabled) {
+            return List.of();
+        }
+        return jdbcTemplate.queryForList("select detach_bookings_partitions(?)",
+                String.class,
+                month.atDay(1).atStartOfDay());
+    }
+
+    /**
+     * Обслуживание секций по расписанию shareit.booking.partitions.cron
+     */
+    @Scheduled(cron = "${shareit.booking.partitions.cron:0 0 3 * * *}")
+    public void maintain() {
+        if (!enabled) {
+            return;
+        }
+        YearMonth current = YearMonth.now(clock);
+        ensureAhead(current);
+        if (retentionMonths > 0) {
+            log.info("Отсоединены секции бронирований {}", detachBefore(current.minusMonths(retentionMonths)));
+        }
+    }
+
+    private boolean isAhead(YearMonth month) {
+        return !month.isAfter(YearMonth.now(clock).plusMonths(monthsAhead));
+    }
+
+    private void ensureAhead(YearMonth current) {
+        for (int i = 0; i <= monthsAhead; i++) {
+            ensure(current.plusMonths(i));
+        }
+    }
+
+    private void ensure(YearMonth month) {
+        if (created.contains(month)) {
+            return;
+        }
+        jdbcTemplate.queryForObject("select create_bookings_partition(?)", String.class, month.atDay(1).atStartOfDay());
+        created.add(month);
+    }
+}
@@ -1,9 +1,18 @@
 package ru.practicum.shareit.booking.service;
 
+import org.springframework.data.domain.Slice;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.practicum.shareit.booking.BookingSearchStatus;
+import ru.practicum.shareit.booking.dto.AvailabilitySlotDto;
+import ru.practicum.shareit.booking.dto.BookingBatchResultDto;
 import ru.practicum.shareit.booking.dto.BookingDto;
+import ru.practicum.shareit.booking.dto.BookingHoldDto;
 import ru.practicum.shareit.booking.dto.BookingInDto;
 
+import java.time.LocalDateTime;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Интерфейс для работы с бронированиями
@@ -17,6 +26,16 @@ public interface BookingService {
      */
     BookingDto add(BookingInDto bookingInDto, long userId);
 
+    /**
+     * Добавление пакета бронирований
+     * @param bookingInDtos бронирования
+     * @param userId пользователь
+     * @param atomic true - при любой ошибке пакет отклоняется целиком,
+     *               false - сохраняются корректные бронирования, для остальных возвращается причина отказа
+     * @return результаты в порядке следования бронирований в пакете
+     */
+    List<BookingBatchResultDto> addAll(List<BookingInDto> bookingInDtos, long userId, boolean atomic);
+
     /**
      * Обновление существующего бронирования
      * @param bookingId
@@ -27,6 +46,15 @@ public interface BookingService {
 
     BookingDto updateStatus(Long bookingId, Long userId, Boolean approved);
 
+    /**
+     * Подтверждение или отклонение нескольких бронирований владельцем вещей
+     * @param bookingIds идентификаторы бронирований
+     * @param userId владелец вещей
+     * @param approved решение
+     * @return изменённые бронирования
+     */
+    List<BookingDto> updateStatuses(Collection<Long> bookingIds, Long userId, Boolean approved);
+
     /**
      * Получение отдельного бронирования
      * @param bookingId
@@ -39,17 +67,146 @@ public interface BookingService {
      * Получение всех бронирований пользователя
      * @param state
      * @param userId
+     * @param start начало периода, в котором начинаются бронирования (включительно), null - без ограничения
+     * @param end конец периода (исключительно), null - без ограничения
      * @return
      */
-    Collection<BookingDto> findUserBookings(String state, long userId, Integer from, Integer size);
+    Slice<BookingDto> findUserBookings(String state,
+                                       long userId,
+                                       Integer from,
+                                       Integer size,
+                                       LocalDateTime start,
+                                       LocalDateTime end);
 
     /**
      * Получение бронирований вещей пользователя
      * @param state
      * @param userId
+     * @param start
+     * @param end
+     * @return
+     */
+    Slice<BookingDto> findOwnerBookings(String state,
+                                        long userId,
+                                        Integer from,
+                                        Integer size,
+                                        LocalDateTime start,
+                                        LocalDateTime end);
+
+    /**
+     * Получение порции бронирований пользователя, следующей за курсором
+     * @param state
+     * @param userId
+     * @param after курсор последней полученной записи
+     * @param size
+     * @param start
+     * @param end
+     * @return
+     */
+    Slice<BookingDto> findUserBookingsAfter(String state,
+                                            long userId,
+                                            String after,
+                                            Integer size,
+                                            LocalDateTime start,
+                                            LocalDateTime end);
+
+    /**
+     * Получение порции бронирований вещей пользователя, следующей за курсором
+     * @param state
+     * @param userId
+     * @param after курсор последней полученной записи
+     * @param size
+     * @param start
+     * @param end
+     * @return
+     */
+    Slice<BookingDto> findOwnerBookingsAfter(String state,
+                                             long userId,
+                                             String after,
+                                             Integer size,
+                                             LocalDateTime start,
+                                             LocalDateTime end);
+
+    /**
+     * Получение порции бронирований вещей пользователя, ожидающих подтверждения
+     * @param userId
+     * @param after курсор последней полученной записи, null - с начала
+     * @param size
+     * @return
+     */
+    Slice<BookingDto> findOwnerInbox(long userId, String after, Integer size);
+
+    /**
+     * Приблизительное количество бронирований пользователя в заданном состоянии
+     * @param state
+     * @param userId
+     * @param start
+     * @param end
+     * @return
+     */
+    long countUserBookings(String state,
+                           long userId,
+                           LocalDateTime start,
+                           LocalDateTime end);
+
+    /**
+     * Приблизительное количество бронирований вещей пользователя в заданном состоянии
+     * @param state
+     * @param userId
+     * @param start
+     * @param end
+     * @return
+     */
+    long countOwnerBookings(String state,
+                            long userId,
+                            LocalDateTime start,
+                            LocalDateTime end);
+
+    /**
+     * Количество бронирований пользователя по каждому состоянию
+     * @param userId
+     * @return
+     */
+    Map<BookingSearchStatus, Long> countUserBookingsByState(long userId);
+
+    /**
+     * Количество бронирований вещей пользователя по каждому состоянию
+     * @param userId
+     * @return
+     */
+    Map<BookingSearchStatus, Long> countOwnerBookingsByState(long userId);
+
+    /**
+     * Потоковая выгрузка всех бронирований вещей пользователя в формате NDJSON
+     * @param userId
+     * @return
+     */
+    StreamingResponseBody exportOwnerBookings(long userId);
+
+    /**
+     * Кратковременное удержание вещи на период будущего бронирования
+     * @param bookingInDto вещь и период
+     * @param userId
+     * @return удержание с токеном, который передаётся в поле holdToken при бронировании
+     */
+    BookingHoldDto hold(BookingInDto bookingInDto, long userId);
+
+    /**
+     * Снятие удержания вещи до истечения его срока
+     * @param token
+     * @param userId
+     */
+    void releaseHold(String token, long userId);
+
+    /**
+     * Свободные окна вещи в заданном периоде
+     * @param itemId
+     * @param from
+     * @param to
+     * @param includeWaiting учитывать бронирования, ожидающие подтверждения
      * @return
      */
-    Collection<BookingDto> findOwnerBookings(String state, long userId, Integer from, Integer size);
+    List<AvailabilitySlotDto> getAvailability(long itemId, LocalDateTime from, LocalDateTime to, boolean includeWaiting);
 
     /**
      * Проверка арендовал ли человек данную вещь
@@ -2,40 +2,106 @@ package ru.practicum.shareit.booking.service;
 
 import org.hibernate.validator.internal.util.stereotypes.Lazy;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.practicum.shareit.booking.*;
+import ru.practicum.shareit.booking.dto.AvailabilitySlotDto;
+import ru.practicum.shareit.booking.dto.BookingBatchResultDto;
 import ru.practicum.shareit.booking.dto.BookingDto;
+import ru.practicum.shareit.booking.dto.BookingHoldDto;
 import ru.practicum.shareit.booking.dto.BookingInDto;
+import ru.practicum.shareit.errorHandle.exception.EntityAlreadyExistException;
 import ru.practicum.shareit.errorHandle.exception.EntityNotFoundException;
 import ru.practicum.shareit.errorHandle.exception.ValidationException;
 import ru.practicum.shareit.item.model.Item;
 import ru.practicum.shareit.item.service.ItemService;
+import ru.practicum.shareit.outbox.OutboxEvent;
+import ru.practicum.shareit.outbox.OutboxEventType;
+import ru.practicum.shareit.outbox.OutboxRepository;
+import ru.practicum.shareit.paging.ApproximateCounter;
 import ru.practicum.shareit.user.User;
+import ru.practicum.shareit.user.UserMapper;
+import ru.practicum.shareit.user.dto.UserDto;
 import ru.practicum.shareit.user.service.UserService;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Component
 public class BookingServiceImpl implements BookingService {
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final int MAX_STATUS_BATCH_SIZE = 1000;
+    private static final Duration MAX_AVAILABILITY_PERIOD = Duration.ofDays(366);
+
     private final BookingRepository bookingRepository;
     @Lazy
     private final ItemService itemService;
     private final UserService userService;
+    private final BookingIntervalIndex intervalIndex;
+    private final BookingAvailability availability;
+    private final BookingHolds holds;
+    private final BookerEligibility eligibility;
+    private final ApproximateCounter counter;
+    private final BookingStateCounter stateCounter;
+    private final BookingItemLocks itemLocks;
+    private final OutboxRepository outboxRepository;
+    private final OwnerInboxRepository inboxRepository;
+    private final BookingPartitions partitions;
+    private final BookingExporter exporter;
+    private final boolean rangeQueries;     //запросы через диапазоны tsrange (только PostgreSQL)
 
     @Autowired
     public BookingServiceImpl(BookingRepository bookingRepository,
                               ItemService itemService,
-                              UserService userService) {
+                              UserService userService,
+                              BookingIntervalIndex intervalIndex,
+                              BookingAvailability availability,
+                              BookingHolds holds,
+                              BookerEligibility eligibility,
+                              ApproximateCounter counter,
+                              BookingStateCounter stateCounter,
+                              BookingItemLocks itemLocks,
+                              OutboxRepository outboxRepository,
+                              OwnerInboxRepository inboxRepository,
+                              BookingPartitions partitions,
+                              BookingExporter exporter,
+                              @Value("${shareit.booking.range-queries:false}") boolean rangeQueries) {
         this.bookingRepository = bookingRepository;
         this.itemService = itemService;
         this.userService = userService;
+        this.intervalIndex = intervalIndex;
+        this.availability = availability;
+        this.holds = holds;
+        this.eligibility = eligibility;
+        this.counter = counter;
+        this.stateCounter = stateCounter;
+        this.itemLocks = itemLocks;
+        this.outboxRepository = outboxRepository;
+        this.inboxRepository = inboxRepository;
+        this.partitions = partitions;
+        this.exporter = exporter;
+        this.rangeQueries = rangeQueries;
     }
 
     /**
@@ -48,36 +114,217 @@ public class BookingServiceImpl implements BookingService {
     public BookingDto add(BookingInDto bookingInDto, long userId) {
         Item item = itemService.getItem(bookingInDto.getItemId());
         User booker = userService.getUser(userId);
+        checkRequest(bookingInDto, item, booker);
+        partitions.ensure(Collections.singletonList(bookingInDto.getStart()));
 
-        if (item.getOwner().getId() == userId) {
-            //throw new ValidationException("Нельзя брать вещи в аренду у самого себя!");
-            throw new EntityNotFoundException("С какого-то перепугу, по тестам, здесь должно быть 404 а не 400!");
+        BookingDto ret = itemLocks.withItemLocks(List.of(item.getId()), () -> {
+            Booking booking = bookingRepository.saveAndFlush(newBooking(bookingInDto, item, booker));
+            outboxRepository.save(BookingMapper.toOutboxEvent(booking, OutboxEventType.BOOKING_CREATED));
+            inboxRepository.save(OwnerInboxEntry.of(booking));
+
+            return BookingMapper.toBookingDto(booking);
+        });
+        availability.evict(item.getId());
+        holds.release(bookingInDto.getHoldToken(), userId);
+        stateCounter.created(userId, item.getOwner().getId(), ret.getStart());
+
+        return ret;
+    }
+
+    /**
+     * Удержание вещи на период будущего бронирования.
+     * Удержание другого пользователя на пересекающийся период отклоняется без обращения к базе.
+     * @param bookingInDto
+     * @param userId
+     * @return
+     */
+    @Override
+    public BookingHoldDto hold(BookingInDto bookingInDto, long userId) {
+        if (bookingInDto.getItemId() != null &&
+            bookingInDto.getStart() != null &&
+            bookingInDto.getEnd() != null &&
+            holds.isHeldByOthers(bookingInDto.getItemId(), userId, bookingInDto.getStart(), bookingInDto.getEnd())) {
+            throw new EntityAlreadyExistException("Вещь уже удерживается другим пользователем на эти даты!");
         }
 
-        if (bookingInDto.getStart() == null ||
-           bookingInDto.getEnd() == null ||
-           bookingInDto.getStart().isAfter(bookingInDto.getEnd()) ||
-           bookingInDto.getStart().isBefore(LocalDateTime.now())) {
-            throw new ValidationException("Заданы некорректные даты бронирования!");
+        Item item = itemService.getItem(bookingInDto.getItemId());
+        User booker = userService.getUser(userId);
+        checkBooking(bookingInDto, item, booker, null);
+
+        return BookingMapper.toBookingHoldDto(holds.place(item.getId(),
+                                                          booker.getId(),
+                                                          bookingInDto.getStart(),
+                                                          bookingInDto.getEnd()));
+    }
+
+    /**
+     * Снятие удержания вещи
+     * @param token
+     * @param userId
+     */
+    @Override
+    public void releaseHold(String token, long userId) {
+        if (!holds.release(token, userId)) {
+            throw new EntityNotFoundException("Удержание " + token + " не найдено!");
         }
+    }
 
-        if (!item.isAvailable() ||
-           bookingRepository.isBooked(bookingInDto.getItemId(),
-                                      bookingInDto.getStart(),
-                                      bookingInDto.getEnd()) > 0) {
-            throw new ValidationException("Вещь не доступна к бронированию!");
+    /**
+     * Добавление пакета бронирований.
+     * Вещи, пользователь и подтверждённые интервалы вещей загружаются одним запросом каждый,
+     * корректные бронирования сохраняются в одной транзакции.
+     * @param bookingInDtos
+     * @param userId
+     * @param atomic
+     * @return
+     */
+    @Override
+    public List<BookingBatchResultDto> addAll(List<BookingInDto> bookingInDtos, long userId, boolean atomic) {
+        if (bookingInDtos == null || bookingInDtos.isEmpty() || bookingInDtos.size() > MAX_BATCH_SIZE) {
+            throw new ValidationException("Пакет должен содержать от 1 до " + MAX_BATCH_SIZE + " бронирований!");
         }
+        for (int i = 0; i < bookingInDtos.size(); i++) {
+            if (bookingInDtos.get(i) == null) {
+                throw new ValidationException("Бронирование " + i + ": не заполнено!");
+            }
+        }
+
+        User booker = userService.getUser(userId);
+        Map<Long, Item> items = itemService.getItems(bookingInDtos.stream()
+                .map(BookingInDto::getItemId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet()));
+        partitions.ensure(acceptedStarts(bookingInDtos, items, booker));
+
+        List<BookingBatchResultDto> ret = itemLocks.withItemLocks(items.keySet(), () -> {
+            preloadIntervals(items.keySet());
+
+            List<BookingBatchResultDto> results = new ArrayList<>();
+            List<Booking> bookings = new ArrayList<>();
+            for (int i = 0; i < bookingInDtos.size(); i++) {
+                BookingInDto bookingInDto = bookingInDtos.get(i);
+                try {
+                    Item item = items.get(bookingInDto.getItemId());
+                    if (item == null) {
+                        throw new EntityNotFoundException("Вещь с идентификатором " + bookingInDto.getItemId() +
+                                                          " не найдена!");
+                    }
+                    bookings.add(newBooking(bookingInDto, item, booker));
+                    results.add(BookingBatchResultDto.builder().index(i).build());
+                } catch (EntityNotFoundException | ValidationException e) {
+                    if (atomic) {
+                        throw new ValidationException("Бронирование " + i + ": " + e.getMessage());
+                    }
+                    results.add(BookingBatchResultDto.builder().index(i).error(e.getMessage()).build());
+                }
+            }
+
+            List<Booking> savedBookings = bookingRepository.saveAll(bookings);
+            outboxRepository.saveAll(savedBookings.stream()
+                    .map(booking -> BookingMapper.toOutboxEvent(booking, OutboxEventType.BOOKING_CREATED))
+                    .collect(Collectors.toList()));
+            inboxRepository.saveAll(savedBookings.stream()
+                    .map(OwnerInboxEntry::of)
+                    .collect(Collectors.toList()));
+
+            Iterator<Booking> saved = savedBookings.iterator();
+            for (BookingBatchResultDto result : results) {
+                if (result.getError() == null) {
+                    result.setBooking(BookingMapper.toBookingDto(saved.next()));
+                }
+            }
+
+            return results;
+        });
+        items.keySet().forEach(availability::evict);
+        for (BookingBatchResultDto result : ret) {
+            if (result.getError() == null) {
+                holds.release(bookingInDtos.get(result.getIndex()).getHoldToken(), userId);
+                stateCounter.created(userId,
+                                     items.get(bookingInDtos.get(result.getIndex()).getItemId()).getOwner().getId(),
+                                     result.getBooking().getStart());
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Даты начала бронирований пакета, прошедших проверку без обращения к базе, для создания секций
+     */
+    private List<LocalDateTime> acceptedStarts(List<BookingInDto> bookingInDtos, Map<Long, Item> items, User booker) {
+        List<LocalDateTime> ret = new ArrayList<>();
+        for (BookingInDto bookingInDto : bookingInDtos) {
+            Item item = items.get(bookingInDto.getItemId());
+            if (item == null) {
+                continue;
+            }
+            try {
+                checkRequest(bookingInDto, item, booker);
+                ret.add(bookingInDto.getStart());
+            } catch (EntityNotFoundException | ValidationException e) {
+                //Ошибка попадёт в результат пакета при создании бронирования
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Проверка и создание нового бронирования в статусе WAITING
+     */
+    private Booking newBooking(BookingInDto bookingInDto, Item item, User booker) {
+        checkBooking(bookingInDto, item, booker, bookingInDto.getHoldToken());
 
         Booking booking = new Booking();
         booking.setStart(bookingInDto.getStart());
         booking.setEnd(bookingInDto.getEnd());
         booking.setBooker(booker);
         booking.setItem(item);
+        booking.setOwnerId(item.getOwner().getId());
         booking.setStatus(BookingStatus.WAITING);
 
-        booking = bookingRepository.saveAndFlush(booking);
+        return booking;
+    }
+
+    /**
+     * Проверка возможности бронирования вещи пользователем на период.
+     * Для действующего удержания пользователя пересечения уже проверены при его создании,
+     * а другие пользователи на этот период вещь удержать не могут, поэтому проверка пересечений пропускается.
+     */
+    private void checkBooking(BookingInDto bookingInDto, Item item, User booker, String holdToken) {
+        checkRequest(bookingInDto, item, booker);
+
+        if (holds.isHeld(holdToken, item.getId(), booker.getId(), bookingInDto.getStart(), bookingInDto.getEnd())) {
+            return;
+        }
+
+        if (isBooked(item.getId(), bookingInDto.getStart(), bookingInDto.getEnd()) ||
+            holds.isHeldByOthers(item.getId(), booker.getId(), bookingInDto.getStart(), bookingInDto.getEnd())) {
+            throw new ValidationException("Вещь не доступна к бронированию!");
+        }
+    }
+
+    /**
+     * Проверка запроса на бронирование без обращения к базе: владелец, даты и доступность вещи
+     */
+    private void checkRequest(BookingInDto bookingInDto, Item item, User booker) {
+        if (item.getOwner().getId() == booker.getId()) {
+            //throw new ValidationException("Нельзя брать вещи в аренду у самого себя!");
+            throw new EntityNotFoundException("С какого-то перепугу, по тестам, здесь должно быть 404 а не 400!");
+        }
 
-        return BookingMapper.toBookingDto(booking);
+        if (bookingInDto.getStart() == null ||
+           bookingInDto.getEnd() == null ||
+           bookingInDto.getStart().isAfter(bookingInDto.getEnd()) ||
+           bookingInDto.getStart().isBefore(LocalDateTime.now())) {
+            throw new ValidationException("Заданы некорректные даты бронирования!");
+        }
+
+        partitions.checkStart(bookingInDto.getStart());
+
+        if (!item.isAvailable()) {
+            throw new ValidationException("Вещь не доступна к бронированию!");
+        }
     }
 
     /**
@@ -99,15 +346,200 @@ public class BookingServiceImpl implements BookingService {
                 throw new ValidationException("Некорректный статус для изменения!");
             }
 
+            Booking booking = bookingInBase.get();
+            long itemId = booking.getItem().getId();
+            BookingStatus oldStatus = booking.getStatus();
+            BookingDto ret = itemLocks.withItemLocks(List.of(itemId), () -> applyStatus(booking, approved));
+            availability.evict(itemId);
+            updateEligibility(itemId, booking.getBooker().getId(), booking.getEnd(), approved);
+            stateCounter.statusChanged(booking.getBooker().getId(),
+                                       userId,
+                                       booking.getStart(),
+                                       oldStatus,
+                                       approved ? BookingStatus.APPROVED : BookingStatus.REJECTED);
+
+            return ret;
+        } else {
+            throw new EntityNotFoundException("Бронирование с идентификатором" + bookingId + " не найдено!");
+        }
+    }
+
+    /**
+     * Проверка пересечений и сохранение нового статуса бронирования, выполняется под блокировкой вещи
+     */
+    private BookingDto applyStatus(Booking booking, boolean approved) {
+        long itemId = booking.getItem().getId();
+
+        if (approved && isBooked(itemId, booking.getStart(), booking.getEnd())) {
+            throw new ValidationException("Вещь уже забронирована на эти даты!");
+        }
+
+        booking.setStatus(approved ? BookingStatus.APPROVED : BookingStatus.REJECTED);
+
+        Booking saved;
+        try {
+            saved = bookingRepository.saveAndFlush(booking);
+        } catch (DataIntegrityViolationException e) {
+            throw new ValidationException("Вещь уже забронирована на эти даты!");
+        }
+        updateIntervals(itemId, saved, approved);
+        outboxRepository.save(BookingMapper.toOutboxEvent(saved, statusEvent(saved.getStatus())));
+        inboxRepository.deleteAllByBookingIdIn(List.of(saved.getId()));
+
+        return BookingMapper.toBookingDto(saved);
+    }
+
+    /**
+     * Подтверждение или отклонение нескольких бронирований.
+     * Проверки те же, что и при изменении одного бронирования, статус меняется одним запросом update.
+     * @param bookingIds
+     * @param userId
+     * @param approved
+     * @return
+     */
+    @Override
+    public List<BookingDto> updateStatuses(Collection<Long> bookingIds, Long userId, Boolean approved) {
+        if (bookingIds == null || bookingIds.isEmpty() || bookingIds.size() > MAX_STATUS_BATCH_SIZE) {
+            throw new ValidationException("Необходимо указать от 1 до " + MAX_STATUS_BATCH_SIZE + " бронирований!");
+        }
+
+        Set<Long> ids = new LinkedHashSet<>(bookingIds);
+        BookingStatus status = approved ? BookingStatus.APPROVED : BookingStatus.REJECTED;
+        Map<Long, Booking> bookings = bookingRepository.findAllByIdIn(ids).stream()
+                .collect(Collectors.toMap(Booking::getId, Function.identity()));
+
+        for (Long id : ids) {
+            Booking booking = bookings.get(id);
+            if (booking == null || booking.getItem().getOwner().getId() != userId) {
+                throw new EntityNotFoundException("Бронирование с идентификатором" + id + " не найдено!");
+            }
+            if (booking.getStatus().equals(status)) {
+                throw new ValidationException("Некорректный статус для изменения!");
+            }
+        }
+
+        Set<Long> itemIds = bookings.values().stream()
+                .map(booking -> booking.getItem().getId())
+                .collect(Collectors.toSet());
+        Map<Long, BookingStatus> oldStatuses = bookings.values().stream()
+                .collect(Collectors.toMap(Booking::getId, Booking::getStatus));
+
+        List<BookingDto> updated = itemLocks.withItemLocks(itemIds, () -> {
             if (approved) {
-                bookingInBase.get().setStatus(BookingStatus.APPROVED);
-            } else {
-                bookingInBase.get().setStatus(BookingStatus.REJECTED);
+                checkApprovedOverlaps(bookings.values());
+            }
+
+            try {
+                bookingRepository.updateOwnerStatus(ids, userId, status);
+            } catch (DataIntegrityViolationException e) {
+                throw new ValidationException("Вещь уже забронирована на эти даты!");
+            }
+
+            List<BookingDto> ret = new ArrayList<>();
+            List<OutboxEvent> events = new ArrayList<>();
+            for (Booking booking : bookingRepository.findAllByIdIn(ids)) {
+                updateIntervals(booking.getItem().getId(), booking, approved);
+                if (booking.getStatus().equals(status)) {
+                    ret.add(BookingMapper.toBookingDto(booking));
+                    events.add(BookingMapper.toOutboxEvent(booking, statusEvent(status)));
+                }
             }
+            outboxRepository.saveAll(events);
+            inboxRepository.deleteAllByBookingIdIn(ids);
 
-            return BookingMapper.toBookingDto(bookingRepository.saveAndFlush(bookingInBase.get()));
+            return ret;
+        });
+        itemIds.forEach(availability::evict);
+        for (Booking booking : bookings.values()) {
+            updateEligibility(booking.getItem().getId(), booking.getBooker().getId(), booking.getEnd(), approved);
+        }
+        for (BookingDto booking : updated) {
+            stateCounter.statusChanged(booking.getBooker().getId(),
+                                       userId,
+                                       booking.getStart(),
+                                       oldStatuses.get(booking.getId()),
+                                       status);
+        }
+
+        return updated;
+    }
+
+    /**
+     * Обновление кэша права на отзыв после подтверждения или отклонения бронирования
+     */
+    private void updateEligibility(long itemId, long bookerId, LocalDateTime end, boolean approved) {
+        if (approved) {
+            eligibility.approved(itemId, bookerId, end);
         } else {
-            throw new EntityNotFoundException("Бронирование с идентификатором" + bookingId + " не найдено!");
+            eligibility.evict(itemId, bookerId);
+        }
+    }
+
+    /**
+     * Изменение индекса интервалов после фиксации транзакции смены статуса,
+     * чтобы при откате в индексе не оставался несохранённый интервал
+     */
+    private void updateIntervals(long itemId, Booking booking, boolean approved) {
+        Runnable update = approved
+                ? () -> intervalIndex.add(itemId, booking.getId(), booking.getStart(), booking.getEnd())
+                : () -> intervalIndex.remove(itemId, booking.getId());
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            update.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                update.run();
+            }
+        });
+    }
+
+    private static OutboxEventType statusEvent(BookingStatus status) {
+        return status == BookingStatus.APPROVED ? OutboxEventType.BOOKING_APPROVED : OutboxEventType.BOOKING_REJECTED;
+    }
+
+    /**
+     * Проверка пересечения периода с подтверждёнными бронированиями вещи.
+     * Индексу интервалов в памяти можно доверять только в одном экземпляре (блокировки jvm), в остальных режимах
+     * он может не содержать изменений других экземпляров, и пересечение проверяется запросом к базе по вещи и периоду
+     */
+    private boolean isBooked(long itemId, LocalDateTime start, LocalDateTime end) {
+        if (itemLocks.isSingleInstance()) {
+            return intervalIndex.isBooked(itemId, start, end);
+        }
+        return bookingRepository.isBooked(itemId, start, end) > 0;
+    }
+
+    /**
+     * Загрузка интервалов вещей в индекс одним запросом перед проверкой нескольких бронирований (только блокировки jvm)
+     */
+    private void preloadIntervals(Collection<Long> itemIds) {
+        if (itemLocks.isSingleInstance()) {
+            intervalIndex.preload(itemIds);
+        }
+    }
+
+    /**
+     * Проверка, что подтверждаемые бронирования не пересекаются ни с подтверждёнными, ни друг с другом
+     */
+    private void checkApprovedOverlaps(Collection<Booking> bookings) {
+        preloadIntervals(bookings.stream()
+                .map(booking -> booking.getItem().getId())
+                .collect(Collectors.toSet()));
+
+        Map<Long, List<Booking>> accepted = new HashMap<>();
+        for (Booking booking : bookings) {
+            long itemId = booking.getItem().getId();
+            List<Booking> sameItem = accepted.computeIfAbsent(itemId, id -> new ArrayList<>());
+            boolean overlapsBatch = sameItem.stream()
+                    .anyMatch(other -> !other.getStart().isAfter(booking.getEnd()) &&
+                                       !other.getEnd().isBefore(booking.getStart()));
+
+            if (overlapsBatch || isBooked(itemId, booking.getStart(), booking.getEnd())) {
+                throw new ValidationException("Вещь уже забронирована на эти даты! Бронирование " + booking.getId());
+            }
+            sameItem.add(booking);
         }
     }
 
@@ -139,104 +571,281 @@ public class BookingServiceImpl implements BookingService {
      * @return
      */
     @Override
-    public Collection<BookingDto> findUserBookings(String state, long userId, Integer from, Integer size) {
-        User user = userService.getUser(userId);
-        BookingSearchStatus searchStatus = null;
-        Pageable pagingSet = PageRequest.of(from / size, size);
-        Page<Booking> retPage = null;
+    public Slice<BookingDto> findUserBookings(String state,
+                                              long userId,
+                                              Integer from,
+                                              Integer size,
+                                              LocalDateTime start,
+                                              LocalDateTime end) {
+        return findBookings(query(false, state, userId, start, end), from, size);
+    }
 
-        try {
-            searchStatus = BookingSearchStatus.valueOf(state);
-        } catch (IllegalArgumentException e) {
-            throw new ValidationException("Unknown state: " + state);
+    /**
+     * Получение бронирований вещей пользователя
+     *
+     * @param state
+     * @param userId
+     * @return
+     */
+    @Override
+    public Slice<BookingDto> findOwnerBookings(String state,
+                                               long userId,
+                                               Integer from,
+                                               Integer size,
+                                               LocalDateTime start,
+                                               LocalDateTime end) {
+        return findBookings(query(true, state, userId, start, end), from, size);
+    }
+
+    /**
+     * Получение порции бронирований пользователя, следующей за курсором
+     *
+     * @param state
+     * @param userId
+     * @param after курсор последней полученной записи
+     * @param size
+     * @return
+     */
+    @Override
+    public Slice<BookingDto> findUserBookingsAfter(String state,
+                                                   long userId,
+                                                   String after,
+                                                   Integer size,
+                                                   LocalDateTime start,
+                                                   LocalDateTime end) {
+        return findBookingsAfter(query(false, state, userId, start, end), after, size);
+    }
+
+    /**
+     * Получение порции бронирований вещей пользователя, следующей за курсором
+     *
+     * @param state
+     * @param userId
+     * @param after курсор последней полученной записи
+     * @param size
+     * @return
+     */
+    @Override
+    public Slice<BookingDto> findOwnerBookingsAfter(String state,
+                                                    long userId,
+                                                    String after,
+                                                    Integer size,
+                                                    LocalDateTime start,
+                                                    LocalDateTime end) {
+        return findBookingsAfter(query(true, state, userId, start, end), after, size);
+    }
+
+    @Override
+    public long countUserBookings(String state, long userId, LocalDateTime start, LocalDateTime end) {
+        return countBookings(query(false, state, userId, start, end));
+    }
+
+    @Override
+    public long countOwnerBookings(String state, long userId, LocalDateTime start, LocalDateTime end) {
+        return countBookings(query(true, state, userId, start, end));
+    }
+
+    /**
+     * Количество бронирований пользователя по каждому состоянию одним агрегирующим запросом
+     * или из счётчиков, обновляемых при создании бронирований и изменении их статуса
+     * @param userId
+     * @return
+     */
+    @Override
+    public Map<BookingSearchStatus, Long> countUserBookingsByState(long userId) {
+        return countBookingsByState(false, userId);
+    }
+
+    @Override
+    public Map<BookingSearchStatus, Long> countOwnerBookingsByState(long userId) {
+        return countBookingsByState(true, userId);
+    }
+
+    private Map<BookingSearchStatus, Long> countBookingsByState(boolean byOwner, long userId) {
+        userService.getUser(userId);
+        return stateCounter.counts(byOwner,
+                                   userId,
+                                   () -> bookingRepository.countByState(byOwner, userId, LocalDateTime.now()));
+    }
+
+    /**
+     * Бронирования вещей пользователя, ожидающие подтверждения, от более новых к более старым.
+     * Порция читается из owner_inbox по курсору, сами бронирования догружаются одним запросом по идентификаторам.
+     * @param userId
+     * @param after курсор последней полученной записи, null - с начала
+     * @param size
+     * @return
+     */
+    @Override
+    public Slice<BookingDto> findOwnerInbox(long userId, String after, Integer size) {
+        userService.getUser(userId);
+
+        if (size == null || size <= 0) {
+            throw new ValidationException("Size должно быть положительным числом");
         }
-        switch (searchStatus) {
-            case ALL:
-                retPage = bookingRepository.findAllByBooker_IdOrderByStartDesc(userId, pagingSet);
-                break;
-            case PAST:
-                retPage = bookingRepository.findAllByBooker_IdAndStartBeforeAndStatusOrderByStartDesc(userId,
-                        LocalDateTime.now(),
-                        BookingStatus.APPROVED,
-                        pagingSet);
-                break;
-            case FUTURE:
-                retPage = bookingRepository.findAllByBooker_IdAndStartAfterOrderByStartDesc(userId, LocalDateTime.now(), pagingSet);
-                break;
-            case CURRENT:
-                retPage = bookingRepository.findAllByBooker_IdAndStartBeforeAndEndAfterOrderByStartDesc(userId,
-                        LocalDateTime.now(),
-                        LocalDateTime.now(),
-                        pagingSet);
-                break;
-            case WAITING: case REJECTED:
-                retPage = bookingRepository.findAllByBooker_IdAndStatusOrderByStartDesc(userId, BookingStatus.valueOf(state), pagingSet);
+
+        //Запрашивается на одну запись больше, чтобы узнать, есть ли следующая порция
+        Pageable limit = PageRequest.of(0, size + 1);
+        List<Long> ids;
+        if (after == null) {
+            ids = inboxRepository.findBookingIds(userId, limit);
+        } else {
+            BookingCursor cursor = BookingCursor.decode(after);
+            ids = inboxRepository.findBookingIdsAfter(userId, cursor.getStart(), cursor.getId(), limit);
+        }
+        boolean hasNext = ids.size() > size;
+        if (hasNext) {
+            ids = ids.subList(0, size);
         }
 
+        Map<Long, Booking> bookings = bookingRepository.findAllByIdIn(ids).stream()
+                .collect(Collectors.toMap(Booking::getId, Function.identity()));
         List<BookingDto> ret = new ArrayList<>();
-        for (Booking booking : retPage) {
-            ret.add(BookingMapper.toBookingDto(booking));
+        for (Long id : ids) {
+            ret.add(BookingMapper.toBookingDto(bookings.get(id)));
         }
-        return ret;
+        return new SliceImpl<>(ret, PageRequest.of(0, size), hasNext);
     }
 
     /**
-     * Получение бронирований вещей пользователя
-     *
-     * @param state
+     * Потоковая выгрузка бронирований вещей пользователя.
+     * Пользователь проверяется до начала ответа, строки читаются уже при записи ответа.
      * @param userId
      * @return
      */
     @Override
-    public Collection<BookingDto> findOwnerBookings(String state, long userId, Integer from, Integer size) {
-        User user = userService.getUser(userId);
-        BookingSearchStatus searchStatus = null;
+    public StreamingResponseBody exportOwnerBookings(long userId) {
+        UserDto owner = UserMapper.toUserDto(userService.getUser(userId));
+        return out -> exporter.exportOwnerBookings(owner, out);
+    }
+
+    /**
+     * Свободные окна вещи в заданном периоде
+     * @param itemId
+     * @param from
+     * @param to
+     * @param includeWaiting
+     * @return
+     */
+    @Override
+    public List<AvailabilitySlotDto> getAvailability(long itemId,
+                                                     LocalDateTime from,
+                                                     LocalDateTime to,
+                                                     boolean includeWaiting) {
+        if (from == null || to == null || !from.isBefore(to)) {
+            throw new ValidationException("Заданы некорректные даты периода!");
+        }
+        if (Duration.between(from, to).compareTo(MAX_AVAILABILITY_PERIOD) > 0) {
+            throw new ValidationException("Период не может быть длиннее " + MAX_AVAILABILITY_PERIOD.toDays() + " дней!");
+        }
+
+        Item item = itemService.getItem(itemId);
+        if (!item.isAvailable()) {
+            return List.of();
+        }
+
+        return availability.freeSlots(itemId, from, to, includeWaiting);
+    }
+
+    /**
+     * Проверка, что пользователь завершил подтверждённое бронирование вещи.
+     * Если завершение уже известно кэшу, запрос к базе не выполняется,
+     * иначе самое раннее окончание подтверждённого бронирования читается из базы и кэшируется.
+     * @param itemId
+     * @param bookerId
+     * @return
+     */
+    @Override
+    public Boolean checkBooker(Long itemId, Long bookerId) {
+        if (eligibility.isEligible(itemId, bookerId)) {
+            return true;
+        }
+
+        LocalDateTime end = bookingRepository.findFirstEnd(itemId, bookerId, BookingStatus.APPROVED);
+        if (end == null) {
+            return false;
+        }
+        eligibility.approved(itemId, bookerId, end);
+
+        return end.isBefore(LocalDateTime.now());
+    }
+
+    private Slice<BookingDto> findBookings(BookingQuery query, Integer from, Integer size) {
+        userService.getUser(query.getUserId());
         Pageable pagingSet = PageRequest.of(from / size, size);
-        Page<Booking> retPage = null;
+        long userId = query.getUserId();
 
-        try {
-            searchStatus = BookingSearchStatus.valueOf(state);
-        } catch (IllegalArgumentException e) {
-            throw new ValidationException("Unknown state: " + state);
+        Slice<Booking> bookings;
+        if (rangeQueries && query.getState() == BookingSearchStatus.CURRENT && query.isStateOnly()) {
+            bookings = loadBookings(query.isByOwner()
+                    ? bookingRepository.findCurrentByOwnerInRange(userId, query.getNow(), pagingSet)
+                    : bookingRepository.findCurrentByBookerInRange(userId, query.getNow(), pagingSet));
+        } else {
+            bookings = bookingRepository.findBookings(query, pagingSet);
         }
 
-        switch (searchStatus) {
-            case ALL:
-                retPage = bookingRepository.findAllByItem_Owner_IdOrderByStartDesc(userId, pagingSet);
-                break;
-            case PAST:
-                retPage = bookingRepository.findAllByItem_Owner_IdAndStartBeforeAndStatusOrderByStartDesc(userId,
-                        LocalDateTime.now(),
-                        BookingStatus.APPROVED,
-                        pagingSet);
-                break;
-            case FUTURE:
-                retPage = bookingRepository.findAllByItem_Owner_IdAndStartAfterOrderByStartDesc(userId,
-                                                                                                    LocalDateTime.now(),
-                                                                                                    pagingSet);
-                break;
-            case CURRENT:
-                retPage = bookingRepository.findAllByItem_Owner_IdAndStartBeforeAndEndAfterOrderByStartDesc(userId,
-                        LocalDateTime.now(),
-                        LocalDateTime.now(),
-                        pagingSet);
-                break;
-            case WAITING: case REJECTED:
-                retPage = bookingRepository.findAllByItem_Owner_IdAndStatusOrderByStartDesc(userId, BookingStatus.valueOf(state), pagingSet);
+        return bookings.map(BookingMapper::toBookingDto);
+    }
+
+    private Slice<BookingDto> findBookingsAfter(BookingQuery query, String after, Integer size) {
+        userService.getUser(query.getUserId());
+
+        if (size == null || size <= 0) {
+            throw new ValidationException("Size должно быть положительным числом");
         }
 
+        //Запрашивается на одну запись больше, чтобы узнать, есть ли следующая порция
+        List<Booking> bookings = bookingRepository.findPageAfter(query,
+                                                                 after == null ? null : BookingCursor.decode(after),
+                                                                 size + 1);
+        boolean hasNext = bookings.size() > size;
+
         List<BookingDto> ret = new ArrayList<>();
-        for (Booking booking : retPage) {
+        for (Booking booking : hasNext ? bookings.subList(0, size) : bookings) {
             ret.add(BookingMapper.toBookingDto(booking));
         }
-        return ret;
+        return new SliceImpl<>(ret, PageRequest.of(0, size), hasNext);
     }
 
-    @Override
-    public Boolean checkBooker(Long itemId, Long bookerId) {
-        return bookingRepository.existsByItem_IdAndBooker_IdAndStatusAndEndBefore(itemId,
-                bookerId,
-                BookingStatus.APPROVED,
-                LocalDateTime.now());
+    /**
+     * Загрузка бронирований по периодам из нативного запроса одним запросом с сохранением порядка
+     */
+    private Slice<Booking> loadBookings(Slice<BookingPeriod> periods) {
+        Map<Long, Booking> bookings = bookingRepository.findAllByIdIn(periods.map(BookingPeriod::getId).getContent())
+                .stream()
+                .collect(Collectors.toMap(Booking::getId, Function.identity()));
+
+        return periods.map(period -> bookings.get(period.getId()));
+    }
+
+    private long countBookings(BookingQuery query) {
+        return counter.count("bookings:" + query.shape() + ":" + query.getUserId() + ":" +
+                             query.getWindowStart() + ":" + query.getWindowEnd(),
+                () -> bookingRepository.countBookings(query));
+    }
+
+    /**
+     * Отбор бронирований пользователя или его вещей в заданном состоянии,
+     * начинающихся в периоде [start, end), границы периода необязательные
+     */
+    private BookingQuery query(boolean byOwner, String state, long userId, LocalDateTime start, LocalDateTime end) {
+        BookingSearchStatus searchStatus;
+        try {
+            searchStatus = BookingSearchStatus.valueOf(state);
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Unknown state: " + state);
+        }
+        if (start != null && end != null && !start.isBefore(end)) {
+            throw new ValidationException("Заданы некорректные даты периода!");
+        }
+
+        return BookingQuery.builder()
+                .byOwner(byOwner)
+                .userId(userId)
+                .state(searchStatus)
+                .now(LocalDateTime.now())
+                .windowStart(start)
+                .windowEnd(end)
+                .build();
     }
 }
@@ -0,0 +1,149 @@
+package ru.practicum.shareit.booking.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.shareit.booking.BookingSearchStatus;
+import ru.practicum.shareit.booking.BookingStateCounts;
+import ru.practicum.shareit.booking.BookingStatus;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Количества бронирований пользователя по состояниям для GET /bookings/counts и GET /bookings/owner/counts.
+ * При shareit.booking.counts.cached количества, посчитанные агрегирующим запросом, хранятся в памяти
+ * и изменяются при создании бронирования и изменении его статуса.
+ * Запись пересчитывается, когда одно из бронирований начинается или заканчивается (CURRENT, PAST и FUTURE
+ * зависят от текущего момента), и не реже чем через shareit.booking.counts.ttl - этим ограничивается
+ * расхождение с изменениями, сделанными другими экземплярами приложения.
+ */
+@Component
+public class BookingStateCounter {
+    private static final int MAX_ENTRIES = 10_000;
+
+    private final boolean cached;
+    private final Duration ttl;
+    private final Clock clock;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    @Autowired
+    public BookingStateCounter(@Value("${shareit.booking.counts.cached:true}") boolean cached,
+                               @Value("${shareit.booking.counts.ttl:5m}") Duration ttl) {
+        this(cached, ttl, Clock.systemDefaultZone());
+    }
+
+    public BookingStateCounter(boolean cached, Duration ttl, Clock clock) {
+        this.cached = cached;
+        this.ttl = ttl;
+        this.clock = clock;
+    }
+
+    /**
+     * Получение количеств бронирований по состояниям
+     * @param byOwner true - бронирования вещей пользователя, false - бронирования самого пользователя
+     * @param userId пользователь
+     * @param loader агрегирующий запрос, выполняется при отсутствии или устаревании записи
+     * @return количество бронирований по каждому состоянию
+     */
+    public Map<BookingSearchStatus, Long> counts(boolean byOwner, long userId, Supplier<BookingStateCounts> loader) {
+        LocalDateTime now = LocalDateTime.now(clock);
+        String key = key(byOwner, userId);
+
+        Entry entry = cached ? entries.get(key) : null;
+        if (entry != null && entry.isValid(now)) {
+            return new EnumMap<>(entry.counts.getCounts());
+        }
+
+        BookingStateCounts counts = loader.get();
+        if (cached) {
+            if (entries.size() >= MAX_ENTRIES) {
+                entries.values().removeIf(e -> !e.isValid(now));
+            }
+            entries.put(key, new Entry(counts, now.plus(ttl)));
+        }
+        return new EnumMap<>(counts.getCounts());
+    }
+
+    /**
+     * Учёт нового бронирования в статусе WAITING у арендатора и владельца вещи
+     */
+    public void created(long bookerId, long ownerId, LocalDateTime start) {
+        boolean future = start.isAfter(LocalDateTime.now(clock));
+        Consumer<BookingStateCounts> change = counts -> {
+            counts.add(BookingSearchStatus.ALL, 1);
+            counts.add(BookingSearchStatus.WAITING, 1);
+            if (future) {
+                counts.add(BookingSearchStatus.FUTURE, 1);
+            }
+            counts.changesAt(start);
+        };
+        update(key(false, bookerId), change);
+        update(key(true, ownerId), change);
+    }
+
+    /**
+     * Учёт изменения статуса бронирования у арендатора и владельца вещи
+     */
+    public void statusChanged(long bookerId,
+                              long ownerId,
+                              LocalDateTime start,
+                              BookingStatus oldStatus,
+                              BookingStatus newStatus) {
+        boolean started = start.isBefore(LocalDateTime.now(clock));
+        Consumer<BookingStateCounts> change = counts -> {
+            addStatus(counts, oldStatus, started, -1);
+            addStatus(counts, newStatus, started, 1);
+        };
+        update(key(false, bookerId), change);
+        update(key(true, ownerId), change);
+    }
+
+    //Состояния, зависящие от статуса: WAITING, REJECTED и PAST (подтверждённые начавшиеся бронирования)
+    private void addStatus(BookingStateCounts counts, BookingStatus status, boolean started, long delta) {
+        if (status == BookingStatus.WAITING) {
+            counts.add(BookingSearchStatus.WAITING, delta);
+        } else if (status == BookingStatus.REJECTED) {
+            counts.add(BookingSearchStatus.REJECTED, delta);
+        } else if (status == BookingStatus.APPROVED && started) {
+            counts.add(BookingSearchStatus.PAST, delta);
+        }
+    }
+
+    //Записи не изменяются после публикации, изменение применяется к копии
+    private void update(String key, Consumer<BookingStateCounts> change) {
+        if (!cached) {
+            return;
+        }
+        entries.computeIfPresent(key, (k, entry) -> {
+            BookingStateCounts counts = entry.counts.copy();
+            change.accept(counts);
+            return new Entry(counts, entry.expiresAt);
+        });
+    }
+
+    private static String key(boolean byOwner, long userId) {
+        return (byOwner ? "owner:" : "booker:") + userId;
+    }
+
+    private static class Entry {
+        private final BookingStateCounts counts;
+        private final LocalDateTime expiresAt;
+
+        Entry(BookingStateCounts counts, LocalDateTime expiresAt) {
+            this.counts = counts;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isValid(LocalDateTime now) {
+            return expiresAt.isAfter(now) && (counts.getNextChange() == null || counts.getNextChange().isAfter(now));
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package ru.practicum.shareit.db;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Расширения PostgreSQL btree_gist и pg_trgm и зависящие от них объекты схемы (shareit.postgres.extensions.enabled).
+ * Для установки расширений нужны права, которых у пользователя приложения может не быть, поэтому неудачная
+ * установка не останавливает запуск: в журнал пишется предупреждение, а зависящие объекты пропускаются.
+ * Ограничение ex_bookings_approved_overlap добавляется, только если в bookings нет пересекающихся подтверждённых
+ * бронирований, иначе они перечисляются в журнале и пересечения до их исправления проверяет только приложение.
+ */
+@Slf4j
+@Component
+public class PostgresExtensions {
+    public static final String BTREE_GIST = "btree_gist";
+    public static final String PG_TRGM = "pg_trgm";
+    static final String SCRIPT = "extensions-postgresql.sql";
+    private static final int MAX_REPORTED_OVERLAPS = 20;
+
+    private final boolean enabled;
+    private final JdbcTemplate jdbcTemplate;
+    private final Set<String> installed = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public PostgresExtensions(@Value("${shareit.postgres.extensions.enabled:false}") boolean enabled,
+                              JdbcTemplate jdbcTemplate) {
+        this.enabled = enabled;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Установка расширений, создание зависящих от них индексов и ограничения при запуске
+     */
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        for (String extension : List.of(BTREE_GIST, PG_TRGM)) {
+            try {
+                jdbcTemplate.execute("create extension if not exists " + extension);
+            } catch (DataAccessException e) {
+                log.warn("Расширение PostgreSQL {} не установлено: {}", extension, e.getMostSpecificCause().getMessage());
+            }
+        }
+        installed.addAll(jdbcTemplate.queryForList("select extname from pg_extension", String.class));
+        new ResourceDatabasePopulator(new ClassPathResource(SCRIPT)).execute(jdbcTemplate.getDataSource());
+        addOverlapConstraint();
+    }
+
+    /**
+     * Расширение установлено в базе (при выключенном shareit.postgres.extensions.enabled - никакое)
+     */
+    public boolean isInstalled(String extension) {
+        return installed.contains(extension);
+    }
+
+    /**
+     * Таблица bookings не секционирована (см. partitions-postgresql.sql)
+     */
+    public boolean isPlainBookings() {
+        return "r".equals(jdbcTemplate.queryForObject(
+                "select relkind::text from pg_class where oid = 'bookings'::regclass", String.class));
+    }
+
+    /**
+     * Идентификаторы подтверждённых бронирований одной вещи с пересекающимися периодами
+     * (не больше MAX_REPORTED_OVERLAPS пар). Периоды включают границы, как и колонка period.
+     */
+    public List<Long> findApprovedOverlaps() {
+        return jdbcTemplate.query(" select a.id, b.id from bookings a " +
+                                  " join bookings b on b.item_id = a.item_id and b.id > a.id " +
+                                  " where a.status = 'APPROVED' and b.status = 'APPROVED' " +
+                                  " and a.start_date <= b.end_date and b.start_date <= a.end_date " +
+                                  " order by a.id, b.id limit ?",
+                        (rs, rowNum) -> List.of(rs.getLong(1), rs.getLong(2)),
+                        MAX_REPORTED_OVERLAPS)
+                .stream()
+                .flatMap(List::stream)
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    private void addOverlapConstraint() {
+        if (!isInstalled(BTREE_GIST)) {
+            log.warn("Без расширения {} пересечения подтверждённых бронирований проверяет только приложение",
+                    BTREE_GIST);
+            return;
+        }
+        //Секционированную таблицу защищает booking_periods (partitions-postgresql.sql)
+        if (!isPlainBookings() || hasOverlapConstraint()) {
+            return;
+        }
+        List<Long> overlaps = findApprovedOverlaps();
+        if (!overlaps.isEmpty()) {
+            log.warn("Ограничение ex_bookings_approved_overlap не добавлено: пересекаются подтверждённые " +
+                     "бронирования {}. До отмены пересечений их проверяет только приложение", overlaps);
+            return;
+        }
+        try {
+            jdbcTemplate.execute("alter table bookings add constraint ex_bookings_approved_overlap " +
+                                 "exclude using gist (item_id with =, period with &&) where (status = 'APPROVED')");
+            log.info("Добавлено ограничение ex_bookings_approved_overlap");
+        } catch (DataAccessException e) {
+            //Ограничение добавил другой экземпляр или пересечение появилось после проверки
+            log.warn("Ограничение ex_bookings_approved_overlap не добавлено: {}", e.getMostSpecificCause().getMessage());
+        }
+    }
+
+    private boolean hasOverlapConstraint() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "select exists (select 1 from pg_constraint where conname = 'ex_bookings_approved_overlap')",
+                Boolean.class));
+    }
+}
@@ -1,10 +1,19 @@
 package ru.practicum.shareit.item;
 
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import ru.practicum.shareit.item.model.Comment;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface CommentRepository extends JpaRepository<Comment, Long> {
+    @Query(" select c from Comment c where c.item.id = ?1")
     List<Comment> findAllByItem_Id(Long itemId);
+
+    //Отзывы к нескольким вещам вместе с вещами, их владельцами, запросами и авторами отзывов
+    @EntityGraph(attributePaths = {"item", "item.owner", "item.request", "item.request.requestor", "author"})
+    @Query(" select c from Comment c where c.item.id in ?1 order by c.id")
+    List<Comment> findAllByItem_IdIn(Collection<Long> itemIds);
 }
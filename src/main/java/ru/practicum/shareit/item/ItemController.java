@@ -1,17 +1,24 @@
 package ru.practicum.shareit.item;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Slice;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import ru.practicum.shareit.booking.dto.AvailabilitySlotDto;
+import ru.practicum.shareit.booking.service.BookingService;
 import ru.practicum.shareit.item.dto.CommentDto;
 import ru.practicum.shareit.item.dto.ItemDto;
 import ru.practicum.shareit.item.service.CommentService;
 import ru.practicum.shareit.item.service.ItemService;
+import ru.practicum.shareit.paging.SliceResponse;
 
 import javax.validation.Valid;
 import javax.validation.constraints.Positive;
 import javax.validation.constraints.PositiveOrZero;
-import java.util.Collection;
+import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * Контроллер для обработки запросов по вещам
@@ -22,12 +29,15 @@ import java.util.Collection;
 public class ItemController {
     private final ItemService itemService;
     private final CommentService commentService;
+    private final BookingService bookingService;
 
     @Autowired
     public ItemController(ItemService itemService,
-                          CommentService commentService) {
+                          CommentService commentService,
+                          BookingService bookingService) {
         this.itemService = itemService;
         this.commentService = commentService;
+        this.bookingService = bookingService;
     }
 
     /**
@@ -65,32 +75,71 @@ public class ItemController {
         return ret;
     }
 
+    /**
+     * Свободные окна вещи в периоде from - to.
+     * Учитываются подтверждённые бронирования, при waiting=true также ожидающие подтверждения.
+     */
+    @GetMapping("/{itemId}/availability")
+    public List<AvailabilitySlotDto> getAvailability(
+            @PathVariable long itemId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "false", required = false) Boolean waiting) {
+        return bookingService.getAvailability(itemId, from, to, waiting);
+    }
+
     /**
      * Просмотр владельцем списка всех его вещей с указанием названия и описания для каждой.
+     * Заголовок X-Has-More сообщает, есть ли следующая порция, X-Total-Count передаётся только при total=true.
      */
     @GetMapping
-    public Collection<ItemDto> getAllUserItems(
+    public ResponseEntity<List<ItemDto>> getAllUserItems(
             @PositiveOrZero(message = "From должно быть положительным числом или 0")
             @RequestParam(defaultValue = "0",required = false) Integer from,
             @Positive(message = "Size должно быть положительным числом")
             @RequestParam(defaultValue = "10",required = false) Integer size,
+            @RequestParam(defaultValue = "false", required = false) Boolean total,
             @RequestHeader("X-Sharer-User-Id") long userId) {
-        return itemService.getAllUserItems(userId, from, size);
+        Slice<ItemDto> items = itemService.getAllUserItems(userId, from, size);
+        return SliceResponse.builder(items, total ? itemService.countUserItems(userId) : null)
+                .body(items.getContent());
     }
 
     /**
      * Поиск вещи потенциальным арендатором.
      * Пользователь передаёт в строке запроса текст для поиска,
      * и система ищет вещи, содержащие этот текст в названии или описании.
+     * При fuzzy=true ищутся вещи, слова которых начинаются со слов запроса или отличаются от них
+     * на одну-две опечатки, более близкие совпадения выдаются первыми. Пока индекс вещей не построен,
+     * нечёткий поиск выполняет PostgreSQL по триграммам, а без полнотекстового поиска запрос отклоняется (400).
      */
     @GetMapping("/search")
-    public Collection<ItemDto> searchItems(
+    public ResponseEntity<List<ItemDto>> searchItems(
             @PositiveOrZero(message = "From должно быть положительным числом или 0")
             @RequestParam(defaultValue = "0",required = false) Integer from,
             @Positive(message = "Size должно быть положительным числом")
             @RequestParam(defaultValue = "10",required = false) Integer size,
+            @RequestParam(defaultValue = "false", required = false) Boolean total,
+            @RequestParam(defaultValue = "false", required = false) Boolean fuzzy,
             @RequestParam String text) {
-        return itemService.searchItems(text, from, size);
+        Slice<ItemDto> items = itemService.searchItems(text, from, size, fuzzy);
+        return SliceResponse.builder(items, total ? itemService.countSearchItems(text, fuzzy) : null)
+                .body(items.getContent());
+    }
+
+    /**
+     * Подсказки названий вещей при вводе строки поиска.
+     * Эндпоинт — GET /items/suggest?prefix={prefix}&size={size}.
+     * Возвращает до size (не больше 10) названий доступных вещей, начинающихся с префикса
+     * или содержащих слово, начинающееся с него, сначала самые частые.
+     * Подсказки выдаются из индекса в памяти без запроса к базе.
+     */
+    @GetMapping("/suggest")
+    public List<String> suggestNames(
+            @RequestParam String prefix,
+            @Positive(message = "Size должно быть положительным числом")
+            @RequestParam(defaultValue = "10",required = false) Integer size) {
+        return itemService.suggestNames(prefix, size);
     }
 
     /**
@@ -1,45 +1,110 @@
 package ru.practicum.shareit.item;
 
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.item.model.ItemBookingRef;
+import ru.practicum.shareit.item.model.ItemSearchHit;
+import ru.practicum.shareit.item.model.ItemText;
 
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
 public interface ItemRepository extends JpaRepository<Item, Long> {
+    @Query(" select i from Item i where i.request.id = ?1")
     Collection<Item> findAllByRequest_Id(Long requestId);
 
-    Page<Item> findItemsByOwnerIdOrderById(Long id, Pageable pageable);
+    @EntityGraph(attributePaths = {"owner", "request", "request.requestor"})
+    List<Item> findAllByIdIn(Collection<Long> ids);
 
+    @EntityGraph(attributePaths = {"owner", "request", "request.requestor"})
+    @Query(" select i from Item i where i.owner.id = ?1 order by i.id")
+    Slice<Item> findItemsByOwnerIdOrderById(Long id, Pageable pageable);
+
+    @Query(" select count(i) from Item i where i.owner.id = ?1")
+    long countByOwnerId(Long id);
+
+    //Поиск подстроки: текст передаётся через escapeLike, чтобы % и _ искались как обычные символы,
+    //как в индексе вещей в памяти
     @Query(" select i from Item i " +
-            "where (upper(i.name) like upper(concat('%', ?1, '%')) " +
-            " or upper(i.description) like upper(concat('%', ?1, '%'))) " +
+            "where (upper(i.name) like upper(concat('%', ?1, '%')) escape '\\' " +
+            " or upper(i.description) like upper(concat('%', ?1, '%')) escape '\\') " +
             " and i.available = true")
-    Page<Item> search(String text, Pageable pageable);
-
-    @Query(value = "select bl.id, bl.booker_id " +
-                    " from (select i.id," +
-                                 " (select max(b.start_date) " +
-                                    " from bookings b " +
-                                   " where b.start_date < ?2 " +
-                                     " and i.id = b.item_id) last_booking_date from items i) ib " +
-                   " LEFT JOIN bookings bl ON bl.item_id = ib.id AND bl.start_date = ib.last_booking_date " +
-                   " where ib.id = ?1 ",
-            nativeQuery = true)
-    List<Object[]> findLastBooking(Long itemId, Date nowDate);
-
-    @Query(value = "select bl.id, bl.booker_id " +
-                    " from (select i.id," +
-                                 " (select min(b.start_date) " +
-                                    " from bookings b " +
-                                   " where b.start_date > ?2 and i.id = b.item_id) next_booking_date " +
-                           " from items i) ib " +
-                  " LEFT JOIN bookings bl ON bl.item_id = ib.id AND bl.start_date = ib.next_booking_date " +
-                  " where ib.id = ?1 ",
+    Slice<Item> search(String text, Pageable pageable);
+
+    @Query(" select count(i) from Item i " +
+            "where (upper(i.name) like upper(concat('%', ?1, '%')) escape '\\' " +
+            " or upper(i.description) like upper(concat('%', ?1, '%')) escape '\\') " +
+            " and i.available = true")
+    long countSearch(String text);
+
+    //Названия доступных вещей, начинающиеся с префикса или содержащие слово, начинающееся с него.
+    //Префикс передаётся через escapeLike
+    @Query(" select distinct i.name from Item i where i.available = true " +
+           " and (upper(i.name) like upper(concat(?1, '%')) escape '\\' " +
+           "      or upper(i.name) like upper(concat('% ', ?1, '%')) escape '\\') " +
+           " order by i.name")
+    List<String> findNamesByPrefix(String prefix, Pageable pageable);
+
+    /**
+     * Экранирование символов шаблона LIKE (\, % и _) для запросов search, countSearch и findNamesByPrefix
+     */
+    static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    //Тексты доступных вещей порциями по возрастанию идентификатора для построения индекса поиска
+    @Query(" select i.id as id, i.name as name, i.description as description from Item i " +
+           " where i.available = true and i.id > ?1 order by i.id")
+    List<ItemText> findAvailableTextsAfter(long id, Pageable pageable);
+
+    //Полнотекстовый поиск по колонке items.search (только PostgreSQL, см. schema-postgresql.sql).
+    //Запрос разбирается словарями russian и english, совпадения в названии ранжируются выше, чем в описании.
+    //Возвращаются только идентификаторы и релевантность, вещи догружаются одним запросом findAllByIdIn
+    @Query(value = " select i.id as id, ts_rank(i.search, s.q) as rank from items i, " +
+                   " (select plainto_tsquery('russian', ?1) || plainto_tsquery('english', ?1) as q) s " +
+                   " where i.search @@ s.q and i.is_available = true " +
+                   " order by rank desc, i.id",
+           nativeQuery = true)
+    Slice<ItemSearchHit> searchFullText(String text, Pageable pageable);
+
+    @Query(value = " select count(*) from items i " +
+                   " where i.search @@ (plainto_tsquery('russian', ?1) || plainto_tsquery('english', ?1)) " +
+                   " and i.is_available = true",
+           nativeQuery = true)
+    long countSearchFullText(String text);
+
+    //Нечёткий поиск по триграммам pg_trgm (только PostgreSQL, индекс ix_items_text_trgm в extensions-postgresql.sql):
+    //запрос похож на часть текста вещи не меньше порога pg_trgm.word_similarity_threshold (по умолчанию 0.6).
+    //Используется, пока индекс вещей в памяти не построен
+    @Query(value = " select i.id as id, word_similarity(upper(?1), " +
+                   "        upper(coalesce(i.name, '') || ' ' || coalesce(i.description, ''))) as rank from items i " +
+                   " where upper(coalesce(i.name, '') || ' ' || coalesce(i.description, '')) %> upper(?1) " +
+                   " and i.is_available = true " +
+                   " order by rank desc, i.id",
+           nativeQuery = true)
+    Slice<ItemSearchHit> searchFuzzy(String text, Pageable pageable);
+
+    @Query(value = " select count(*) from items i " +
+                   " where upper(coalesce(i.name, '') || ' ' || coalesce(i.description, '')) %> upper(?1) " +
+                   " and i.is_available = true",
+           nativeQuery = true)
+    long countSearchFuzzy(String text);
+
+    //Последнее начавшееся и ближайшее будущее бронирование каждой из вещей одним запросом:
+    //бронирования делятся на прошлые и будущие относительно ?2, в каждой группе берётся первое по началу
+    @Query(value = " select t.item_id as itemId, t.id as id, t.booker_id as bookerId, t.is_last as last " +
+                   " from (select b.item_id, b.id, b.booker_id, b.start_date < ?2 as is_last, " +
+                   "              row_number() over (partition by b.item_id, b.start_date < ?2 " +
+                   "                                 order by case when b.start_date < ?2 then b.start_date end desc, " +
+                   "                                          b.start_date, b.id) as rn " +
+                   "         from bookings b " +
+                   "        where b.item_id in ?1 and b.start_date <> ?2) t " +
+                   " where t.rn = 1",
             nativeQuery = true)
-    List<Object[]> findNextBooking(Long itemId, Date nowDate);
+    List<ItemBookingRef> findLastAndNextBookings(Collection<Long> itemIds, Date nowDate);
 }
@@ -0,0 +1,14 @@
+package ru.practicum.shareit.item.model;
+
+/**
+ * Проекция последнего или ближайшего бронирования вещи
+ */
+public interface ItemBookingRef {
+    Long getItemId();           //идентификатор вещи;
+
+    Long getId();               //уникальный идентификатор бронирования;
+
+    Long getBookerId();         //идентификатор арендатора;
+
+    Boolean getLast();          //true - последнее начавшееся бронирование, false - ближайшее будущее.
+}
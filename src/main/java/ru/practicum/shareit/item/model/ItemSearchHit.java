@@ -0,0 +1,10 @@
+package ru.practicum.shareit.item.model;
+
+/**
+ * Проекция найденной вещи: идентификатор и релевантность запросу
+ */
+public interface ItemSearchHit {
+    Long getId();               //уникальный идентификатор вещи;
+
+    Float getRank();            //релевантность, чем больше, тем выше вещь в результатах.
+}
@@ -0,0 +1,12 @@
+package ru.practicum.shareit.item.model;
+
+/**
+ * Проекция вещи, содержащая только текст для поиска
+ */
+public interface ItemText {
+    Long getId();               //уникальный идентификатор вещи;
+
+    String getName();           //краткое название;
+
+    String getDescription();    //развёрнутое описание.
+}
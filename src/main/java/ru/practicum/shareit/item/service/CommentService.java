@@ -3,6 +3,8 @@ package ru.practicum.shareit.item.service;
 import ru.practicum.shareit.item.dto.CommentDto;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 public interface CommentService {
     /**
@@ -15,4 +17,11 @@ public interface CommentService {
     CommentDto add(CommentDto commentDto, Long itemId, Long userId);
 
     Collection<CommentDto> findItemComments(Long itemId);
+
+    /**
+     * Отзывы к нескольким вещам одним запросом
+     * @param itemIds идентификаторы вещей
+     * @return идентификатор вещи -> отзывы, вещи без отзывов отсутствуют
+     */
+    Map<Long, List<CommentDto>> findItemsComments(Collection<Long> itemIds);
 }
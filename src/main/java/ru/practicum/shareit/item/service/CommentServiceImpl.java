@@ -16,7 +16,9 @@ import ru.practicum.shareit.user.service.UserService;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Component
 public class CommentServiceImpl implements CommentService {
@@ -76,4 +78,17 @@ public class CommentServiceImpl implements CommentService {
         }
         return ret;
     }
+
+    @Override
+    public Map<Long, List<CommentDto>> findItemsComments(Collection<Long> itemIds) {
+        Map<Long, List<CommentDto>> ret = new HashMap<>();
+        if (itemIds.isEmpty()) {
+            return ret;
+        }
+        for (Comment comment : commentRepository.findAllByItem_IdIn(itemIds)) {
+            ret.computeIfAbsent(comment.getItem().getId(), id -> new ArrayList<>())
+                    .add(CommentMapper.toCommentDto(comment));
+        }
+        return ret;
+    }
 }
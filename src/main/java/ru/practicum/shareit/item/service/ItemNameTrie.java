@@ -0,0 +1,207 @@
+package ru.practicum.shareit.item.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Префиксное дерево названий вещей для подсказок при вводе.
+ * Название добавляется в дерево с начала каждого своего слова, поэтому подсказка находится и по второму слову.
+ * Каждый узел хранит заранее вычисленные TOP_K лучших завершений: чаще встречающиеся названия, затем по алфавиту.
+ * При добавлении и удалении названия пересчитываются только узлы на путях его суффиксов.
+ * Доступ синхронизирует ItemSearchIndex.
+ */
+class ItemNameTrie {
+    static final int TOP_K = 10;
+
+    private static final Comparator<Name> RANK = Comparator.comparingInt((Name name) -> -name.count)
+            .thenComparing(name -> name.key);
+
+    private final Node root = new Node();
+    private final Map<String, Name> names = new HashMap<>();    //название в верхнем регистре -> название
+    private final Map<Integer, Name> itemNames = new HashMap<>();
+
+    void add(int itemKey, String name) {
+        String key = normalize(name);
+        if (key.isEmpty()) {
+            return;
+        }
+        Name entry = names.computeIfAbsent(key, k -> new Name(k, name.trim()));
+        itemNames.put(itemKey, entry);
+        entry.count++;
+
+        for (int start : wordStarts(key)) {
+            List<Node> path = path(key.substring(start), true);
+            Node last = path.get(path.size() - 1);
+            if (!last.names.contains(entry)) {
+                last.names.add(entry);
+            }
+            refresh(path);
+        }
+    }
+
+    void remove(int itemKey) {
+        Name entry = itemNames.remove(itemKey);
+        if (entry == null) {
+            return;
+        }
+        entry.count--;
+        if (entry.count == 0) {
+            names.remove(entry.key);
+        }
+
+        for (int start : wordStarts(entry.key)) {
+            List<Node> path = path(entry.key.substring(start), false);
+            if (path == null) {
+                continue;
+            }
+            if (entry.count == 0) {
+                path.get(path.size() - 1).names.remove(entry);
+            }
+            refresh(path);
+        }
+    }
+
+    /**
+     * Лучшие названия, в которых с начала одного из слов стоит префикс
+     * @param prefix начало названия или одного из его слов, без учёта регистра
+     * @param limit наибольшее число подсказок (не больше TOP_K)
+     */
+    List<String> suggest(String prefix, int limit) {
+        List<Node> path = path(normalize(prefix), false);
+        if (path == null) {
+            return List.of();
+        }
+        Name[] top = path.get(path.size() - 1).top;
+        List<String> ret = new ArrayList<>();
+        for (int i = 0; i < top.length && i < limit; i++) {
+            ret.add(top[i].display);
+        }
+        return ret;
+    }
+
+    static String normalize(String text) {
+        return text == null ? "" : text.strip().replaceAll("\\s+", " ").toUpperCase(Locale.ROOT);
+    }
+
+    //Узлы от корня до конца ключа, null, если ключа нет и create = false
+    private List<Node> path(String key, boolean create) {
+        List<Node> path = new ArrayList<>(key.length() + 1);
+        Node node = root;
+        path.add(node);
+        for (int i = 0; i < key.length(); i++) {
+            node = create ? node.childOrNew(key.charAt(i)) : node.child(key.charAt(i));
+            if (node == null) {
+                return null;
+            }
+            path.add(node);
+        }
+        return path;
+    }
+
+    //Пересчёт лучших завершений снизу вверх и удаление опустевших узлов
+    private void refresh(List<Node> path) {
+        for (int i = path.size() - 1; i >= 0; i--) {
+            Node node = path.get(i);
+            node.top = top(node);
+            if (i > 0 && node.top.length == 0) {
+                path.get(i - 1).removeChild(path.get(i));
+            }
+        }
+    }
+
+    private static Name[] top(Node node) {
+        List<Name> candidates = new ArrayList<>(node.names);
+        for (Node child : node.children) {
+            for (Name name : child.top) {
+                if (!candidates.contains(name)) {
+                    candidates.add(name);
+                }
+            }
+        }
+        candidates.sort(RANK);
+        return candidates.subList(0, Math.min(TOP_K, candidates.size())).toArray(new Name[0]);
+    }
+
+    private static List<Integer> wordStarts(String key) {
+        List<Integer> ret = new ArrayList<>();
+        for (int i = 0; i < key.length(); i++) {
+            if (i == 0 || key.charAt(i - 1) == ' ') {
+                ret.add(i);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Название и число доступных вещей с ним
+     */
+    private static class Name {
+        private final String key;       //название в верхнем регистре
+        private final String display;   //название в написании первой вещи
+        private int count;
+
+        Name(String key, String display) {
+            this.key = key;
+            this.display = display;
+        }
+    }
+
+    /**
+     * Узел дерева: дочерние узлы в массивах, упорядоченных по символу
+     */
+    private static class Node {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+        private static final Name[] NO_NAMES = new Name[0];
+
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        private final List<Name> names = new ArrayList<>(1);  //названия, заканчивающиеся в узле
+        private Name[] top = NO_NAMES;
+
+        Node child(char c) {
+            int pos = Arrays.binarySearch(keys, c);
+            return pos >= 0 ? children[pos] : null;
+        }
+
+        Node childOrNew(char c) {
+            int pos = Arrays.binarySearch(keys, c);
+            if (pos >= 0) {
+                return children[pos];
+            }
+            pos = -pos - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, pos);
+            System.arraycopy(children, 0, newChildren, 0, pos);
+            newKeys[pos] = c;
+            newChildren[pos] = new Node();
+            System.arraycopy(keys, pos, newKeys, pos + 1, keys.length - pos);
+            System.arraycopy(children, pos, newChildren, pos + 1, children.length - pos);
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[pos];
+        }
+
+        void removeChild(Node child) {
+            for (int pos = 0; pos < children.length; pos++) {
+                if (children[pos] == child) {
+                    char[] newKeys = new char[keys.length - 1];
+                    Node[] newChildren = new Node[children.length - 1];
+                    System.arraycopy(keys, 0, newKeys, 0, pos);
+                    System.arraycopy(children, 0, newChildren, 0, pos);
+                    System.arraycopy(keys, pos + 1, newKeys, pos, keys.length - pos - 1);
+                    System.arraycopy(children, pos + 1, newChildren, pos, children.length - pos - 1);
+                    keys = newKeys;
+                    children = newChildren;
+                    return;
+                }
+            }
+        }
+    }
+}
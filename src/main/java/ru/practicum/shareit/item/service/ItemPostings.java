@@ -0,0 +1,47 @@
+package ru.practicum.shareit.item.service;
+
+import java.util.Arrays;
+
+/**
+ * Возрастающий список идентификаторов вещей, в тексте которых встречается триграмма или слово
+ */
+class ItemPostings {
+    private int[] ids = new int[4];
+    private int size;
+
+    void add(int key) {
+        int pos = Arrays.binarySearch(ids, 0, size, key);
+        if (pos >= 0) {
+            return;
+        }
+        pos = -pos - 1;
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+        ids[pos] = key;
+        size++;
+    }
+
+    boolean remove(int key) {
+        int pos = Arrays.binarySearch(ids, 0, size, key);
+        if (pos < 0) {
+            return false;
+        }
+        System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+        size--;
+        return true;
+    }
+
+    int indexOf(int key) {
+        return Arrays.binarySearch(ids, 0, size, key);
+    }
+
+    int get(int index) {
+        return ids[index];
+    }
+
+    int size() {
+        return size;
+    }
+}
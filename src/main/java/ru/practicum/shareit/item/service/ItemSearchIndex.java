@@ -0,0 +1,462 @@
+package ru.practicum.shareit.item.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.shareit.item.ItemRepository;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.item.model.ItemText;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Индекс триграмм названий и описаний доступных вещей в памяти для поиска подстроки без обращения к базе.
+ * Для каждой триграммы хранится возрастающий массив идентификаторов вещей, в тексте которых она встречается.
+ * Поиск пересекает списки триграмм запроса, начиная с самого короткого, и проверяет вхождение подстроки
+ * у оставшихся вещей, поэтому время поиска зависит от длины списков, а не от числа вещей.
+ * Индекс строится при запуске приложения и обновляется при добавлении, изменении и удалении вещей
+ * (shareit.item.trigram-index.enabled). Изменения вещей через другие экземпляры приложения индекс видит
+ * после перестроения по расписанию shareit.item.trigram-index.rebuild-interval: новый индекс строится рядом
+ * со старым, который до замены продолжает обслуживать поиск.
+ * При полнотекстовом поиске (shareit.item.full-text-search) подстроку ищет база, поэтому триграммы не строятся,
+ * а индекс содержит только словарь и названия.
+ * Словарь слов вещей (ItemTermDictionary) используется для нечёткого поиска с опечатками,
+ * префиксное дерево названий (ItemNameTrie) - для подсказок при вводе.
+ * Идентификаторы вещей хранятся как int. Если доступна вещь с идентификатором больше Integer.MAX_VALUE,
+ * индекс не может её учесть и перестаёт считаться построенным: поиск и подсказки выполняются запросами к базе.
+ */
+@Slf4j
+@Component
+public class ItemSearchIndex {
+    private static final int GRAM = 3;
+    private static final int LOAD_BATCH_SIZE = 1000;
+    private static final int MAX_FUZZY_TERMS = 64;      //слов словаря на одно слово запроса
+    private static final int MAX_FUZZY_RESULTS = 1000;  //вещей в результате нечёткого поиска
+
+    private final boolean enabled;
+    private final boolean trigrams;         //триграммы для поиска подстроки (при выключенном полнотекстовом поиске)
+    private final ItemRepository itemRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private State state = new State();     //индекс, обслуживающий поиск
+    private State next;                     //строящийся индекс, изменения вещей применяются к обоим
+    private final Set<Integer> changedWhileBuilding = new HashSet<>();
+    private volatile boolean ready;
+    private volatile boolean overflow;      //есть доступная вещь, идентификатор которой не помещается в int
+    private boolean nextOverflow;           //то же для строящегося индекса
+
+    @Autowired
+    public ItemSearchIndex(@Value("${shareit.item.trigram-index.enabled:false}") boolean enabled,
+                           @Value("${shareit.item.full-text-search:false}") boolean fullTextSearch,
+                           ItemRepository itemRepository) {
+        this.enabled = enabled;
+        this.trigrams = !fullTextSearch;
+        this.itemRepository = itemRepository;
+    }
+
+    /**
+     * Построение индекса по доступным вещам из базы.
+     * Вещи читаются порциями без блокировки индекса, изменения вещей во время построения не теряются.
+     * Построенный индекс заменяет прежний целиком.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void build() {
+        if (!enabled) {
+            return;
+        }
+        State built = new State();
+        lock.writeLock().lock();
+        try {
+            next = built;
+            nextOverflow = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        long lastId = 0;
+        List<ItemText> batch;
+        long tooLarge = 0;
+        do {
+            batch = itemRepository.findAvailableTextsAfter(lastId, PageRequest.of(0, LOAD_BATCH_SIZE));
+            lock.writeLock().lock();
+            try {
+                for (ItemText item : batch) {
+                    if (!fits(item.getId())) {
+                        //Идентификаторы возрастают, следующие вещи тоже не поместятся
+                        nextOverflow = true;
+                        tooLarge = item.getId();
+                        break;
+                    }
+                    if (!changedWhileBuilding.contains(toKey(item.getId()))) {
+                        built.put(toKey(item.getId()), item.getName(), item.getDescription());
+                    }
+                    lastId = item.getId();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } while (batch.size() == LOAD_BATCH_SIZE && tooLarge == 0);
+
+        lock.writeLock().lock();
+        try {
+            state = built;
+            next = null;
+            changedWhileBuilding.clear();
+            if (nextOverflow) {
+                overflow(tooLarge);
+            } else {
+                overflow = false;
+                ready = true;
+            }
+            log.info("Индекс поиска вещей построен, вещей: {}, триграмм: {}", built.texts.size(), built.postings.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Перестроение индекса по расписанию, чтобы учесть изменения вещей через другие экземпляры приложения
+     */
+    @Scheduled(fixedDelayString = "${shareit.item.trigram-index.rebuild-interval:600000}",
+               initialDelayString = "${shareit.item.trigram-index.rebuild-interval:600000}")
+    public void rebuild() {
+        build();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Индекс построен с триграммами и запрос содержит хотя бы одну триграмму
+     */
+    public boolean covers(String text) {
+        return trigrams && ready && text != null && normalize(text).length() >= GRAM;
+    }
+
+    /**
+     * Обновление вещи в индексе после сохранения: доступная вещь индексируется, недоступная удаляется
+     */
+    public void update(Item item) {
+        if (!enabled) {
+            return;
+        }
+        if (!fits(item.getId())) {
+            if (item.isAvailable()) {
+                lock.writeLock().lock();
+                try {
+                    if (next != null) {
+                        nextOverflow = true;
+                    }
+                    overflow(item.getId());
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            int key = toKey(item.getId());
+            for (State target : targets()) {
+                target.remove(key);
+                if (item.isAvailable()) {
+                    target.put(key, item.getName(), item.getDescription());
+                }
+            }
+            if (next != null) {
+                changedWhileBuilding.add(key);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Удаление вещи из индекса
+     */
+    public void delete(long itemId) {
+        if (!enabled || !fits(itemId)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            int key = toKey(itemId);
+            for (State target : targets()) {
+                target.remove(key);
+            }
+            if (next != null) {
+                changedWhileBuilding.add(key);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Идентификаторы доступных вещей, содержащих текст в названии или описании без учёта регистра,
+     * по возрастанию идентификатора
+     * @param text строка поиска не короче трёх символов
+     * @param offset число пропускаемых вещей
+     * @param limit наибольшее число вещей
+     */
+    public List<Long> find(String text, long offset, int limit) {
+        List<Long> ret = new ArrayList<>();
+        match(normalize(text), offset, limit, ret);
+        return ret;
+    }
+
+    /**
+     * Количество доступных вещей, содержащих текст в названии или описании
+     */
+    public long count(String text) {
+        return match(normalize(text), 0, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * Подсказки названий доступных вещей: названия, в которых с начала одного из слов стоит префикс,
+     * сначала самые частые
+     * @param prefix начало названия или одного из его слов
+     * @param limit наибольшее число подсказок, не больше ItemNameTrie.TOP_K
+     */
+    public List<String> suggest(String prefix, int limit) {
+        lock.readLock().lock();
+        try {
+            return state.names.suggest(prefix, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Нечёткий поиск по словам: каждое слово запроса должно быть началом слова вещи или отличаться от него
+     * не больше чем на одну правку (слова из 3-5 символов) или на две правки (от 6 символов).
+     * Вещи упорядочены по сумме расстояний слов, затем по возрастанию идентификатора.
+     * На слово запроса рассматривается не больше MAX_FUZZY_TERMS слов словаря,
+     * результат ограничен MAX_FUZZY_RESULTS вещами.
+     * @param text строка поиска
+     * @param offset число пропускаемых вещей
+     * @param limit наибольшее число вещей
+     */
+    public List<Long> findFuzzy(String text, long offset, int limit) {
+        List<Long> ret = new ArrayList<>();
+        List<Map.Entry<Integer, Integer>> found = matchFuzzy(normalize(text));
+        for (long i = offset; i < found.size() && ret.size() < limit; i++) {
+            ret.add((long) found.get((int) i).getKey());
+        }
+        return ret;
+    }
+
+    /**
+     * Количество вещей, найденных нечётким поиском (не больше MAX_FUZZY_RESULTS)
+     */
+    public long countFuzzy(String text) {
+        return matchFuzzy(normalize(text)).size();
+    }
+
+    //Вещь -> сумма расстояний слов запроса до слов вещи
+    private List<Map.Entry<Integer, Integer>> matchFuzzy(String query) {
+        List<String> words = ItemTermDictionary.words(query);
+        if (words.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Integer, Integer> scores = null;
+        lock.readLock().lock();
+        try {
+            ItemTermDictionary dictionary = state.dictionary;
+            for (String word : words) {
+                Map<Integer, Integer> wordScores = new HashMap<>();
+                for (Map.Entry<String, Integer> term : dictionary.similar(word,
+                                                                          maxDistance(word),
+                                                                          MAX_FUZZY_TERMS).entrySet()) {
+                    ItemPostings items = dictionary.postings(term.getKey());
+                    for (int i = 0; i < items.size(); i++) {
+                        int key = items.get(i);
+                        if (scores == null || scores.containsKey(key)) {
+                            wordScores.merge(key, term.getValue(), Math::min);
+                        }
+                    }
+                }
+                if (scores != null) {
+                    for (Map.Entry<Integer, Integer> score : wordScores.entrySet()) {
+                        score.setValue(score.getValue() + scores.get(score.getKey()));
+                    }
+                }
+                scores = wordScores;
+                if (scores.isEmpty()) {
+                    break;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Map.Entry<Integer, Integer>> ret = new ArrayList<>(scores.entrySet());
+        ret.sort(Map.Entry.<Integer, Integer>comparingByValue().thenComparing(Map.Entry.comparingByKey()));
+        return ret.size() > MAX_FUZZY_RESULTS ? ret.subList(0, MAX_FUZZY_RESULTS) : ret;
+    }
+
+    //Допустимое число опечаток в слове запроса
+    private static int maxDistance(String word) {
+        if (word.length() < GRAM) {
+            return 0;
+        }
+        return word.length() <= 5 ? 1 : 2;
+    }
+
+    /**
+     * Перебор вещей, содержащих все триграммы запроса, с проверкой вхождения подстроки
+     * @return число найденных вещей (не больше offset + limit)
+     */
+    private long match(String query, long offset, int limit, List<Long> found) {
+        lock.readLock().lock();
+        try {
+            State current = state;
+            ItemPostings[] lists = current.queryPostings(query);
+            if (lists.length == 0) {
+                return 0;
+            }
+            Arrays.sort(lists, Comparator.comparingInt(ItemPostings::size));
+
+            long matched = 0;
+            ItemPostings shortest = lists[0];
+            for (int i = 0; i < shortest.size() && matched - offset < limit; i++) {
+                int key = shortest.get(i);
+                if (containsAll(lists, key) && matches(current.texts.get(key), query)) {
+                    if (matched >= offset && found != null) {
+                        found.add((long) key);
+                    }
+                    matched++;
+                }
+            }
+            return matched;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static boolean containsAll(ItemPostings[] lists, int key) {
+        for (int i = 1; i < lists.length; i++) {
+            if (lists[i].indexOf(key) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(String[] text, String query) {
+        return text != null && (text[0].contains(query) || text[1].contains(query));
+    }
+
+    //Триграммы строки, три символа упаковываются в одно число
+    private static void addGrams(String text, Set<Long> grams) {
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            grams.add(((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2));
+        }
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Состояние индекса: триграммы, тексты, словарь и названия вещей
+     */
+    private class State {
+        private final Map<Long, ItemPostings> postings = new HashMap<>(); //триграмма -> вещи
+        private final Map<Integer, String[]> texts = new HashMap<>();   //вещь -> название и описание в верхнем регистре
+        private final ItemTermDictionary dictionary = new ItemTermDictionary();
+        private final ItemNameTrie names = new ItemNameTrie();
+
+        //Списки всех триграмм запроса, пустой массив, если хотя бы одной триграммы нет в индексе
+        private ItemPostings[] queryPostings(String query) {
+            Set<Long> grams = new HashSet<>();
+            addGrams(query, grams);
+            ItemPostings[] lists = new ItemPostings[grams.size()];
+            int i = 0;
+            for (Long gram : grams) {
+                ItemPostings list = postings.get(gram);
+                if (list == null || list.size() == 0) {
+                    return new ItemPostings[0];
+                }
+                lists[i++] = list;
+            }
+            return lists;
+        }
+
+        private void put(int key, String name, String description) {
+            String[] text = {normalize(name), normalize(description)};
+            texts.put(key, text);
+            dictionary.add(key, text[0] + " " + text[1]);
+            names.add(key, name);
+            if (!trigrams) {
+                return;
+            }
+
+            Set<Long> grams = new HashSet<>();
+            addGrams(text[0], grams);
+            addGrams(text[1], grams);
+            for (Long gram : grams) {
+                postings.computeIfAbsent(gram, g -> new ItemPostings()).add(key);
+            }
+        }
+
+        private void remove(int key) {
+            String[] text = texts.remove(key);
+            if (text == null) {
+                return;
+            }
+            dictionary.remove(key, text[0] + " " + text[1]);
+            names.remove(key);
+            if (!trigrams) {
+                return;
+            }
+
+            Set<Long> grams = new HashSet<>();
+            addGrams(text[0], grams);
+            addGrams(text[1], grams);
+            for (Long gram : grams) {
+                ItemPostings list = postings.get(gram);
+                if (list != null && list.remove(key) && list.size() == 0) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    //Обслуживающий и строящийся индексы
+    private List<State> targets() {
+        return next == null ? List.of(state) : List.of(state, next);
+    }
+
+    private void overflow(long itemId) {
+        if (!overflow) {
+            log.warn("Вещь {} не помещается в индекс поиска вещей, поиск выполняется запросами к базе", itemId);
+        }
+        overflow = true;
+        ready = false;
+    }
+
+    private static boolean fits(long itemId) {
+        return itemId <= Integer.MAX_VALUE;
+    }
+
+    private static int toKey(long itemId) {
+        return (int) itemId;
+    }
+}
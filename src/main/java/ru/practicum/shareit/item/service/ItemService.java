@@ -1,9 +1,12 @@
 package ru.practicum.shareit.item.service;
 
+import org.springframework.data.domain.Slice;
 import ru.practicum.shareit.item.dto.ItemDto;
 import ru.practicum.shareit.item.model.Item;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Интерфейс для работы с вещами
@@ -24,19 +27,50 @@ public interface ItemService {
 
     Item getItem(Long id);
 
+    /**
+     * Получение вещей по списку идентификаторов одним запросом
+     * @param ids идентификаторы вещей
+     * @return найденные вещи по идентификаторам, отсутствующих вещей в результате нет
+     */
+    Map<Long, Item> getItems(Collection<Long> ids);
+
     /**
      * Получение всех вещей пользователя
      * @param userId пользоаптнль
      * @return вещи
      */
-    List<ItemDto> getAllUserItems(Long userId, Integer from, Integer size);
+    Slice<ItemDto> getAllUserItems(Long userId, Integer from, Integer size);
+
+    /**
+     * Приблизительное количество вещей пользователя
+     * @param userId пользователь
+     * @return количество вещей
+     */
+    long countUserItems(Long userId);
 
     /**
      * Поиск вещи по тексту в названии или описании
      * @param text строка поиска
+     * @param fuzzy поиск слов с опечатками
      * @return найденные вещи
      */
-    List<ItemDto> searchItems(String text, Integer from, Integer size);
+    Slice<ItemDto> searchItems(String text, Integer from, Integer size, boolean fuzzy);
+
+    /**
+     * Приблизительное количество вещей, найденных по тексту
+     * @param text строка поиска
+     * @param fuzzy поиск слов с опечатками
+     * @return количество вещей
+     */
+    long countSearchItems(String text, boolean fuzzy);
+
+    /**
+     * Подсказки названий вещей при вводе строки поиска
+     * @param prefix начало названия или одного из его слов
+     * @param size наибольшее число подсказок
+     * @return названия вещей
+     */
+    List<String> suggestNames(String prefix, Integer size);
 
     List<ItemDto> searchItemsByRequest(Long requestId);
 
@@ -1,22 +1,32 @@
 package ru.practicum.shareit.item.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.stereotype.Component;
+import ru.practicum.shareit.db.PostgresExtensions;
 import ru.practicum.shareit.errorHandle.exception.AccessForbiddenException;
 import ru.practicum.shareit.errorHandle.exception.EntityNotFoundException;
 import ru.practicum.shareit.errorHandle.exception.ValidationException;
 import ru.practicum.shareit.item.ItemMapper;
 import ru.practicum.shareit.item.ItemRepository;
+import ru.practicum.shareit.item.dto.CommentDto;
 import ru.practicum.shareit.item.dto.ItemDto;
 import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.item.model.ItemBookingRef;
+import ru.practicum.shareit.item.model.ItemSearchHit;
+import ru.practicum.shareit.paging.ApproximateCounter;
 import ru.practicum.shareit.requests.service.ItemRequestService;
 import ru.practicum.shareit.user.User;
 import ru.practicum.shareit.user.service.UserService;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Component
 public class ItemServiceImpl implements ItemService {
@@ -25,16 +35,28 @@ public class ItemServiceImpl implements ItemService {
     private final ItemRepository itemRepository;
 
     private final CommentService commentService;
+    private final ApproximateCounter counter;
+    private final ItemSearchIndex searchIndex;
+    private final PostgresExtensions extensions;
+    private final boolean fullTextSearch;   //полнотекстовый поиск вещей (только PostgreSQL)
 
     @Autowired
     public ItemServiceImpl(UserService userService,
                            ItemRequestService requestService,
                            ItemRepository itemRepository,
-                           CommentService commentService) {
+                           CommentService commentService,
+                           ApproximateCounter counter,
+                           ItemSearchIndex searchIndex,
+                           PostgresExtensions extensions,
+                           @Value("${shareit.item.full-text-search:false}") boolean fullTextSearch) {
         this.userService = userService;
         this.requestService = requestService;
         this.itemRepository = itemRepository;
         this.commentService = commentService;
+        this.counter = counter;
+        this.searchIndex = searchIndex;
+        this.extensions = extensions;
+        this.fullTextSearch = fullTextSearch;
     }
 
     /**
@@ -63,6 +85,7 @@ public class ItemServiceImpl implements ItemService {
         }
 
         itemForBase = itemRepository.saveAndFlush(itemForBase);
+        searchIndex.update(itemForBase);
 
         return ItemMapper.toItemDto(itemForBase);
     }
@@ -78,8 +101,10 @@ public class ItemServiceImpl implements ItemService {
         ItemDto itemDto = ItemMapper.toItemDto(getItem(itemId));
         // Если запрашивает хозяин вещи - добавить информацию о бронированиях
         if (itemDto.getOwner() != null && itemDto.getOwner().getId().equals(userId)) {
-            itemDto.setLastBooking(getLastBooking(itemId));
-            itemDto.setNextBooking(getNextBooking(itemId));
+            Map<Long, ItemDto.Booking[]> bookings = findLastAndNextBookings(List.of(itemId));
+            ItemDto.Booking[] lastAndNext = bookings.getOrDefault(itemId, new ItemDto.Booking[2]);
+            itemDto.setLastBooking(lastAndNext[0]);
+            itemDto.setNextBooking(lastAndNext[1]);
         }
 
         itemDto.setComments(commentService.findItemComments(itemId));
@@ -97,46 +122,156 @@ public class ItemServiceImpl implements ItemService {
         }
     }
 
+    @Override
+    public Map<Long, Item> getItems(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        return itemRepository.findAllByIdIn(ids).stream()
+                .collect(Collectors.toMap(Item::getId, Function.identity()));
+    }
+
     /**
-     * Получение всех вещей пользователя
+     * Получение всех вещей пользователя.
+     * Бронирования и отзывы загружаются для всей порции сразу, поэтому число запросов не зависит от размера порции
      *
      * @param userId пользоаптнль
      * @return вещи
      */
     @Override
-    public List<ItemDto> getAllUserItems(Long userId, Integer from, Integer size) {
-        List<ItemDto> ret = new ArrayList<>();
+    public Slice<ItemDto> getAllUserItems(Long userId, Integer from, Integer size) {
         Pageable pagingSet = PageRequest.of(from, size);
-        ItemDto itemDto = null;
-        for (Item item : itemRepository.findItemsByOwnerIdOrderById(userId, pagingSet)) {
-            itemDto = ItemMapper.toItemDto(item);
-            itemDto.setLastBooking(getLastBooking(item.getId()));
-            itemDto.setNextBooking(getNextBooking(item.getId()));
-            itemDto.setComments(commentService.findItemComments(item.getId()));
 
-            ret.add(itemDto);
-        }
+        Slice<Item> items = itemRepository.findItemsByOwnerIdOrderById(userId, pagingSet);
+        List<Long> ids = items.map(Item::getId).getContent();
+        Map<Long, ItemDto.Booking[]> bookings = findLastAndNextBookings(ids);
+        Map<Long, List<CommentDto>> comments = commentService.findItemsComments(ids);
+
+        return items.map(item -> {
+            ItemDto itemDto = ItemMapper.toItemDto(item);
+            ItemDto.Booking[] lastAndNext = bookings.getOrDefault(item.getId(), new ItemDto.Booking[2]);
+            itemDto.setLastBooking(lastAndNext[0]);
+            itemDto.setNextBooking(lastAndNext[1]);
+            itemDto.setComments(comments.getOrDefault(item.getId(), List.of()));
+            return itemDto;
+        });
+    }
 
-        return ret;
+    @Override
+    public long countUserItems(Long userId) {
+        return counter.count("items:owner:" + userId, () -> itemRepository.countByOwnerId(userId));
     }
 
     /**
-     * Поиск вещи по тексту в названии или описании
+     * Поиск вещи по тексту в названии или описании.
+     * При shareit.item.full-text-search=true ищутся словоформы слов запроса по индексу,
+     * результаты упорядочены по релевантности, иначе ищется подстрока без учёта регистра
+     * по индексу триграмм в памяти, а для коротких запросов и до построения индекса - запросом к базе.
+     * Нечёткий поиск выполняется по словарю индекса, до построения индекса - по триграммам pg_trgm
+     * при полнотекстовом поиске (PostgreSQL), иначе отклоняется.
      *
      * @param text строка поиска
+     * @param fuzzy поиск слов с опечатками
      * @return найденные вещи
      */
     @Override
-    public List<ItemDto> searchItems(String text, Integer from, Integer size) {
-        List<ItemDto> ret = new ArrayList<>();
+    public Slice<ItemDto> searchItems(String text, Integer from, Integer size, boolean fuzzy) {
         Pageable pagingSet = PageRequest.of(from, size);
 
-        if (text != null && !text.isBlank()) {
-            for (Item item : itemRepository.search(text, pagingSet)) {
-                ret.add(ItemMapper.toItemDto(item));
+        if (text == null || text.isBlank()) {
+            return new SliceImpl<>(new ArrayList<>(), pagingSet, false);
+        }
+        if (fuzzy) {
+            checkFuzzy();
+            if (searchIndex.isReady()) {
+                return indexPage(searchIndex.findFuzzy(text, pagingSet.getOffset(), size + 1), pagingSet);
             }
+            Slice<ItemSearchHit> hits = itemRepository.searchFuzzy(text, pagingSet);
+            return new SliceImpl<>(loadItems(hits.map(ItemSearchHit::getId).getContent()), pagingSet, hits.hasNext());
         }
-        return ret;
+        if (fullTextSearch) {
+            Slice<ItemSearchHit> hits = itemRepository.searchFullText(text, pagingSet);
+            return new SliceImpl<>(loadItems(hits.map(ItemSearchHit::getId).getContent()), pagingSet, hits.hasNext());
+        }
+        //При полнотекстовом поиске индекс строится без триграмм и подстроку не ищет
+        if (searchIndex.covers(text)) {
+            return indexPage(searchIndex.find(text, pagingSet.getOffset(), size + 1), pagingSet);
+        }
+        return itemRepository.search(ItemRepository.escapeLike(text), pagingSet).map(ItemMapper::toItemDto);
+    }
+
+    /**
+     * Нечёткий поиск без индекса в памяти возможен только в базе PostgreSQL с расширением pg_trgm
+     */
+    private void checkFuzzy() {
+        if (!searchIndex.isReady() && !extensions.isInstalled(PostgresExtensions.PG_TRGM)) {
+            throw new ValidationException("Нечёткий поиск недоступен: индекс вещей не построен");
+        }
+    }
+
+    /**
+     * Порция вещей, найденных по индексу. Из индекса запрашивается на одну вещь больше,
+     * чтобы узнать, есть ли следующая порция
+     */
+    private Slice<ItemDto> indexPage(List<Long> ids, Pageable pagingSet) {
+        boolean hasNext = ids.size() > pagingSet.getPageSize();
+        return new SliceImpl<>(loadItems(hasNext ? ids.subList(0, pagingSet.getPageSize()) : ids),
+                               pagingSet,
+                               hasNext);
+    }
+
+    /**
+     * Загрузка найденных вещей одним запросом в порядке идентификаторов,
+     * вещи, удалённые после поиска, пропускаются
+     */
+    private List<ItemDto> loadItems(List<Long> ids) {
+        Map<Long, Item> items = getItems(ids);
+        return ids.stream()
+                .map(items::get)
+                .filter(Objects::nonNull)
+                .map(ItemMapper::toItemDto)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public long countSearchItems(String text, boolean fuzzy) {
+        if (text == null || text.isBlank()) {
+            return 0;
+        }
+        if (fuzzy) {
+            checkFuzzy();
+            if (searchIndex.isReady()) {
+                return searchIndex.countFuzzy(text);
+            }
+            return counter.count("items:fuzzy:" + text.toUpperCase(), () -> itemRepository.countSearchFuzzy(text));
+        }
+        if (!fullTextSearch && searchIndex.covers(text)) {
+            return searchIndex.count(text);
+        }
+        return counter.count("items:search:" + text.toUpperCase(),
+                () -> fullTextSearch
+                        ? itemRepository.countSearchFullText(text)
+                        : itemRepository.countSearch(ItemRepository.escapeLike(text)));
+    }
+
+    /**
+     * Подсказки названий доступных вещей по префиксу из индекса в памяти,
+     * до построения индекса - запросом к базе
+     *
+     * @param prefix начало названия или одного из его слов
+     * @param size наибольшее число подсказок, не больше ItemNameTrie.TOP_K
+     * @return названия вещей, сначала самые частые
+     */
+    @Override
+    public List<String> suggestNames(String prefix, Integer size) {
+        if (prefix == null || prefix.isBlank()) {
+            return List.of();
+        }
+        int limit = Math.min(size, ItemNameTrie.TOP_K);
+        if (searchIndex.isReady()) {
+            return searchIndex.suggest(prefix, limit);
+        }
+        return itemRepository.findNamesByPrefix(ItemRepository.escapeLike(prefix.strip()), PageRequest.of(0, limit));
     }
 
     @Override
@@ -174,6 +309,7 @@ public class ItemServiceImpl implements ItemService {
         }
 
         itemInBase = itemRepository.saveAndFlush(itemInBase);
+        searchIndex.update(itemInBase);
 
         return ItemMapper.toItemDto(itemInBase);
     }
@@ -195,23 +331,19 @@ public class ItemServiceImpl implements ItemService {
         }
 
         itemRepository.deleteById(id);
+        searchIndex.delete(id);
     }
 
-    private ItemDto.Booking getLastBooking(Long itemId) {
-        Object[] o = itemRepository.findLastBooking(itemId, Date.from(Instant.now())).get(0);
-        if (o[0] != null && o[1] != null) {
-            return new ItemDto.Booking(Long.valueOf(o[0].toString()), Long.valueOf(o[1].toString()));
-        } else {
-            return null;
+    //Идентификатор вещи -> {последнее, ближайшее бронирование}, вещи без бронирований отсутствуют
+    private Map<Long, ItemDto.Booking[]> findLastAndNextBookings(Collection<Long> itemIds) {
+        Map<Long, ItemDto.Booking[]> ret = new HashMap<>();
+        if (itemIds.isEmpty()) {
+            return ret;
         }
-    }
-
-    private ItemDto.Booking getNextBooking(Long itemId) {
-        Object[] o = itemRepository.findNextBooking(itemId, Date.from(Instant.now())).get(0);
-        if (o[0] != null && o[1] != null) {
-            return new ItemDto.Booking(Long.valueOf(o[0].toString()), Long.valueOf(o[1].toString()));
-        } else {
-            return null;
+        for (ItemBookingRef ref : itemRepository.findLastAndNextBookings(itemIds, Date.from(Instant.now()))) {
+            ItemDto.Booking[] lastAndNext = ret.computeIfAbsent(ref.getItemId(), id -> new ItemDto.Booking[2]);
+            lastAndNext[ref.getLast() ? 0 : 1] = new ItemDto.Booking(ref.getId(), ref.getBookerId());
         }
+        return ret;
     }
 }
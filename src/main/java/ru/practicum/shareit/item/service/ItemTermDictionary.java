@@ -0,0 +1,159 @@
+package ru.practicum.shareit.item.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Словарь слов названий и описаний вещей для нечёткого поиска.
+ * Для каждого слова хранится список вещей, а для каждой триграммы слова (с метками начала и конца) - слова с ней.
+ * Одна правка меняет не больше трёх триграмм, поэтому кандидаты на расстоянии k от слова запроса отбираются
+ * по числу общих триграмм, а расстояние Левенштейна считается только для ограниченного числа кандидатов.
+ * Доступ синхронизирует ItemSearchIndex.
+ */
+class ItemTermDictionary {
+    private static final char PAD = '\u0001';
+
+    private final TreeMap<String, ItemPostings> terms = new TreeMap<>();  //слово -> вещи
+    private final Map<Long, Set<String>> gramTerms = new HashMap<>();     //триграмма -> слова
+
+    void add(int key, String text) {
+        for (String word : words(text)) {
+            terms.computeIfAbsent(word, this::newTerm).add(key);
+        }
+    }
+
+    void remove(int key, String text) {
+        for (String word : words(text)) {
+            ItemPostings items = terms.get(word);
+            if (items != null && items.remove(key) && items.size() == 0) {
+                terms.remove(word);
+                for (Long gram : grams(word)) {
+                    Set<String> sameGram = gramTerms.get(gram);
+                    sameGram.remove(word);
+                    if (sameGram.isEmpty()) {
+                        gramTerms.remove(gram);
+                    }
+                }
+            }
+        }
+    }
+
+    ItemPostings postings(String term) {
+        return terms.get(term);
+    }
+
+    /**
+     * Слова словаря, начинающиеся со слова запроса (расстояние 0)
+     * или отличающиеся от него не больше чем на maxDistance правок
+     * @param word слово запроса в верхнем регистре
+     * @param maxDistance наибольшее расстояние Левенштейна
+     * @param maxTerms наибольшее число слов, сначала по началу слова, затем по числу общих триграмм
+     * @return слово -> расстояние
+     */
+    Map<String, Integer> similar(String word, int maxDistance, int maxTerms) {
+        Map<String, Integer> ret = new LinkedHashMap<>();
+        for (String term : terms.subMap(word, word + Character.MAX_VALUE).keySet()) {
+            if (ret.size() >= maxTerms) {
+                return ret;
+            }
+            ret.put(term, 0);
+        }
+        if (maxDistance == 0) {
+            return ret;
+        }
+
+        Set<Long> grams = grams(word);
+        Map<String, Integer> shared = new HashMap<>();
+        for (Long gram : grams) {
+            for (String term : gramTerms.getOrDefault(gram, Set.of())) {
+                if (Math.abs(term.length() - word.length()) <= maxDistance && !ret.containsKey(term)) {
+                    shared.merge(term, 1, Integer::sum);
+                }
+            }
+        }
+
+        int minShared = grams.size() - 3 * maxDistance;
+        List<Map.Entry<String, Integer>> candidates = new ArrayList<>();
+        for (Map.Entry<String, Integer> candidate : shared.entrySet()) {
+            if (candidate.getValue() >= minShared) {
+                candidates.add(candidate);
+            }
+        }
+        candidates.sort(Map.Entry.<String, Integer>comparingByValue(Comparator.reverseOrder()));
+
+        for (Map.Entry<String, Integer> candidate : candidates) {
+            if (ret.size() >= maxTerms) {
+                break;
+            }
+            int distance = distance(word, candidate.getKey(), maxDistance);
+            if (distance <= maxDistance) {
+                ret.put(candidate.getKey(), distance);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Слова текста: последовательности букв и цифр
+     */
+    static List<String> words(String text) {
+        List<String> ret = new ArrayList<>();
+        for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                ret.add(word);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Расстояние Левенштейна, не больше maxDistance + 1 (дальше не считается)
+     */
+    static int distance(String a, String b, int maxDistance) {
+        int[] prev = new int[b.length() + 1];
+        int[] cur = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            prev[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            cur[0] = i;
+            int rowMin = cur[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                rowMin = Math.min(rowMin, cur[j]);
+            }
+            if (rowMin > maxDistance) {
+                return maxDistance + 1;
+            }
+            int[] swap = prev;
+            prev = cur;
+            cur = swap;
+        }
+        return Math.min(prev[b.length()], maxDistance + 1);
+    }
+
+    private ItemPostings newTerm(String word) {
+        for (Long gram : grams(word)) {
+            gramTerms.computeIfAbsent(gram, g -> new HashSet<>()).add(word);
+        }
+        return new ItemPostings();
+    }
+
+    //Триграммы слова с двумя метками в начале и в конце
+    private static Set<Long> grams(String word) {
+        String padded = "" + PAD + PAD + word + PAD + PAD;
+        Set<Long> ret = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            ret.add(((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2));
+        }
+        return ret;
+    }
+}
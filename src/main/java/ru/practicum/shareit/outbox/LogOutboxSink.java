@@ -0,0 +1,26 @@
+package ru.practicum.shareit.outbox;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Получатель по умолчанию: события записываются в журнал приложения
+ */
+@Slf4j
+@Component
+public class LogOutboxSink implements OutboxSink {
+    @Override
+    public void send(List<OutboxEvent> events) {
+        for (OutboxEvent event : events) {
+            log.debug("Событие {} {}: бронирование {}, вещь {}, владелец {}, автор {}",
+                    event.getId(),
+                    event.getType(),
+                    event.getBookingId(),
+                    event.getItemId(),
+                    event.getOwnerId(),
+                    event.getBookerId());
+        }
+    }
+}
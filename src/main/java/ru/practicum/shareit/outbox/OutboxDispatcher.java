@@ -0,0 +1,174 @@
+package ru.practicum.shareit.outbox;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Фоновая отправка событий из таблицы outbox.
+ * Пакет до shareit.outbox.batch-size событий захватывается короткой транзакцией: строки выбираются
+ * с блокировкой (for update skip locked в PostgreSQL) и получают срок захвата locked_until
+ * на shareit.outbox.lock-time, поэтому несколько экземпляров приложения захватывают разные пакеты.
+ * Отправка выполняется вне транзакции и не удерживает соединение с базой, событие, захват которого истёк
+ * (например, после остановки экземпляра), отправляется повторно.
+ * Пакет делится на shareit.outbox.parallelism частей по идентификатору бронирования, части отправляются параллельно.
+ * Результат записывается второй транзакцией: доставленная часть удаляется из таблицы, у недоставленной
+ * увеличивается счётчик попыток, и она отправляется повторно после истечения захвата.
+ * После shareit.outbox.max-attempts попыток событие переводится в состояние DEAD и остаётся в таблице для разбора.
+ * Из событий одного бронирования захватывается только самое раннее, поэтому они доставляются по порядку,
+ * а пока раннее событие не доставлено (или находится в состоянии DEAD), следующие не отправляются.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "shareit.outbox.dispatcher.enabled", havingValue = "true", matchIfMissing = true)
+public class OutboxDispatcher {
+    private final OutboxRepository outboxRepository;
+    private final List<OutboxSink> sinks;
+    private final int batchSize;
+    private final int parallelism;
+    private final int maxAttempts;
+    private final Duration lockTime;
+    private final Clock clock;
+    private final ExecutorService executor;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public OutboxDispatcher(OutboxRepository outboxRepository,
+                            PlatformTransactionManager transactionManager,
+                            List<OutboxSink> sinks,
+                            @Value("${shareit.outbox.batch-size:100}") int batchSize,
+                            @Value("${shareit.outbox.parallelism:2}") int parallelism,
+                            @Value("${shareit.outbox.max-attempts:10}") int maxAttempts,
+                            @Value("${shareit.outbox.lock-time:1m}") Duration lockTime) {
+        this(outboxRepository, transactionManager, sinks, batchSize, parallelism, maxAttempts, lockTime,
+             Clock.systemDefaultZone());
+    }
+
+    public OutboxDispatcher(OutboxRepository outboxRepository,
+                            PlatformTransactionManager transactionManager,
+                            List<OutboxSink> sinks,
+                            int batchSize,
+                            int parallelism,
+                            int maxAttempts,
+                            Duration lockTime,
+                            Clock clock) {
+        this.outboxRepository = outboxRepository;
+        this.sinks = sinks;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+        this.maxAttempts = maxAttempts;
+        this.lockTime = lockTime;
+        this.clock = clock;
+        this.executor = Executors.newFixedThreadPool(parallelism);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Отправка накопившихся событий, пакеты читаются, пока в очередном пакете есть доставленные события
+     */
+    @Scheduled(fixedDelayString = "${shareit.outbox.poll-interval:1000}")
+    public void dispatch() {
+        int delivered;
+        while ((delivered = dispatchBatch()) > 0) {
+            log.debug("Отправлен пакет из {} событий", delivered);
+        }
+    }
+
+    /**
+     * Отправка одного пакета событий
+     * @return число доставленных событий
+     */
+    public int dispatchBatch() {
+        List<OutboxEvent> events = claim();
+        if (events.isEmpty()) {
+            return 0;
+        }
+
+        List<List<OutboxEvent>> parts = new ArrayList<>(events.stream()
+                .collect(Collectors.groupingBy(event -> Math.floorMod(event.getBookingId(), parallelism)))
+                .values());
+
+        List<CompletableFuture<Boolean>> futures = parts.stream()
+                .map(part -> CompletableFuture.supplyAsync(() -> send(part), executor))
+                .collect(Collectors.toList());
+
+        List<Long> delivered = new ArrayList<>();
+        List<Long> failed = new ArrayList<>();
+        for (int i = 0; i < parts.size(); i++) {
+            List<Long> ids = parts.get(i).stream()
+                    .map(OutboxEvent::getId)
+                    .collect(Collectors.toList());
+            (futures.get(i).join() ? delivered : failed).addAll(ids);
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!delivered.isEmpty()) {
+                outboxRepository.deleteAllByIdIn(delivered);
+            }
+            if (!failed.isEmpty()) {
+                outboxRepository.incrementAttempts(failed);
+                int exhausted = outboxRepository.updateExhausted(failed, maxAttempts, OutboxStatus.DEAD);
+                if (exhausted > 0) {
+                    log.warn("{} событий не доставлено за {} попыток и переведено в состояние {}",
+                            exhausted, maxAttempts, OutboxStatus.DEAD);
+                }
+            }
+        });
+        return delivered.size();
+    }
+
+    //Захват пакета событий на lock-time, транзакция завершается до отправки
+    private List<OutboxEvent> claim() {
+        List<OutboxEvent> ret = transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now(clock);
+            List<OutboxEvent> events = outboxRepository.findPending(OutboxStatus.PENDING,
+                    now,
+                    PageRequest.of(0, batchSize));
+            if (!events.isEmpty()) {
+                outboxRepository.lock(events.stream()
+                                .map(OutboxEvent::getId)
+                                .collect(Collectors.toList()),
+                        now.plus(lockTime));
+            }
+            return events;
+        });
+        return ret == null ? List.of() : ret;
+    }
+
+    //Отправка части пакета всем получателям, возвращает признак доставки
+    private boolean send(List<OutboxEvent> part) {
+        try {
+            for (OutboxSink sink : sinks) {
+                sink.send(part);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Не удалось отправить события {}: {}", part.stream()
+                    .map(OutboxEvent::getId)
+                    .collect(Collectors.toList()), e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,59 @@
+package ru.practicum.shareit.outbox;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Событие бронирования, ожидающее отправки.
+ * Записывается в той же транзакции, что и бронирование, и удаляется после отправки.
+ * Событие, не доставленное за shareit.outbox.max-attempts попыток, переводится в состояние DEAD и остаётся
+ * в таблице для разбора.
+ */
+@Entity
+@Table(name = "outbox")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;                //уникальный идентификатор события, задаёт порядок отправки
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "event_type")
+    private OutboxEventType type;   //тип события
+
+    @Column(name = "booking_id")
+    private long bookingId;         //бронирование
+
+    @Column(name = "item_id")
+    private long itemId;            //вещь
+
+    @Column(name = "owner_id")
+    private long ownerId;           //владелец вещи, получатель событий о новых бронированиях
+
+    @Column(name = "booker_id")
+    private long bookerId;          //автор бронирования, получатель событий о подтверждении и отклонении
+
+    private LocalDateTime created;  //дата создания события
+
+    private int attempts;           //число неудачных попыток отправки
+
+    @Enumerated(EnumType.STRING)
+    private OutboxStatus status;    //состояние события
+
+    @Column(name = "locked_until")
+    private LocalDateTime lockedUntil;  //срок, до которого событие захвачено для отправки одним из экземпляров
+
+    @PrePersist
+    protected void onCreate() {
+        created = LocalDateTime.now();
+        if (status == null) {
+            status = OutboxStatus.PENDING;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package ru.practicum.shareit.outbox;
+
+/**
+ * Типы событий жизненного цикла бронирования
+ */
+public enum OutboxEventType {
+    BOOKING_CREATED,
+    BOOKING_APPROVED,
+    BOOKING_REJECTED
+}
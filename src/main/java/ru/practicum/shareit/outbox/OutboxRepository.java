@@ -0,0 +1,50 @@
+package ru.practicum.shareit.outbox;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface OutboxRepository extends JpaRepository<OutboxEvent, Long> {
+    //Очередной пакет событий в состоянии status, не захваченных до момента now, в порядке их создания.
+    //Берётся только первое оставшееся событие каждого бронирования: следующие ждут, пока оно не будет
+    //доставлено, в том числе если оно не доставлено за все попытки (DEAD).
+    //Строки блокируются до конца транзакции захвата (for update skip locked в PostgreSQL),
+    //события, которые в этот момент захватывает другой экземпляр, пропускаются
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "javax.persistence.lock.timeout", value = "-2"))
+    @Query(" select e from OutboxEvent e where e.status = ?1 " +
+           " and (e.lockedUntil is null or e.lockedUntil < ?2) " +
+           " and not exists (select p.id from OutboxEvent p where p.bookingId = e.bookingId and p.id < e.id) " +
+           " order by e.id")
+    List<OutboxEvent> findPending(OutboxStatus status, LocalDateTime now, Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query(" update OutboxEvent e set e.lockedUntil = ?2 where e.id in ?1")
+    int lock(Collection<Long> ids, LocalDateTime until);
+
+    @Transactional
+    @Modifying
+    @Query(" delete from OutboxEvent e where e.id in ?1")
+    int deleteAllByIdIn(Collection<Long> ids);
+
+    @Transactional
+    @Modifying
+    @Query(" update OutboxEvent e set e.attempts = e.attempts + 1 where e.id in ?1")
+    int incrementAttempts(Collection<Long> ids);
+
+    @Transactional
+    @Modifying
+    @Query(" update OutboxEvent e set e.status = ?3 where e.id in ?1 and e.attempts >= ?2")
+    int updateExhausted(Collection<Long> ids, int maxAttempts, OutboxStatus status);
+}
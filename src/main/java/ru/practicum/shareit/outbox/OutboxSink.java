@@ -0,0 +1,17 @@
+package ru.practicum.shareit.outbox;
+
+import java.util.List;
+
+/**
+ * Получатель событий бронирования (журнал, брокер сообщений, push-уведомления).
+ * События доставляются как минимум один раз, повторная доставка возможна после сбоя,
+ * поэтому получатель должен отбрасывать уже обработанные события по их идентификатору.
+ */
+public interface OutboxSink {
+    /**
+     * Отправка пакета событий.
+     * Исключение означает, что пакет не доставлен и будет отправлен повторно.
+     * @param events события в порядке создания
+     */
+    void send(List<OutboxEvent> events);
+}
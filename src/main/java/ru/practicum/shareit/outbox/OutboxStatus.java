@@ -0,0 +1,9 @@
+package ru.practicum.shareit.outbox;
+
+/**
+ * Состояния события в таблице outbox
+ */
+public enum OutboxStatus {
+    PENDING,    //ожидает отправки
+    DEAD        //не доставлено за shareit.outbox.max-attempts попыток, не отправляется до разбора
+}
@@ -0,0 +1,67 @@
+package ru.practicum.shareit.paging;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Кэш количества записей для заголовка X-Total-Count.
+ * Значение считается запросом count(*) не чаще одного раза за время жизни записи,
+ * поэтому в пределах этого времени количество приблизительное.
+ */
+@Component
+public class ApproximateCounter {
+    private static final int MAX_ENTRIES = 10_000;
+
+    private final Map<String, Entry> counts = new ConcurrentHashMap<>();
+    private final Duration ttl;
+    private final Clock clock;
+
+    @Autowired
+    public ApproximateCounter(@Value("${shareit.paging.total-count-ttl:30s}") Duration ttl) {
+        this(ttl, Clock.systemUTC());
+    }
+
+    public ApproximateCounter(Duration ttl, Clock clock) {
+        this.ttl = ttl;
+        this.clock = clock;
+    }
+
+    /**
+     * Получение количества записей
+     * @param key ключ отбора (сущность, пользователь, параметры)
+     * @param loader точный подсчёт, выполняется при отсутствии или устаревании значения
+     * @return количество записей
+     */
+    public long count(String key, LongSupplier loader) {
+        long now = clock.millis();
+        Entry entry = counts.get(key);
+        if (entry != null && entry.expiresAt > now) {
+            return entry.value;
+        }
+
+        if (counts.size() >= MAX_ENTRIES) {
+            counts.values().removeIf(e -> e.expiresAt <= now);
+        }
+
+        long value = loader.getAsLong();
+        counts.put(key, new Entry(value, now + ttl.toMillis()));
+        return value;
+    }
+
+    private static class Entry {
+        private final long value;
+        private final long expiresAt;
+
+        Entry(long value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
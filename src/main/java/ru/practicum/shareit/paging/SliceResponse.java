@@ -0,0 +1,27 @@
+package ru.practicum.shareit.paging;
+
+import org.springframework.data.domain.Slice;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Формирование ответа для постраничного вывода без подсчёта общего количества записей
+ */
+public class SliceResponse {
+    public static final String HAS_MORE_HEADER = "X-Has-More";
+    public static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+
+    /**
+     * Заготовка ответа с заголовком X-Has-More и, если запрошено, X-Total-Count
+     * @param slice порция данных
+     * @param total количество записей или null, если оно не запрашивалось
+     * @return заготовка ответа
+     */
+    public static ResponseEntity.BodyBuilder builder(Slice<?> slice, Long total) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .header(HAS_MORE_HEADER, String.valueOf(slice.hasNext()));
+        if (total != null) {
+            builder.header(TOTAL_COUNT_HEADER, String.valueOf(total));
+        }
+        return builder;
+    }
+}
@@ -1,7 +1,10 @@
 package ru.practicum.shareit.requests;
 
+import org.springframework.data.domain.Slice;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import ru.practicum.shareit.paging.SliceResponse;
 import ru.practicum.shareit.requests.dto.ItemRequestDto;
 import ru.practicum.shareit.requests.service.ItemRequestService;
 
@@ -9,6 +12,7 @@ import javax.validation.Valid;
 import javax.validation.constraints.Positive;
 import javax.validation.constraints.PositiveOrZero;
 import java.util.Collection;
+import java.util.List;
 
 @RestController
 @Validated
@@ -49,15 +53,19 @@ public class ItemRequestController {
      * сортируются по дате создания: от более новых к более старым. Результаты должны возвращаться постранично. Для
      * этого нужно передать два параметра: from — индекс первого элемента, начиная с 0, и size — количество элементов
      * для отображения.
+     * Заголовок X-Has-More сообщает, есть ли следующая порция, X-Total-Count передаётся только при total=true.
      */
     @GetMapping("/all")
-    public Collection<ItemRequestDto> getOthersItemRequests(
+    public ResponseEntity<List<ItemRequestDto>> getOthersItemRequests(
             @PositiveOrZero(message = "From должно быть положительным числом или 0")
             @RequestParam(defaultValue = "0",required = false) Integer from,
             @Positive(message = "Size должно быть положительным числом")
             @RequestParam(defaultValue = "10",required = false) Integer size,
+            @RequestParam(defaultValue = "false", required = false) Boolean total,
             @RequestHeader("X-Sharer-User-Id") long userId) {
-        return itemRequestService.getOthers(userId, from, size);
+        Slice<ItemRequestDto> requests = itemRequestService.getOthers(userId, from, size);
+        return SliceResponse.builder(requests, total ? itemRequestService.countOthers(userId) : null)
+                .body(requests.getContent());
     }
 
      /**
@@ -1,13 +1,19 @@
 package ru.practicum.shareit.requests;
 
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 import java.util.Collection;
 
 public interface ItemRequestRepository extends JpaRepository<ItemRequest, Long> {
+    @Query(" select r from ItemRequest r where r.requestor.id = ?1 order by r.created desc")
     Collection<ItemRequest> findAllByRequestor_IdOrderByCreatedDesc(Long requestorId);
 
-    Page<ItemRequest> findAllByRequestor_IdNotOrderByCreatedDesc(Long requestorId, Pageable pageable);
+    @Query(" select r from ItemRequest r where r.requestor.id <> ?1 order by r.created desc")
+    Slice<ItemRequest> findAllByRequestor_IdNotOrderByCreatedDesc(Long requestorId, Pageable pageable);
+
+    @Query(" select count(r) from ItemRequest r where r.requestor.id <> ?1")
+    long countByRequestor_IdNot(Long requestorId);
 }
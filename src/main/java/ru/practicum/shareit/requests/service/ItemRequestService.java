@@ -1,5 +1,6 @@
 package ru.practicum.shareit.requests.service;
 
+import org.springframework.data.domain.Slice;
 import ru.practicum.shareit.requests.ItemRequest;
 import ru.practicum.shareit.requests.dto.ItemRequestDto;
 
@@ -44,6 +45,13 @@ public interface ItemRequestService {
      * @param size размер вывода
      * @return список запросов от других пользователей
      */
-    List<ItemRequestDto> getOthers(Long userId, Integer from, Integer size);
+    Slice<ItemRequestDto> getOthers(Long userId, Integer from, Integer size);
+
+    /**
+     * Приблизительное количество запросов, созданных другими пользователями
+     * @param userId пользователь
+     * @return количество запросов
+     */
+    long countOthers(Long userId);
 
 }
@@ -3,10 +3,12 @@ package ru.practicum.shareit.requests.service;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Component;
 import ru.practicum.shareit.errorHandle.exception.EntityNotFoundException;
 import ru.practicum.shareit.errorHandle.exception.ValidationException;
 import ru.practicum.shareit.item.service.ItemService;
+import ru.practicum.shareit.paging.ApproximateCounter;
 import ru.practicum.shareit.requests.ItemRequest;
 import ru.practicum.shareit.requests.ItemRequestMapper;
 import ru.practicum.shareit.requests.ItemRequestRepository;
@@ -21,13 +23,16 @@ public class ItemRequestServiceImpl implements ItemRequestService {
     private final ItemRequestRepository repository;
     private final UserService userService;
     private final ItemService itemService;
+    private final ApproximateCounter counter;
 
     public ItemRequestServiceImpl(ItemRequestRepository repository,
                                   UserService userService,
-                                  @Lazy ItemService itemService) {
+                                  @Lazy ItemService itemService,
+                                  ApproximateCounter counter) {
         this.repository = repository;
         this.userService = userService;
         this.itemService = itemService;
+        this.counter = counter;
     }
 
     /**
@@ -109,17 +114,18 @@ public class ItemRequestServiceImpl implements ItemRequestService {
      * @return список запросов от других пользователей
      */
     @Override
-    public List<ItemRequestDto> getOthers(Long userId, Integer from, Integer size) {
+    public Slice<ItemRequestDto> getOthers(Long userId, Integer from, Integer size) {
         Pageable pagingSet = PageRequest.of(from, size);
-        List<ItemRequestDto> ret = new ArrayList<>();
-        ItemRequestDto itemRequestDto = null;
 
-        for (ItemRequest request : repository.findAllByRequestor_IdNotOrderByCreatedDesc(userId, pagingSet)) {
-            itemRequestDto = ItemRequestMapper.toItemRequestDto(request);
+        return repository.findAllByRequestor_IdNotOrderByCreatedDesc(userId, pagingSet).map(request -> {
+            ItemRequestDto itemRequestDto = ItemRequestMapper.toItemRequestDto(request);
             itemRequestDto.setItems(itemService.searchItemsByRequest(request.getId()));
-            ret.add(itemRequestDto);
-        }
+            return itemRequestDto;
+        });
+    }
 
-        return ret;
+    @Override
+    public long countOthers(Long userId) {
+        return counter.count("requests:others:" + userId, () -> repository.countByRequestor_IdNot(userId));
     }
 }
@@ -0,0 +1,21 @@
+-- Объекты на расширениях btree_gist и pg_trgm (shareit.postgres.extensions.enabled).
+-- Выполняется PostgresExtensions после установки расширений, объекты неустановленного расширения пропускаются.
+
+-- Индексы по периоду бронирования для запросов с операторами && и @> (shareit.booking.range-queries)
+DO '
+BEGIN
+  IF EXISTS (SELECT 1 FROM pg_extension WHERE extname = ''btree_gist'') THEN
+    CREATE INDEX IF NOT EXISTS ix_bookings_item_period ON bookings USING gist (item_id, period);
+    CREATE INDEX IF NOT EXISTS ix_bookings_booker_period ON bookings USING gist (booker_id, period);
+    CREATE INDEX IF NOT EXISTS ix_bookings_owner_period ON bookings USING gist (owner_id, period);
+  END IF;
+END';
+
+-- Нечёткий поиск вещей по триграммам (ItemRepository.searchFuzzy), пока индекс вещей в памяти не построен
+DO '
+BEGIN
+  IF EXISTS (SELECT 1 FROM pg_extension WHERE extname = ''pg_trgm'') THEN
+    CREATE INDEX IF NOT EXISTS ix_items_text_trgm
+      ON items USING gist ((upper(coalesce(name, '''') || '' '' || coalesce(description, ''''))) gist_trgm_ops);
+  END IF;
+END';
@@ -0,0 +1,132 @@
+-- Помесячные секции bookings (только PostgreSQL, shareit.booking.partitions.enabled).
+-- Выполняется BookingPartitions при запуске после schema.sql, schema-postgresql.sql и extensions-postgresql.sql
+-- (нужно расширение btree_gist), повторный запуск ничего не меняет.
+
+-- Секция bookings_YYYY_MM с бронированиями, начинающимися в месяце заданной даты; создаётся при отсутствии
+CREATE OR REPLACE FUNCTION create_bookings_partition(for_date TIMESTAMP) RETURNS TEXT AS '
+DECLARE
+  month_start TIMESTAMP := date_trunc(''month'', for_date);
+  part_name TEXT := ''bookings_'' || to_char(for_date, ''YYYY_MM'');
+BEGIN
+  IF to_regclass(part_name) IS NULL THEN
+    EXECUTE format(''CREATE TABLE %I PARTITION OF bookings FOR VALUES FROM (%L) TO (%L)'',
+                   part_name, month_start, month_start + interval ''1 month'');
+  END IF;
+  RETURN part_name;
+EXCEPTION WHEN duplicate_table OR unique_violation THEN
+  RETURN part_name;
+END' LANGUAGE plpgsql;
+
+-- Отсоединение секций, закончившихся не позже заданной даты.
+-- Отсоединённые таблицы bookings_YYYY_MM остаются в базе для архивирования и удаляются вручную.
+CREATE OR REPLACE FUNCTION detach_bookings_partitions(before_date TIMESTAMP) RETURNS SETOF TEXT AS '
+DECLARE
+  part_name TEXT;
+BEGIN
+  FOR part_name IN
+    SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+    WHERE i.inhparent = ''bookings''::regclass
+      AND c.relname ~ ''^bookings_[0-9]{4}_[0-9]{2}$''
+      AND to_date(substring(c.relname FROM 10), ''YYYY_MM'') + interval ''1 month'' <= before_date
+    ORDER BY c.relname
+  LOOP
+    EXECUTE format(''ALTER TABLE bookings DETACH PARTITION %I'', part_name);
+    RETURN NEXT part_name;
+  END LOOP;
+END' LANGUAGE plpgsql;
+
+-- Таблица bookings из schema.sql переводится на помесячные секции по start_date одной транзакцией.
+-- Первичный ключ секционированной таблицы обязан включать ключ секционирования, поэтому он (id, start_date).
+-- Индексы и ограничение ex_bookings_approved_overlap старой таблицы удаляются вместе с ней.
+-- Одновременно запущенные экземпляры ждут друг друга на рекомендательной блокировке.
+DO '
+DECLARE
+  month_start TIMESTAMP;
+BEGIN
+  PERFORM pg_advisory_xact_lock(hashtext(''bookings_partitions''));
+  IF (SELECT relkind FROM pg_class WHERE oid = ''bookings''::regclass) = ''r'' THEN
+    ALTER TABLE bookings RENAME TO bookings_unpartitioned;
+    ALTER TABLE bookings_unpartitioned DROP CONSTRAINT pk_booking;
+
+    CREATE TABLE bookings (
+      id BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+      start_date TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+      end_date TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+      item_id BIGINT,
+      booker_id BIGINT,
+      status VARCHAR(32) NOT NULL,
+      owner_id BIGINT,
+      CONSTRAINT pk_booking PRIMARY KEY (id, start_date),
+      CONSTRAINT FK_BOOKING_ON_BOOKER FOREIGN KEY (booker_id) REFERENCES users (id),
+      CONSTRAINT FK_BOOKING_ON_ITEM FOREIGN KEY (item_id) REFERENCES items (id)
+    ) PARTITION BY RANGE (start_date);
+
+    FOR month_start IN SELECT DISTINCT date_trunc(''month'', start_date) FROM bookings_unpartitioned LOOP
+      PERFORM create_bookings_partition(month_start);
+    END LOOP;
+
+    INSERT INTO bookings (id, start_date, end_date, item_id, booker_id, status, owner_id)
+      SELECT id, start_date, end_date, item_id, booker_id, status, owner_id FROM bookings_unpartitioned;
+    PERFORM setval(pg_get_serial_sequence(''bookings'', ''id''),
+                   COALESCE((SELECT max(id) FROM bookings), 0) + 1,
+                   false);
+
+    DROP TABLE bookings_unpartitioned;
+  END IF;
+END';
+
+-- Индексы и колонка period из schema-postgresql.sql и extensions-postgresql.sql для секционированной таблицы
+CREATE INDEX IF NOT EXISTS ix_bookings_booker_start ON bookings (booker_id, start_date);
+CREATE INDEX IF NOT EXISTS ix_bookings_item_status_start ON bookings (item_id, status, start_date);
+CREATE INDEX IF NOT EXISTS ix_bookings_owner_start ON bookings (owner_id, start_date DESC);
+
+ALTER TABLE bookings ADD COLUMN IF NOT EXISTS period TSRANGE
+  GENERATED ALWAYS AS (tsrange(start_date, end_date, '[]')) STORED;
+
+CREATE INDEX IF NOT EXISTS ix_bookings_item_period ON bookings USING gist (item_id, period);
+CREATE INDEX IF NOT EXISTS ix_bookings_booker_period ON bookings USING gist (booker_id, period);
+CREATE INDEX IF NOT EXISTS ix_bookings_owner_period ON bookings USING gist (owner_id, period);
+
+CREATE INDEX IF NOT EXISTS ix_bookings_waiting_item_start ON bookings (item_id, start_date) WHERE status = 'WAITING';
+CREATE INDEX IF NOT EXISTS ix_bookings_waiting_booker_start ON bookings (booker_id, start_date) WHERE status = 'WAITING';
+CREATE INDEX IF NOT EXISTS ix_bookings_approved_item_period
+  ON bookings (item_id, start_date, end_date) WHERE status = 'APPROVED';
+
+-- Периоды подтверждённых бронирований в несекционированной таблице с ограничением EXCLUDE вместо
+-- ex_bookings_approved_overlap: секционированной таблице оно недоступно, так как должно содержать ключ
+-- секционирования с оператором =, а бронирование может пересекать границу месяца.
+-- Таблицу ведёт триггер bookings в той же транзакции, поэтому пересекающееся подтверждение откатывается.
+CREATE TABLE IF NOT EXISTS booking_periods (
+  booking_id BIGINT NOT NULL,
+  item_id BIGINT NOT NULL,
+  period TSRANGE NOT NULL,
+  CONSTRAINT pk_booking_periods PRIMARY KEY (booking_id),
+  CONSTRAINT ex_booking_periods_overlap EXCLUDE USING gist (item_id WITH =, period WITH &&)
+);
+
+CREATE OR REPLACE FUNCTION sync_booking_periods() RETURNS TRIGGER AS '
+BEGIN
+  IF TG_OP <> ''INSERT'' THEN
+    DELETE FROM booking_periods WHERE booking_id = OLD.id;
+  END IF;
+  IF TG_OP <> ''DELETE'' AND NEW.status = ''APPROVED'' THEN
+    INSERT INTO booking_periods (booking_id, item_id, period)
+      VALUES (NEW.id, NEW.item_id, tsrange(NEW.start_date, NEW.end_date, ''[]''));
+  END IF;
+  RETURN NULL;
+END' LANGUAGE plpgsql;
+
+-- Триггер не пересоздаётся при повторном запуске, чтобы не пропустить подтверждения других экземпляров
+DO '
+BEGIN
+  IF NOT EXISTS (SELECT 1 FROM pg_trigger
+                 WHERE tgname = ''tr_bookings_periods_sync'' AND tgrelid = ''bookings''::regclass) THEN
+    CREATE TRIGGER tr_bookings_periods_sync
+      AFTER INSERT OR UPDATE OF status, start_date, end_date, item_id OR DELETE ON bookings
+      FOR EACH ROW EXECUTE PROCEDURE sync_booking_periods();
+  END IF;
+END';
+
+INSERT INTO booking_periods (booking_id, item_id, period)
+  SELECT id, item_id, period FROM bookings WHERE status = 'APPROVED'
+  ON CONFLICT (booking_id) DO NOTHING;
@@ -0,0 +1,41 @@
+-- Дополнения схемы, доступные только в PostgreSQL (spring.sql.init.platform=postgresql).
+-- Выполняются при каждом запуске и не требуют прав сверх владения таблицами. Индексы на расширениях
+-- btree_gist и pg_trgm и ограничение ex_bookings_approved_overlap создаёт PostgresExtensions.
+
+CREATE INDEX IF NOT EXISTS ix_bookings_booker_start ON bookings (booker_id, start_date);
+CREATE INDEX IF NOT EXISTS ix_bookings_item_status_start ON bookings (item_id, status, start_date);
+CREATE INDEX IF NOT EXISTS ix_bookings_owner_start ON bookings (owner_id, start_date DESC);
+
+-- Период бронирования в виде диапазона для запросов с операторами && и @>
+ALTER TABLE bookings ADD COLUMN IF NOT EXISTS period TSRANGE
+  GENERATED ALWAYS AS (tsrange(start_date, end_date, '[]')) STORED;
+
+-- Частичные индексы для бронирований, ожидающих подтверждения (WAITING), и подтверждённых (APPROVED)
+CREATE INDEX IF NOT EXISTS ix_bookings_waiting_item_start ON bookings (item_id, start_date) WHERE status = 'WAITING';
+CREATE INDEX IF NOT EXISTS ix_bookings_waiting_booker_start ON bookings (booker_id, start_date) WHERE status = 'WAITING';
+CREATE INDEX IF NOT EXISTS ix_bookings_approved_item_period
+  ON bookings (item_id, start_date, end_date) WHERE status = 'APPROVED';
+
+-- bookings.owner_id и owner_inbox.owner_id повторяют items.owner_id и обновляются при смене владельца вещи
+CREATE OR REPLACE FUNCTION sync_bookings_owner() RETURNS TRIGGER AS '
+BEGIN
+  UPDATE bookings SET owner_id = NEW.owner_id WHERE item_id = NEW.id;
+  UPDATE owner_inbox SET owner_id = NEW.owner_id
+    WHERE booking_id IN (SELECT id FROM bookings WHERE item_id = NEW.id AND status = ''WAITING'');
+  RETURN NEW;
+END' LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS tr_items_owner_sync ON items;
+CREATE TRIGGER tr_items_owner_sync AFTER UPDATE OF owner_id ON items
+  FOR EACH ROW WHEN (OLD.owner_id IS DISTINCT FROM NEW.owner_id) EXECUTE PROCEDURE sync_bookings_owner();
+
+-- Полнотекстовый поиск вещей (shareit.item.full-text-search): словоформы названия (вес A) и описания (вес B)
+-- по словарям russian и english
+ALTER TABLE items ADD COLUMN IF NOT EXISTS search TSVECTOR
+  GENERATED ALWAYS AS (
+    setweight(to_tsvector('russian', coalesce(name, '')), 'A') ||
+    setweight(to_tsvector('english', coalesce(name, '')), 'A') ||
+    setweight(to_tsvector('russian', coalesce(description, '')), 'B') ||
+    setweight(to_tsvector('english', coalesce(description, '')), 'B')) STORED;
+
+CREATE INDEX IF NOT EXISTS ix_items_search ON items USING gin (search);
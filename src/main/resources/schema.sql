@@ -35,6 +35,7 @@ CREATE TABLE IF NOT EXISTS bookings (
   item_id BIGINT,
   booker_id BIGINT,
   status VARCHAR(32) NOT NULL,
+  owner_id BIGINT,
   CONSTRAINT pk_booking PRIMARY KEY (id),
   CONSTRAINT FK_BOOKING_ON_BOOKER FOREIGN KEY (booker_id) REFERENCES users (id),
   CONSTRAINT FK_BOOKING_ON_ITEM FOREIGN KEY (item_id) REFERENCES items (id)
@@ -51,6 +52,55 @@ CREATE TABLE IF NOT EXISTS comments (
   CONSTRAINT FK_COMMENT_ON_ITEM FOREIGN KEY (item_id) REFERENCES items (id)
 );
 
+-- События бронирований, ожидающие отправки (transactional outbox)
+CREATE TABLE IF NOT EXISTS outbox (
+  id          BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+  event_type  VARCHAR(32) NOT NULL,
+  booking_id  BIGINT NOT NULL,
+  item_id     BIGINT NOT NULL,
+  owner_id    BIGINT NOT NULL,
+  booker_id   BIGINT NOT NULL,
+  created     TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  attempts    INT DEFAULT 0 NOT NULL,
+  status      VARCHAR(16) DEFAULT 'PENDING' NOT NULL,
+  locked_until TIMESTAMP WITHOUT TIME ZONE,
+  CONSTRAINT pk_outbox PRIMARY KEY (id)
+);
+
+-- Бронирования, ожидающие подтверждения владельцем (WAITING)
+CREATE TABLE IF NOT EXISTS owner_inbox (
+  booking_id  BIGINT NOT NULL,
+  owner_id    BIGINT NOT NULL,
+  start_date  TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  CONSTRAINT pk_owner_inbox PRIMARY KEY (booking_id)
+);
+
+-- Владелец вещи в бронировании (для баз, созданных до появления колонки)
+ALTER TABLE bookings ADD COLUMN IF NOT EXISTS owner_id BIGINT;
+UPDATE bookings b SET owner_id = (SELECT i.owner_id FROM items i WHERE i.id = b.item_id) WHERE b.owner_id IS NULL;
+
+-- Состояние события и срок захвата для отправки (для баз, созданных до появления колонок)
+ALTER TABLE outbox ADD COLUMN IF NOT EXISTS status VARCHAR(16) DEFAULT 'PENDING' NOT NULL;
+ALTER TABLE outbox ADD COLUMN IF NOT EXISTS locked_until TIMESTAMP WITHOUT TIME ZONE;
+
+-- Индексы под условия отбора и сортировки запросов репозиториев
+CREATE INDEX IF NOT EXISTS ix_bookings_booker_start ON bookings (booker_id, start_date);
+CREATE INDEX IF NOT EXISTS ix_bookings_item_status_start ON bookings (item_id, status, start_date);
+CREATE INDEX IF NOT EXISTS ix_bookings_owner_start ON bookings (owner_id, start_date DESC);
+CREATE INDEX IF NOT EXISTS ix_owner_inbox_owner_start ON owner_inbox (owner_id, start_date DESC, booking_id DESC);
+CREATE INDEX IF NOT EXISTS ix_items_owner_id ON items (owner_id, id);
+CREATE INDEX IF NOT EXISTS ix_items_request ON items (request_id);
+CREATE INDEX IF NOT EXISTS ix_comments_item ON comments (item_id);
+CREATE INDEX IF NOT EXISTS ix_item_requests_requestor_created ON item_requests (requestor_id, created);
+CREATE INDEX IF NOT EXISTS ix_item_requests_created ON item_requests (created DESC);
+CREATE INDEX IF NOT EXISTS ix_outbox_booking ON outbox (booking_id, id);
+
+-- Ожидающие бронирования баз, созданных до появления owner_inbox
+INSERT INTO owner_inbox (booking_id, owner_id, start_date)
+  SELECT b.id, b.owner_id, b.start_date FROM bookings b
+  WHERE b.status = 'WAITING' AND b.owner_id IS NOT NULL
+    AND NOT EXISTS (SELECT 1 FROM owner_inbox o WHERE o.booking_id = b.id);
+
 --truncate bookings restart identity cascade;
 --truncate comments restart identity cascade;
 --truncate item_requests restart identity cascade;
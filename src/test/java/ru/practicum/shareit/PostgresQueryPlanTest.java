@@ -0,0 +1,292 @@
+package ru.practicum.shareit;
+
+import org.hibernate.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import ru.practicum.shareit.booking.Booking;
+import ru.practicum.shareit.booking.BookingQuery;
+import ru.practicum.shareit.booking.BookingRepository;
+import ru.practicum.shareit.booking.BookingSearchStatus;
+import ru.practicum.shareit.booking.BookingStatus;
+import ru.practicum.shareit.db.PostgresExtensions;
+import ru.practicum.shareit.item.ItemRepository;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.outbox.OutboxRepository;
+import ru.practicum.shareit.outbox.OutboxStatus;
+import ru.practicum.shareit.user.User;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Планы запросов, выполняемых только в PostgreSQL, и частичных индексов schema-postgresql.sql.
+ * Запрос выполняется через репозиторий, его SQL с теми же значениями параметров выполняется через EXPLAIN
+ * при выключенном последовательном просмотре (enable_seqscan): если в плане остаётся Seq Scan,
+ * подходящего индекса нет. Значения параметров нужны планировщику, чтобы выбрать частичный индекс.
+ * Без сервера PostgreSQL и Docker тест пропускается (PostgresTestDatabase).
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({PostgresExtensions.class, PostgresQueryPlanTest.StatementRecorder.class})
+@EnabledIf("ru.practicum.shareit.PostgresTestDatabase#isAvailable")
+class PostgresQueryPlanTest {
+    private static final String SEQ_SCAN = "Seq Scan";
+    //Подтверждённые бронирования вещи содержат частичный индекс и индекс ограничения пересечений,
+    //планировщик выбирает любой из них
+    private static final String APPROVED_ITEM = "ix_bookings_approved_item_period|ex_bookings_approved_overlap";
+
+    @DynamicPropertySource
+    static void postgres(DynamicPropertyRegistry registry) {
+        PostgresTestDatabase.create().register(registry);
+    }
+
+    @Autowired
+    private TestEntityManager em;
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private OutboxRepository outboxRepository;
+
+    private final Pageable page = PageRequest.of(0, 10);
+    private final LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+    private User user;
+    private Item item;
+
+    @BeforeEach
+    void beforeEach() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            User owner = new User(0L, "User" + i, "User" + i + "@mail.tst");
+            em.persist(owner);
+            users.add(owner);
+        }
+
+        for (int i = 0; i < 40; i++) {
+            User owner = users.get(i % users.size());
+            User booker = users.get((i + 1) % users.size());
+            Item current = new Item(0L, "Дрель " + i, "Аккумуляторная дрель " + i, true, owner, null);
+            em.persist(current);
+            for (int j = 0; j < 3; j++) {
+                em.persist(new Booking(0L,
+                        now.plusDays(3L * j - 1),
+                        now.plusDays(3L * j + 1),
+                        current,
+                        booker,
+                        BookingStatus.values()[j % 3]));
+            }
+            item = current;
+        }
+        user = users.get(1);
+        //Отклонённые бронирования пользователя на одну вещь: частичные индексы их не содержат
+        //и поэтому выгоднее индексов по всем бронированиям вещи или пользователя
+        for (int i = 0; i < 300; i++) {
+            em.persist(new Booking(0L,
+                    now.minusDays(i + 2),
+                    now.minusDays(i + 1),
+                    item,
+                    user,
+                    BookingStatus.REJECTED));
+        }
+        em.flush();
+        em.clear();
+        em.getEntityManager().unwrap(Session.class).doWork(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("analyze");
+            }
+        });
+    }
+
+    @Test
+    void searchQueries() {
+        assertIndexScans(Map.of(
+                "searchFullText", () -> itemRepository.searchFullText("дрель", page),
+                "countSearchFullText", () -> itemRepository.countSearchFullText("дрель"),
+                "searchFuzzy", () -> itemRepository.searchFuzzy("дрел", page),
+                "countSearchFuzzy", () -> itemRepository.countSearchFuzzy("дрел")),
+                Map.of("searchFullText", "ix_items_search",
+                       "countSearchFullText", "ix_items_search",
+                       "searchFuzzy", "ix_items_text_trgm",
+                       "countSearchFuzzy", "ix_items_text_trgm"));
+    }
+
+    @Test
+    void bookingQueries() {
+        long id = user.getId();
+        BookingQuery waiting = BookingQuery.builder()
+                .userId(id)
+                .state(BookingSearchStatus.WAITING)
+                .now(now)
+                .build();
+
+        assertIndexScans(Map.of(
+                "findCurrentByBookerInRange", () -> bookingRepository.findCurrentByBookerInRange(id, now, page),
+                "findCurrentByOwnerInRange", () -> bookingRepository.findCurrentByOwnerInRange(id, now, page),
+                "isBooked", () -> bookingRepository.isBooked(item.getId(), now, now.plusDays(1)),
+                "findPeriods", () -> bookingRepository.findPeriods(item.getId(), BookingStatus.APPROVED),
+                "findBookings:" + waiting.shape(), () -> bookingRepository.findBookings(waiting, page)),
+                Map.of("findCurrentByBookerInRange", "ix_bookings_booker_period",
+                       "findCurrentByOwnerInRange", "ix_bookings_owner_period",
+                       "isBooked", APPROVED_ITEM,
+                       "findPeriods", APPROVED_ITEM,
+                       "findBookings:" + waiting.shape(), "ix_bookings_waiting_booker_start"));
+    }
+
+    @Test
+    void outboxQueries() {
+        //Выборка с блокировкой for update skip locked и проверкой более ранних событий бронирования
+        assertIndexScans(Map.of(
+                "findPending", () -> outboxRepository.findPending(OutboxStatus.PENDING, now, page)),
+                Map.of("findPending", "ix_outbox_booking"));
+    }
+
+    /**
+     * Планы запросов не содержат последовательного просмотра, а для запросов из indexes
+     * используется индекс, имя которого соответствует выражению
+     */
+    private void assertIndexScans(Map<String, Runnable> queries, Map<String, String> indexes) {
+        queries.forEach((name, query) -> {
+            StatementRecorder.STATEMENTS.clear();
+            query.run();
+            em.clear();
+            List<RecordedStatement> statements = new ArrayList<>(StatementRecorder.STATEMENTS);
+
+            assertFalse(statements.isEmpty(), name);
+            StringBuilder plans = new StringBuilder();
+            for (RecordedStatement statement : statements) {
+                String plan = explain(statement);
+                assertFalse(plan.contains(SEQ_SCAN), name + ": " + plan);
+                plans.append(plan);
+            }
+            if (indexes.containsKey(name)) {
+                assertTrue(Pattern.compile(indexes.get(name)).matcher(plans).find(), name + ": " + plans);
+            }
+        });
+    }
+
+    private String explain(RecordedStatement recorded) {
+        return em.getEntityManager().unwrap(Session.class).doReturningWork(connection -> {
+            try (Statement settings = connection.createStatement()) {
+                settings.execute("set enable_seqscan = off");
+            }
+            try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + recorded.sql)) {
+                for (Map.Entry<Method, Object[]> parameter : recorded.parameters.values()) {
+                    parameter.getKey().invoke(statement, parameter.getValue());
+                }
+                try (ResultSet rs = statement.executeQuery()) {
+                    StringBuilder plan = new StringBuilder();
+                    while (rs.next()) {
+                        plan.append(rs.getString(1)).append('\n');
+                    }
+                    return plan.toString();
+                }
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                try (Statement settings = connection.createStatement()) {
+                    settings.execute("reset enable_seqscan");
+                }
+            }
+        });
+    }
+
+    /**
+     * Запрос на выборку и вызовы установки его параметров по номерам
+     */
+    private static class RecordedStatement {
+        private final String sql;
+        private final Map<Integer, Map.Entry<Method, Object[]>> parameters = new LinkedHashMap<>();
+
+        RecordedStatement(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    /**
+     * Оборачивает источник данных и запоминает выполненные запросы на выборку вместе со значениями параметров
+     */
+    public static class StatementRecorder implements BeanPostProcessor {
+        static final List<RecordedStatement> STATEMENTS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!(bean instanceof DataSource)) {
+                return bean;
+            }
+            DataSource dataSource = (DataSource) bean;
+            return proxy(DataSource.class, (method, args) -> {
+                Object ret = method.invoke(dataSource, args);
+                return method.getName().equals("getConnection") ? connection((Connection) ret) : ret;
+            });
+        }
+
+        private static Connection connection(Connection connection) {
+            return proxy(Connection.class, (method, args) -> {
+                Object ret = method.invoke(connection, args);
+                if (method.getName().equals("prepareStatement")) {
+                    return statement((PreparedStatement) ret, (String) args[0]);
+                }
+                return ret;
+            });
+        }
+
+        private static PreparedStatement statement(PreparedStatement statement, String sql) {
+            RecordedStatement recorded = new RecordedStatement(sql);
+            return proxy(PreparedStatement.class, (method, args) -> {
+                if (method.getName().startsWith("set") && args != null && args.length > 1
+                        && args[0] instanceof Integer) {
+                    recorded.parameters.put((Integer) args[0], Map.entry(method, args));
+                } else if (method.getName().equals("executeQuery")
+                        && sql.trim().toLowerCase().startsWith("select")) {
+                    STATEMENTS.add(recorded);
+                }
+                return method.invoke(statement, args);
+            });
+        }
+
+        private static <T> T proxy(Class<T> type, Handler handler) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (p, method, args) -> {
+                try {
+                    return handler.invoke(method, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }));
+        }
+
+        private interface Handler {
+            Object invoke(Method method, Object[] args) throws Throwable;
+        }
+    }
+}
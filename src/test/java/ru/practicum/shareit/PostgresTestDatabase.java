@@ -0,0 +1,111 @@
+package ru.practicum.shareit;
+
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+
+/**
+ * Базы PostgreSQL для тестов: сервер из системного свойства shareit.test.postgres-url
+ * (например, mvn test -Dshareit.test.postgres-url=jdbc:postgresql://localhost:5432/postgres)
+ * или контейнер Testcontainers, если доступен Docker. Каждый вызов create создаёт новую пустую базу,
+ * поэтому схема строится с нуля. Без сервера и Docker тесты PostgreSQL пропускаются
+ * (@EnabledIf("ru.practicum.shareit.PostgresTestDatabase#isAvailable")).
+ */
+public final class PostgresTestDatabase {
+    private static final String URL_PROPERTY = "shareit.test.postgres-url";
+    private static final String USERNAME_PROPERTY = "shareit.test.postgres-username";
+    private static final String PASSWORD_PROPERTY = "shareit.test.postgres-password";
+
+    private static PostgreSQLContainer<?> container;    //один контейнер на все тесты, останавливается при выходе
+
+    private final String url;
+    private final String username;
+    private final String password;
+
+    private PostgresTestDatabase(String url, String username, String password) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+    }
+
+    public static boolean isAvailable() {
+        return System.getProperty(URL_PROPERTY) != null || DockerClientFactory.instance().isDockerAvailable();
+    }
+
+    /**
+     * Новая пустая база на сервере из shareit.test.postgres-url или в контейнере
+     */
+    public static synchronized PostgresTestDatabase create() {
+        String serverUrl = System.getProperty(URL_PROPERTY);
+        String username = System.getProperty(USERNAME_PROPERTY, "postgres");
+        String password = System.getProperty(PASSWORD_PROPERTY, "");
+        if (serverUrl == null) {
+            if (container == null) {
+                container = new PostgreSQLContainer<>("postgres:14-alpine");
+                container.start();
+            }
+            serverUrl = container.getJdbcUrl();
+            username = container.getUsername();
+            password = container.getPassword();
+        }
+
+        String name = "shareit_test_" + UUID.randomUUID().toString().replace("-", "");
+        try (Connection connection = DriverManager.getConnection(serverUrl, username, password);
+             Statement statement = connection.createStatement()) {
+            statement.execute("create database " + name);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Не удалось создать тестовую базу " + name, e);
+        }
+        return new PostgresTestDatabase(serverUrl.replaceFirst("(jdbc:postgresql://[^/]+/)[^?]*", "$1" + name),
+                                        username,
+                                        password);
+    }
+
+    /**
+     * Та же база с новым пользователем без прав суперпользователя и права CREATE на базу:
+     * он может создавать таблицы в схеме public, но не может устанавливать расширения
+     */
+    public PostgresTestDatabase withLimitedUser() {
+        String role = "shareit_user_" + UUID.randomUUID().toString().replace("-", "");
+        try (Connection connection = DriverManager.getConnection(url, username, password);
+             Statement statement = connection.createStatement()) {
+            statement.execute("create role " + role + " login password '" + role + "'");
+            statement.execute("grant usage, create on schema public to " + role);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Не удалось создать пользователя " + role, e);
+        }
+        return new PostgresTestDatabase(url, role, role);
+    }
+
+    /**
+     * Подключение контекста Spring к базе вместо H2 профиля test
+     */
+    public void register(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> url);
+        registry.add("spring.datasource.username", () -> username);
+        registry.add("spring.datasource.password", () -> password);
+        registry.add("spring.datasource.driver-class-name", () -> "org.postgresql.Driver");
+        registry.add("spring.sql.init.platform", () -> "postgresql");
+        registry.add("shareit.postgres.extensions.enabled", () -> "true");
+    }
+
+    /**
+     * Аргументы командной строки приложения для подключения к базе вместо H2 профиля test
+     */
+    public String[] args(String... more) {
+        String[] ret = new String[5 + more.length];
+        ret[0] = "--spring.datasource.url=" + url;
+        ret[1] = "--spring.datasource.username=" + username;
+        ret[2] = "--spring.datasource.password=" + password;
+        ret[3] = "--spring.datasource.driver-class-name=org.postgresql.Driver";
+        ret[4] = "--spring.sql.init.platform=postgresql";
+        System.arraycopy(more, 0, ret, 5, more.length);
+        return ret;
+    }
+}
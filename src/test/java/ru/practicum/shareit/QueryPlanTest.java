@@ -0,0 +1,260 @@
+package ru.practicum.shareit;
+
+import org.hibernate.Session;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import ru.practicum.shareit.booking.Booking;
+import ru.practicum.shareit.booking.BookingCursor;
+import ru.practicum.shareit.booking.BookingQuery;
+import ru.practicum.shareit.booking.BookingRepository;
+import ru.practicum.shareit.booking.BookingSearchStatus;
+import ru.practicum.shareit.booking.BookingStatus;
+import ru.practicum.shareit.booking.OwnerInboxEntry;
+import ru.practicum.shareit.booking.OwnerInboxRepository;
+import ru.practicum.shareit.item.CommentRepository;
+import ru.practicum.shareit.item.ItemRepository;
+import ru.practicum.shareit.item.model.Comment;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.outbox.OutboxEvent;
+import ru.practicum.shareit.outbox.OutboxEventType;
+import ru.practicum.shareit.outbox.OutboxRepository;
+import ru.practicum.shareit.outbox.OutboxStatus;
+import ru.practicum.shareit.requests.ItemRequest;
+import ru.practicum.shareit.requests.ItemRequestRepository;
+import ru.practicum.shareit.user.User;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Проверка планов запросов репозиториев: SQL, сформированный Hibernate, выполняется через EXPLAIN
+ * на заполненной базе, и в плане не должно быть полного просмотра таблицы.
+ * Не проверяются:
+ * - ItemRepository.search, countSearch и findNamesByPrefix: поиск подстроки (like '%текст%') индексом
+ *   не ограничивается, запросы выполняются, только пока не построен индекс вещей в памяти (ItemSearchIndex);
+ * - ItemRepository.searchFullText, countSearchFullText, searchFuzzy, countSearchFuzzy,
+ *   BookingRepository.findCurrentByBookerInRange и findCurrentByOwnerInRange: запросы только для PostgreSQL,
+ *   их планы и частичные индексы schema-postgresql.sql проверяет PostgresQueryPlanTest;
+ * - изменяющие запросы (updateOwnerStatus, deleteAllByBookingIdIn, deleteAllByIdIn, lock,
+ *   incrementAttempts, updateExhausted):
+ *   отбирают строки по первичному ключу.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector=" +
+        "ru.practicum.shareit.QueryPlanTest$SqlRecorder")
+class QueryPlanTest {
+    private static final String TABLE_SCAN = "tableScan";
+
+    @Autowired
+    private TestEntityManager em;
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private ItemRequestRepository requestRepository;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    @Autowired
+    private OwnerInboxRepository inboxRepository;
+
+    @Autowired
+    private OutboxRepository outboxRepository;
+
+    private final Pageable page = PageRequest.of(0, 10);
+    private final LocalDateTime now = LocalDateTime.now();
+    private User user;
+    private Item item;
+
+    @BeforeEach
+    void beforeEach() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            User owner = new User(0L, "User" + i, "User" + i + "@mail.tst");
+            em.persist(owner);
+            users.add(owner);
+        }
+
+        for (int i = 0; i < 40; i++) {
+            User owner = users.get(i % users.size());
+            User booker = users.get((i + 1) % users.size());
+            ItemRequest request = new ItemRequest(0L, "Запрос " + i, booker, null);
+            Item current = new Item(0L, "Вещь " + i, "Описание " + i, true, owner, request);
+            em.persist(request);
+            em.persist(current);
+            em.persist(new Comment(0L, "Отзыв " + i, current, booker, now));
+            for (int j = 0; j < 3; j++) {
+                Booking booking = em.persist(new Booking(0L,
+                        now.plusDays(j - 1),
+                        now.plusDays(j),
+                        current,
+                        booker,
+                        BookingStatus.values()[j % 3]));
+                if (booking.getStatus() == BookingStatus.WAITING) {
+                    em.persist(new OwnerInboxEntry(booking.getId(), owner.getId(), booking.getStart()));
+                }
+                em.persist(new OutboxEvent(0L, OutboxEventType.BOOKING_CREATED, booking.getId(), current.getId(),
+                        owner.getId(), booker.getId(), now, 0, null, null));
+            }
+            item = current;
+        }
+        user = users.get(0);
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    void bookingQueries() {
+        long id = user.getId();
+
+        Map<String, Runnable> queries = new HashMap<>();
+
+        //Все формы отбора списков: роль, состояние и фильтр по вещи
+        for (boolean byOwner : new boolean[]{false, true}) {
+            for (BookingSearchStatus state : BookingSearchStatus.values()) {
+                BookingQuery query = BookingQuery.builder()
+                        .byOwner(byOwner)
+                        .userId(id)
+                        .state(state)
+                        .now(now)
+                        .build();
+                String name = query.shape();
+                queries.put("findBookings:" + name, () -> bookingRepository.findBookings(query, page));
+                queries.put("findPageAfter:" + name,
+                        () -> bookingRepository.findPageAfter(query, new BookingCursor(now, 100L), 10));
+                queries.put("countBookings:" + name, () -> bookingRepository.countBookings(query));
+            }
+        }
+        BookingQuery byItem = BookingQuery.builder().userId(id).itemId(item.getId()).now(now).build();
+        queries.put("findBookings:" + byItem.shape(), () -> bookingRepository.findBookings(byItem, page));
+
+        //Период начала ограничивает просмотр индексов (booker_id, start_date) и (owner_id, start_date)
+        for (boolean byOwner : new boolean[]{false, true}) {
+            BookingQuery window = BookingQuery.builder()
+                    .byOwner(byOwner)
+                    .userId(id)
+                    .state(BookingSearchStatus.WAITING)
+                    .now(now)
+                    .windowStart(now.minusDays(30))
+                    .windowEnd(now)
+                    .build();
+            queries.put("findBookings:" + window.shape(), () -> bookingRepository.findBookings(window, page));
+            queries.put("countBookings:" + window.shape(), () -> bookingRepository.countBookings(window));
+        }
+
+        queries.putAll(Map.ofEntries(
+                Map.entry("findFirstEnd",
+                        () -> bookingRepository.findFirstEnd(item.getId(), id, BookingStatus.APPROVED)),
+                Map.entry("isBooked", () -> bookingRepository.isBooked(item.getId(), now, now.plusDays(1))),
+                Map.entry("findPeriods", () -> bookingRepository.findPeriods(item.getId(), BookingStatus.APPROVED)),
+                Map.entry("findPeriodsByItems",
+                        () -> bookingRepository.findPeriodsByItems(List.of(item.getId()), BookingStatus.APPROVED, now)),
+                Map.entry("findPeriodsEndingFrom",
+                        () -> bookingRepository.findPeriodsEndingFrom(item.getId(), BookingStatus.APPROVED, now)),
+                Map.entry("findAllByIdIn", () -> bookingRepository.findAllByIdIn(List.of(1L, 2L)))));
+
+        assertNoTableScan(queries);
+    }
+
+    @Test
+    void itemQueries() {
+        long id = user.getId();
+        Date nowDate = Date.from(Instant.now());
+
+        assertNoTableScan(Map.of(
+                "findAllByRequest_Id", () -> itemRepository.findAllByRequest_Id(item.getRequest().getId()),
+                "findAllByIdIn", () -> itemRepository.findAllByIdIn(Set.of(item.getId())),
+                "findItemsByOwnerIdOrderById", () -> itemRepository.findItemsByOwnerIdOrderById(id, page),
+                "countByOwnerId", () -> itemRepository.countByOwnerId(id),
+                "findLastAndNextBookings",
+                () -> itemRepository.findLastAndNextBookings(List.of(item.getId()), nowDate),
+                "findAllByItem_Id", () -> commentRepository.findAllByItem_Id(item.getId()),
+                "findAllByItem_IdIn", () -> commentRepository.findAllByItem_IdIn(List.of(item.getId())),
+                "findAvailableTextsAfter", () -> itemRepository.findAvailableTextsAfter(item.getId() - 10, page)));
+    }
+
+    @Test
+    void requestQueries() {
+        long id = user.getId();
+
+        //Условие requestor_id <> ? индексом не ограничивается, порция берётся по индексу на дате создания
+        assertNoTableScan(Map.of(
+                "findAllByRequestor_IdOrderByCreatedDesc",
+                () -> requestRepository.findAllByRequestor_IdOrderByCreatedDesc(id),
+                "findAllByRequestor_IdNotOrderByCreatedDesc",
+                () -> requestRepository.findAllByRequestor_IdNotOrderByCreatedDesc(id, page)));
+    }
+
+    @Test
+    void inboxAndOutboxQueries() {
+        long id = user.getId();
+
+        assertNoTableScan(Map.of(
+                "findBookingIds", () -> inboxRepository.findBookingIds(id, page),
+                "findBookingIdsAfter", () -> inboxRepository.findBookingIdsAfter(id, now, 100L, page),
+                "findPending", () -> outboxRepository.findPending(OutboxStatus.PENDING, now, page)));
+    }
+
+    private void assertNoTableScan(Map<String, Runnable> queries) {
+        queries.forEach((name, query) -> {
+            SqlRecorder.STATEMENTS.clear();
+            query.run();
+            em.clear();
+
+            assertFalse(SqlRecorder.STATEMENTS.isEmpty(), name);
+            for (String sql : SqlRecorder.STATEMENTS) {
+                String plan = explain(sql);
+                assertFalse(plan.contains(TABLE_SCAN), name + ": " + plan);
+            }
+        });
+    }
+
+    private String explain(String sql) {
+        return em.getEntityManager().unwrap(Session.class).doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql);
+                 ResultSet rs = statement.executeQuery()) {
+                StringBuilder plan = new StringBuilder();
+                while (rs.next()) {
+                    plan.append(rs.getString(1)).append('\n');
+                }
+                return plan.toString();
+            }
+        });
+    }
+
+    /**
+     * Запоминает SQL-запросы на выборку, сформированные Hibernate
+     */
+    public static class SqlRecorder implements StatementInspector {
+        static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            if (sql.trim().toLowerCase().startsWith("select")) {
+                STATEMENTS.add(sql);
+            }
+            return sql;
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package ru.practicum.shareit.booking;
 
+import ru.practicum.shareit.booking.dto.BookingBatchResultDto;
 import ru.practicum.shareit.booking.dto.BookingDto;
+import ru.practicum.shareit.booking.dto.BookingHoldDto;
 import ru.practicum.shareit.booking.dto.BookingInDto;
 import ru.practicum.shareit.booking.service.BookingService;
+import ru.practicum.shareit.paging.SliceResponse;
 import ru.practicum.shareit.item.dto.ItemDto;
 import ru.practicum.shareit.user.dto.UserDto;
 
@@ -10,14 +13,19 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 import org.mockito.Mockito;
 
@@ -94,6 +102,103 @@ class BookingControllerTest {
                 .andExpect(content().json(mapper.writeValueAsString(bookingDto)));
     }
 
+    @Test
+    void postHold() throws Exception {
+        BookingHoldDto hold = BookingHoldDto.builder()
+                .token("token")
+                .itemId(1L)
+                .start(bookingInDto.getStart())
+                .end(bookingInDto.getEnd())
+                .expires(LocalDateTime.parse("2022-12-01T10:05:00"))
+                .build();
+        Mockito.when(bookingService.hold(bookingInDto, 1L)).thenReturn(hold);
+
+        mockMvc.perform(post("/bookings/holds")
+                        .content(mapper.writeValueAsString(bookingInDto))
+                        .header("X-Sharer-User-Id", "1")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(mapper.writeValueAsString(hold)));
+
+        mockMvc.perform(delete("/bookings/holds/token")
+                        .header("X-Sharer-User-Id", "1"))
+                .andExpect(status().isOk());
+        Mockito.verify(bookingService).releaseHold("token", 1L);
+    }
+
+    @Test
+    void getCounts() throws Exception {
+        Map<BookingSearchStatus, Long> counts = new EnumMap<>(BookingSearchStatus.class);
+        for (BookingSearchStatus state : BookingSearchStatus.values()) {
+            counts.put(state, (long) state.ordinal());
+        }
+        Mockito.when(bookingService.countUserBookingsByState(1L)).thenReturn(counts);
+        Mockito.when(bookingService.countOwnerBookingsByState(1L)).thenReturn(counts);
+
+        mockMvc.perform(get("/bookings/counts")
+                        .header("X-Sharer-User-Id", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.ALL").value(0))
+                .andExpect(jsonPath("$.REJECTED").value(5));
+
+        mockMvc.perform(get("/bookings/owner/counts")
+                        .header("X-Sharer-User-Id", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.WAITING").value(4));
+    }
+
+    @Test
+    void exportOwnerBookings() throws Exception {
+        Mockito.when(bookingService.exportOwnerBookings(1L))
+                .thenReturn(out -> out.write("{\"id\":1}\n{\"id\":2}\n".getBytes(StandardCharsets.UTF_8)));
+
+        MvcResult result = mockMvc.perform(get("/bookings/owner/export")
+                        .header("X-Sharer-User-Id", "1"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string("{\"id\":1}\n{\"id\":2}\n"));
+    }
+
+    @Test
+    void postBookings() throws Exception {
+        BookingBatchResultDto created = BookingBatchResultDto.builder().index(0).booking(bookingDto).build();
+        BookingBatchResultDto rejected = BookingBatchResultDto.builder().index(1).error("Вещь не доступна").build();
+        Mockito.when(bookingService.addAll(List.of(bookingInDto, bookingInDto), 1L, false))
+                .thenReturn(List.of(created, rejected));
+
+        mockMvc.perform(post("/bookings/batch")
+                        .content(mapper.writeValueAsString(List.of(bookingInDto, bookingInDto)))
+                        .header("X-Sharer-User-Id", "1")
+                        .param("atomic", "false")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(mapper.writeValueAsString(List.of(created, rejected))));
+    }
+
+    @Test
+    void updateStatuses() throws Exception {
+        Mockito.when(bookingService.updateStatuses(List.of(1L, 2L), 1L, true))
+                .thenReturn(List.of(bookingDto, bookingDtoTwo));
+
+        mockMvc.perform(patch("/bookings/owner/status")
+                        .content(mapper.writeValueAsString(List.of(1L, 2L)))
+                        .header("X-Sharer-User-Id", "1")
+                        .param("approved", "true")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(mapper.writeValueAsString(List.of(bookingDto, bookingDtoTwo))));
+    }
+
     @Test
     void updateStatus() throws Exception {
         Mockito.when(bookingService.updateStatus(1L, 1L, true)).thenReturn(bookingDto);
@@ -123,8 +228,8 @@ class BookingControllerTest {
 
     @Test
     void findUserBookings() throws Exception {
-        Mockito.when(bookingService.findUserBookings("ALL", 1L, 0, 10))
-                .thenReturn(List.of(bookingDto, bookingDtoTwo));
+        Mockito.when(bookingService.findUserBookings("ALL", 1L, 0, 10, null, null))
+                .thenReturn(new SliceImpl<>(List.of(bookingDto, bookingDtoTwo)));
 
         mockMvc.perform(get("/bookings")
                         .header("X-Sharer-User-Id", "1")
@@ -135,10 +240,29 @@ class BookingControllerTest {
                 .andExpect(content().json(mapper.writeValueAsString(List.of(bookingDto, bookingDtoTwo))));
     }
 
+    @Test
+    void findUserBookingsInWindow() throws Exception {
+        LocalDateTime start = LocalDateTime.parse("2023-03-01T00:00:00");
+        LocalDateTime end = LocalDateTime.parse("2023-04-01T00:00:00");
+        Mockito.when(bookingService.findUserBookings("WAITING", 1L, 0, 10, start, end))
+                .thenReturn(new SliceImpl<>(List.of(bookingDto)));
+        Mockito.when(bookingService.countUserBookings("WAITING", 1L, start, end)).thenReturn(1L);
+
+        mockMvc.perform(get("/bookings")
+                        .param("state", "WAITING")
+                        .param("start", "2023-03-01T00:00:00")
+                        .param("end", "2023-04-01T00:00:00")
+                        .param("total", "true")
+                        .header("X-Sharer-User-Id", "1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(SliceResponse.TOTAL_COUNT_HEADER, "1"))
+                .andExpect(content().json(mapper.writeValueAsString(List.of(bookingDto))));
+    }
+
     @Test
     void findOwnerBookings() throws Exception {
-        Mockito.when(bookingService.findOwnerBookings("ALL", 1L, 0, 10))
-                .thenReturn(List.of(bookingDto, bookingDtoTwo));
+        Mockito.when(bookingService.findOwnerBookings("ALL", 1L, 0, 10, null, null))
+                .thenReturn(new SliceImpl<>(List.of(bookingDto, bookingDtoTwo)));
 
         mockMvc.perform(get("/bookings/owner")
                         .header("X-Sharer-User-Id", "1")
@@ -148,4 +272,62 @@ class BookingControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().json(mapper.writeValueAsString(List.of(bookingDto, bookingDtoTwo))));
     }
+
+    @Test
+    void findOwnerBookingsAfter() throws Exception {
+        String cursor = new BookingCursor(bookingDto.getStart(), bookingDto.getId()).encode();
+        Mockito.when(bookingService.findOwnerBookingsAfter("ALL", 1L, cursor, 2, null, null))
+                .thenReturn(new SliceImpl<>(List.of(bookingDtoTwo), PageRequest.of(0, 2), false));
+        Mockito.when(bookingService.findOwnerBookings("ALL", 1L, 0, 2, null, null))
+                .thenReturn(new SliceImpl<>(List.of(bookingDto, bookingDtoTwo), PageRequest.of(0, 2), true));
+
+        //Заполненная порция возвращает курсор на следующую
+        mockMvc.perform(get("/bookings/owner")
+                        .header("X-Sharer-User-Id", "1")
+                        .param("size", "2")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string(SliceResponse.HAS_MORE_HEADER, "true"))
+                .andExpect(header().string(BookingController.NEXT_CURSOR_HEADER,
+                        new BookingCursor(bookingDtoTwo.getStart(), bookingDtoTwo.getId()).encode()));
+
+        mockMvc.perform(get("/bookings/owner")
+                        .header("X-Sharer-User-Id", "1")
+                        .param("size", "2")
+                        .param("after", cursor)
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string(SliceResponse.HAS_MORE_HEADER, "false"))
+                .andExpect(header().doesNotExist(BookingController.NEXT_CURSOR_HEADER))
+                .andExpect(content().json(mapper.writeValueAsString(List.of(bookingDtoTwo))));
+    }
+
+    @Test
+    void findOwnerInbox() throws Exception {
+        String cursor = new BookingCursor(bookingDto.getStart(), bookingDto.getId()).encode();
+        Mockito.when(bookingService.findOwnerInbox(1L, null, 1))
+                .thenReturn(new SliceImpl<>(List.of(bookingDto), PageRequest.of(0, 1), true));
+        Mockito.when(bookingService.findOwnerInbox(1L, cursor, 1))
+                .thenReturn(new SliceImpl<>(List.of(bookingDtoTwo), PageRequest.of(0, 1), false));
+
+        mockMvc.perform(get("/bookings/owner/inbox")
+                        .header("X-Sharer-User-Id", "1")
+                        .param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(SliceResponse.HAS_MORE_HEADER, "true"))
+                .andExpect(header().string(BookingController.NEXT_CURSOR_HEADER, cursor))
+                .andExpect(content().json(mapper.writeValueAsString(List.of(bookingDto))));
+
+        mockMvc.perform(get("/bookings/owner/inbox")
+                        .header("X-Sharer-User-Id", "1")
+                        .param("size", "1")
+                        .param("after", cursor))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(BookingController.NEXT_CURSOR_HEADER))
+                .andExpect(content().json(mapper.writeValueAsString(List.of(bookingDtoTwo))));
+    }
 }
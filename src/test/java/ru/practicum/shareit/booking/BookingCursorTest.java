@@ -0,0 +1,21 @@
+package ru.practicum.shareit.booking;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.shareit.errorHandle.exception.ValidationException;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookingCursorTest {
+    @Test
+    void encodeDecode() {
+        BookingCursor cursor = new BookingCursor(LocalDateTime.parse("2022-12-12T01:01:01.123"), 15L);
+
+        assertEquals(cursor, BookingCursor.decode(cursor.encode()));
+
+        //Некорректный курсор должен вызывать исключение
+        assertThrows(ValidationException.class, () -> BookingCursor.decode("not a cursor"));
+        assertThrows(ValidationException.class, () -> BookingCursor.decode("MTIz"));
+    }
+}
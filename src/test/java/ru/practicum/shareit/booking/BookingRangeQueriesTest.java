@@ -0,0 +1,95 @@
+package ru.practicum.shareit.booking;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import ru.practicum.shareit.PostgresTestDatabase;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.user.User;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Запросы CURRENT через диапазоны tsrange на PostgreSQL должны возвращать те же бронирования,
+ * что и запросы без диапазонов. Без сервера PostgreSQL и Docker тест пропускается (PostgresTestDatabase).
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@EnabledIf("ru.practicum.shareit.PostgresTestDatabase#isAvailable")
+class BookingRangeQueriesTest {
+    @DynamicPropertySource
+    static void postgres(DynamicPropertyRegistry registry) {
+        PostgresTestDatabase.create().register(registry);
+    }
+
+    @Autowired
+    private TestEntityManager em;
+
+    @Autowired
+    private BookingRepository repository;
+
+    @Test
+    void currentBoundaries() {
+        LocalDateTime now = LocalDateTime.now().plusDays(1).truncatedTo(ChronoUnit.SECONDS);
+        Pageable page = PageRequest.of(0, 10);
+
+        User owner = new User(0L, "Owner", "Owner@mail.tst");
+        User booker = new User(0L, "Booker", "Booker@mail.tst");
+        Item item = new Item(0L, "Дрель", "Дрель", true, owner, null);
+        em.persist(owner);
+        em.persist(booker);
+        em.persist(item);
+
+        //Бронирования, начинающиеся или заканчивающиеся в текущий момент, текущими не считаются
+        persist(now, now.plusHours(1), item, booker);
+        persist(now.minusHours(1), now, item, booker);
+        Booking inside = persist(now.minusHours(1), now.plusHours(1), item, booker);
+        //Бронирование длиннее года, начавшееся давно, тоже текущее
+        Booking longer = persist(now.minusDays(400), now.plusDays(400), item, booker);
+        em.flush();
+
+        List<Long> expected = List.of(inside.getId(), longer.getId());
+        assertEquals(expected, repository.findBookings(query(false, booker.getId(), now), page)
+                .map(Booking::getId)
+                .getContent());
+        assertEquals(expected, repository.findBookings(query(true, owner.getId(), now), page)
+                .map(Booking::getId)
+                .getContent());
+        assertEquals(expected, repository.findCurrentByBookerInRange(booker.getId(), now, page)
+                .getContent()
+                .stream()
+                .map(BookingPeriod::getId)
+                .collect(Collectors.toList()));
+        assertEquals(expected, repository.findCurrentByOwnerInRange(owner.getId(), now, page)
+                .getContent()
+                .stream()
+                .map(BookingPeriod::getId)
+                .collect(Collectors.toList()));
+    }
+
+    private Booking persist(LocalDateTime start, LocalDateTime end, Item item, User booker) {
+        //Подтверждённые бронирования одной вещи не могут пересекаться, поэтому все ожидают подтверждения
+        return em.persist(new Booking(0L, start, end, item, booker, BookingStatus.WAITING));
+    }
+
+    private static BookingQuery query(boolean byOwner, long userId, LocalDateTime now) {
+        return BookingQuery.builder()
+                .byOwner(byOwner)
+                .userId(userId)
+                .state(BookingSearchStatus.CURRENT)
+                .now(now)
+                .build();
+    }
+}
@@ -1,15 +1,24 @@
 package ru.practicum.shareit.booking;
 
+import ru.practicum.shareit.booking.dto.BookingDto;
 import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.requests.ItemRequest;
 import ru.practicum.shareit.user.User;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.test.annotation.DirtiesContext;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -65,5 +74,249 @@ class BookingRepositoryTest {
                 repository.isBooked(1L,
                         LocalDateTime.now().plusHours(9),
                         LocalDateTime.now().plusHours(10)));
+
+        //Выбранный период полностью покрывает бронирование
+        assertEquals(1L,
+                repository.isBooked(1L,
+                        LocalDateTime.now().plusHours(11),
+                        LocalDateTime.now().plusHours(30)));
+
+        assertEquals(2, repository.findPeriods(1L, BookingStatus.APPROVED).size());
+        assertEquals(0, repository.findPeriods(1L, BookingStatus.WAITING).size());
+    }
+
+    @Test
+    void findPageAfter() {
+        User userOne = new User(0L, "UserOne", "UserOne@mail.tst");
+        User userTwo = new User(0L, "UserTwo", "UserTwo@mail.tst");
+
+        Item itemOne = new Item(0L,
+                "Аккумуляторная дрель",
+                "Аккумуляторная дрель + аккумулятор",
+                true,
+                userOne,
+                null);
+
+        LocalDateTime start = LocalDateTime.now().plusHours(5).truncatedTo(ChronoUnit.SECONDS);
+        Booking bookingOne = new Booking(0L, start, start.plusHours(1), itemOne, userTwo, BookingStatus.WAITING);
+        Booking bookingTwo = new Booking(0L, start, start.plusHours(2), itemOne, userTwo, BookingStatus.WAITING);
+        Booking bookingThree = new Booking(0L,
+                start.plusHours(3),
+                start.plusHours(4),
+                itemOne,
+                userTwo,
+                BookingStatus.REJECTED);
+
+        em.persist(userOne);
+        em.persist(userTwo);
+        em.persist(itemOne);
+        em.persist(bookingOne);
+        em.persist(bookingTwo);
+        em.persist(bookingThree);
+
+        LocalDateTime now = LocalDateTime.now();
+        BookingQuery byBooker = query(false, userTwo.getId(), BookingSearchStatus.ALL, now);
+        List<Booking> first = repository.findPageAfter(byBooker, null, 2);
+        assertEquals(List.of(bookingThree, bookingTwo), first);
+
+        //Следующая порция начинается после последней записи, бронирования с одинаковой датой не теряются
+        BookingCursor cursor = new BookingCursor(bookingTwo.getStart(), bookingTwo.getId());
+        assertEquals(List.of(bookingOne), repository.findPageAfter(byBooker, cursor, 2));
+
+        assertEquals(List.of(bookingTwo, bookingOne),
+                repository.findPageAfter(query(true, userOne.getId(), BookingSearchStatus.WAITING, now), null, 5));
+        assertEquals(List.of(bookingThree, bookingTwo, bookingOne),
+                repository.findPageAfter(query(true, userOne.getId(), BookingSearchStatus.FUTURE, now), null, 5));
+        assertEquals(List.of(),
+                repository.findPageAfter(query(true, userOne.getId(), BookingSearchStatus.CURRENT, now), null, 5));
+        assertEquals(List.of(),
+                repository.findPageAfter(query(false, userOne.getId(), BookingSearchStatus.PAST, now), null, 5));
+    }
+
+    @Test
+    void findBookings() {
+        User owner = new User(0L, "Owner", "Owner@mail.tst");
+        User booker = new User(0L, "Booker", "Booker@mail.tst");
+        Item drill = new Item(0L, "Дрель", "Дрель", true, owner, null);
+        Item saw = new Item(0L, "Пила", "Пила", true, owner, null);
+
+        LocalDateTime start = LocalDateTime.now().plusDays(1).truncatedTo(ChronoUnit.SECONDS);
+        Booking first = new Booking(0L, start, start.plusHours(1), drill, booker, BookingStatus.WAITING);
+        Booking second = new Booking(0L, start.plusDays(1), start.plusDays(2), saw, booker, BookingStatus.APPROVED);
+        Booking third = new Booking(0L, start.plusDays(2), start.plusDays(3), drill, booker, BookingStatus.WAITING);
+
+        em.persist(owner);
+        em.persist(booker);
+        em.persist(drill);
+        em.persist(saw);
+        em.persist(first);
+        em.persist(second);
+        em.persist(third);
+
+        //Порции по смещению с признаком следующей порции
+        LocalDateTime now = LocalDateTime.now();
+        BookingQuery all = query(true, owner.getId(), BookingSearchStatus.ALL, now);
+        Slice<Booking> page = repository.findBookings(all, PageRequest.of(0, 2));
+        assertEquals(List.of(third, second), page.getContent());
+        assertTrue(page.hasNext());
+        page = repository.findBookings(all, PageRequest.of(1, 2));
+        assertEquals(List.of(first), page.getContent());
+        assertFalse(page.hasNext());
+        assertEquals(3, repository.countBookings(all));
+
+        //Фильтры по вещи и датам начала сочетаются с состоянием
+        BookingQuery drillWaiting = BookingQuery.builder()
+                .byOwner(false)
+                .userId(booker.getId())
+                .state(BookingSearchStatus.WAITING)
+                .now(now)
+                .itemId(drill.getId())
+                .build();
+        assertEquals(List.of(third, first), repository.findBookings(drillWaiting, PageRequest.of(0, 5)).getContent());
+
+        BookingQuery window = BookingQuery.builder()
+                .byOwner(true)
+                .userId(owner.getId())
+                .now(now)
+                .windowStart(start.plusHours(1))
+                .windowEnd(start.plusDays(2))
+                .build();
+        assertEquals(List.of(second), repository.findBookings(window, PageRequest.of(0, 5)).getContent());
+        assertEquals(1, repository.countBookings(window));
+    }
+
+    @Test
+    void listingStatementCount() {
+        User booker = new User(0L, "Booker", "Booker@mail.tst");
+        em.persist(booker);
+
+        LocalDateTime start = LocalDateTime.now().plusHours(5);
+        for (int i = 0; i < 5; i++) {
+            User owner = new User(0L, "Owner" + i, "Owner" + i + "@mail.tst");
+            User requestor = new User(0L, "Requestor" + i, "Requestor" + i + "@mail.tst");
+            ItemRequest request = new ItemRequest(0L, "Нужна дрель", requestor, null);
+            Item item = new Item(0L, "Дрель " + i, "Дрель", true, owner, request);
+            em.persist(owner);
+            em.persist(requestor);
+            em.persist(request);
+            em.persist(item);
+            em.persist(new Booking(0L, start.plusHours(i), start.plusHours(i + 1), item, booker, BookingStatus.WAITING));
+        }
+        em.flush();
+        em.clear();
+
+        Statistics statistics = em.getEntityManager()
+                .getEntityManagerFactory()
+                .unwrap(SessionFactory.class)
+                .getStatistics();
+        statistics.setStatisticsEnabled(true);
+
+        //Вещи, владельцы, запросы и арендатор загружаются тем же запросом, что и бронирования
+        statistics.clear();
+        List<BookingDto> page = repository.findBookings(query(false, booker.getId(), BookingSearchStatus.ALL,
+                        LocalDateTime.now()), PageRequest.of(0, 5))
+                .map(BookingMapper::toBookingDto)
+                .getContent();
+        assertEquals(5, page.size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        em.clear();
+        statistics.clear();
+        List<Booking> after = repository.findPageAfter(query(false, booker.getId(), BookingSearchStatus.ALL,
+                LocalDateTime.now()), null, 5);
+        after.forEach(BookingMapper::toBookingDto);
+        assertEquals(5, after.size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        em.clear();
+        statistics.clear();
+        List<Booking> byIds = repository.findAllByIdIn(List.of(after.get(0).getId(), after.get(1).getId()));
+        byIds.forEach(BookingMapper::toBookingDto);
+        assertEquals(2, byIds.size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        statistics.setStatisticsEnabled(false);
+    }
+
+    @Test
+    void updateOwnerStatus() {
+        User owner = new User(0L, "Owner", "Owner@mail.tst");
+        User other = new User(0L, "Other", "Other@mail.tst");
+        User booker = new User(0L, "Booker", "Booker@mail.tst");
+        Item ownerItem = new Item(0L, "Дрель", "Дрель", true, owner, null);
+        Item otherItem = new Item(0L, "Пила", "Пила", true, other, null);
+
+        LocalDateTime start = LocalDateTime.now().plusHours(5);
+        Booking waiting = new Booking(0L, start, start.plusHours(1), ownerItem, booker, BookingStatus.WAITING);
+        Booking approved = new Booking(0L, start, start.plusHours(1), ownerItem, booker, BookingStatus.APPROVED);
+        Booking foreign = new Booking(0L, start, start.plusHours(1), otherItem, booker, BookingStatus.WAITING);
+
+        em.persist(owner);
+        em.persist(other);
+        em.persist(booker);
+        em.persist(ownerItem);
+        em.persist(otherItem);
+        em.persist(waiting);
+        em.persist(approved);
+        em.persist(foreign);
+
+        //Владелец вещи копируется в бронирование при сохранении
+        assertEquals(owner.getId(), em.find(Booking.class, waiting.getId()).getOwnerId());
+        assertEquals(other.getId(), em.find(Booking.class, foreign.getId()).getOwnerId());
+
+        //Изменяются только бронирования вещей владельца, у которых статус отличается от нового
+        assertEquals(1, repository.updateOwnerStatus(List.of(waiting.getId(), approved.getId(), foreign.getId()),
+                owner.getId(),
+                BookingStatus.APPROVED));
+
+        assertEquals(BookingStatus.APPROVED, em.find(Booking.class, waiting.getId()).getStatus());
+        assertEquals(BookingStatus.WAITING, em.find(Booking.class, foreign.getId()).getStatus());
+    }
+
+    @Test
+    void countByState() {
+        User owner = new User(0L, "Owner", "Owner@mail.tst");
+        User booker = new User(0L, "Booker", "Booker@mail.tst");
+        Item item = new Item(0L, "Дрель", "Дрель", true, owner, null);
+
+        LocalDateTime now = LocalDateTime.now();
+        em.persist(owner);
+        em.persist(booker);
+        em.persist(item);
+        em.persist(new Booking(0L, now.minusDays(5), now.minusDays(4), item, booker, BookingStatus.APPROVED));
+        em.persist(new Booking(0L, now.minusDays(3), now.minusDays(2), item, booker, BookingStatus.REJECTED));
+        em.persist(new Booking(0L, now.minusHours(1), now.plusHours(1), item, booker, BookingStatus.APPROVED));
+        em.persist(new Booking(0L, now.plusDays(1), now.plusDays(2), item, booker, BookingStatus.WAITING));
+        //Бронирование длиннее года, начавшееся давно, тоже текущее
+        em.persist(new Booking(0L, now.minusDays(400), now.plusDays(400), item, booker, BookingStatus.WAITING));
+
+        //Количества совпадают с отбором постраничных запросов по каждому состоянию
+        for (boolean byOwner : new boolean[]{false, true}) {
+            long userId = byOwner ? owner.getId() : booker.getId();
+            BookingStateCounts counts = repository.countByState(byOwner, userId, now);
+            for (BookingSearchStatus state : BookingSearchStatus.values()) {
+                assertEquals(repository.countBookings(query(byOwner, userId, state, now)),
+                        counts.getCounts().get(state),
+                        state.name());
+            }
+            assertEquals(2L, counts.getCounts().get(BookingSearchStatus.CURRENT));
+            //Ближайшее изменение - окончание текущего бронирования
+            assertEquals(now.plusHours(1).truncatedTo(ChronoUnit.MILLIS),
+                    counts.getNextChange().truncatedTo(ChronoUnit.MILLIS));
+        }
+
+        //Без бронирований все количества нулевые
+        BookingStateCounts empty = repository.countByState(false, owner.getId(), now);
+        assertEquals(0L, empty.getCounts().get(BookingSearchStatus.ALL));
+        assertNull(empty.getNextChange());
+    }
+
+    private BookingQuery query(boolean byOwner, long userId, BookingSearchStatus state, LocalDateTime now) {
+        return BookingQuery.builder()
+                .byOwner(byOwner)
+                .userId(userId)
+                .state(state)
+                .now(now)
+                .build();
     }
 }
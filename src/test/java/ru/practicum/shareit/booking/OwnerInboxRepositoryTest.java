@@ -0,0 +1,36 @@
+package ru.practicum.shareit.booking;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+class OwnerInboxRepositoryTest {
+
+    @Autowired
+    private OwnerInboxRepository repository;
+
+    @Test
+    void findBookingIdsAfter() {
+        LocalDateTime start = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS).plusDays(1);
+        repository.saveAll(List.of(new OwnerInboxEntry(1L, 1L, start),
+                                   new OwnerInboxEntry(2L, 1L, start.plusDays(1)),
+                                   new OwnerInboxEntry(3L, 1L, start),
+                                   new OwnerInboxEntry(4L, 2L, start.plusDays(2))));
+
+        //Только бронирования владельца, от более новых к более старым, при равном начале по убыванию id
+        assertEquals(List.of(2L, 3L), repository.findBookingIds(1L, PageRequest.of(0, 2)));
+        assertEquals(List.of(1L), repository.findBookingIdsAfter(1L, start, 3L, PageRequest.of(0, 2)));
+
+        //Рассмотренные бронирования удаляются из списка
+        assertEquals(2, repository.deleteAllByBookingIdIn(List.of(2L, 3L)));
+        assertEquals(List.of(1L), repository.findBookingIds(1L, PageRequest.of(0, 10)));
+    }
+}
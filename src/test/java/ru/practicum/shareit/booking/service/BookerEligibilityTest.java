@@ -0,0 +1,99 @@
+package ru.practicum.shareit.booking.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookerEligibilityTest {
+    BookerEligibility eligibility;
+    MutableClock clock;
+
+    private final LocalDateTime now = LocalDateTime.of(2030, 1, 10, 12, 0);
+
+    @BeforeEach
+    void beforeEach() {
+        clock = new MutableClock(now.toInstant(ZoneOffset.UTC));
+        eligibility = new BookerEligibility(16, Duration.ofMinutes(5), clock);
+    }
+
+    @Test
+    void approved() {
+        assertFalse(eligibility.isEligible(1L, 2L));
+
+        //Бронирование ещё не завершилось
+        eligibility.approved(1L, 2L, now.plusDays(1));
+        assertFalse(eligibility.isEligible(1L, 2L));
+
+        //В кэше остаётся самое раннее окончание
+        eligibility.approved(1L, 2L, now.minusDays(1));
+        eligibility.approved(1L, 2L, now.plusDays(5));
+        assertTrue(eligibility.isEligible(1L, 2L));
+        assertFalse(eligibility.isEligible(1L, 3L));
+
+        //После отклонения право проверяется заново
+        eligibility.evict(1L, 2L);
+        assertFalse(eligibility.isEligible(1L, 2L));
+    }
+
+    @Test
+    void ttl() {
+        eligibility.approved(1L, 2L, now.minusDays(1));
+        clock.instant = clock.instant.plus(Duration.ofMinutes(4));
+        assertTrue(eligibility.isEligible(1L, 2L));
+
+        //Устаревшая запись не используется, право проверяется по базе и записывается заново
+        clock.instant = clock.instant.plus(Duration.ofMinutes(1));
+        assertFalse(eligibility.isEligible(1L, 2L));
+        eligibility.approved(1L, 2L, now.minusDays(1));
+        assertTrue(eligibility.isEligible(1L, 2L));
+    }
+
+    @Test
+    void boundedSize() {
+        //Пары вытесняют друг друга, но не подменяют чужое значение
+        for (long itemId = 1; itemId <= 100; itemId++) {
+            eligibility.approved(itemId, 2L, now.minusDays(1));
+        }
+        assertTrue(eligibility.isEligible(100L, 2L));
+
+        long cached = 0;
+        for (long itemId = 1; itemId <= 100; itemId++) {
+            if (eligibility.isEligible(itemId, 2L)) {
+                cached++;
+            }
+        }
+        assertTrue(cached <= 16);
+        assertFalse(eligibility.isEligible(101L, 2L));
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
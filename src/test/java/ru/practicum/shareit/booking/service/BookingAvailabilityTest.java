@@ -0,0 +1,89 @@
+package ru.practicum.shareit.booking.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import ru.practicum.shareit.booking.BookingPeriod;
+import ru.practicum.shareit.booking.BookingRepository;
+import ru.practicum.shareit.booking.BookingStatus;
+import ru.practicum.shareit.booking.dto.AvailabilitySlotDto;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class BookingAvailabilityTest {
+    BookingRepository repository;
+    BookingAvailability availability;
+
+    private final LocalDateTime day = LocalDateTime.of(2030, 1, 1, 0, 0);
+
+    @BeforeEach
+    void beforeEach() {
+        repository = mock(BookingRepository.class);
+
+        //Два пересекающихся и одно отдельное подтверждённое бронирование, одно ожидающее подтверждения
+        List<BookingPeriod> approved = List.of(period(3L, day.plusDays(10), day.plusDays(12)),
+                                               period(1L, day.plusDays(2), day.plusDays(4)),
+                                               period(2L, day.plusDays(3), day.plusDays(5)));
+        List<BookingPeriod> waiting = List.of(period(4L, day.plusDays(6), day.plusDays(7)));
+        Mockito.when(repository.findPeriods(1L, BookingStatus.APPROVED)).thenReturn(approved);
+        Mockito.when(repository.findPeriods(1L, BookingStatus.WAITING)).thenReturn(waiting);
+
+        availability = new BookingAvailability(repository,
+                Duration.ofSeconds(60),
+                Clock.fixed(Instant.EPOCH, ZoneOffset.UTC));
+    }
+
+    @Test
+    void freeSlots() {
+        //Пересекающиеся бронирования сливаются в один занятый интервал
+        assertEquals(List.of(slot(day, day.plusDays(2)),
+                             slot(day.plusDays(5), day.plusDays(10)),
+                             slot(day.plusDays(12), day.plusDays(20))),
+                availability.freeSlots(1L, day, day.plusDays(20), false));
+
+        //Ожидающие подтверждения бронирования учитываются только по запросу
+        assertEquals(List.of(slot(day, day.plusDays(2)),
+                             slot(day.plusDays(5), day.plusDays(6)),
+                             slot(day.plusDays(7), day.plusDays(10)),
+                             slot(day.plusDays(12), day.plusDays(20))),
+                availability.freeSlots(1L, day, day.plusDays(20), true));
+
+        //Период, начинающийся внутри бронирования, и период без свободных окон
+        assertEquals(List.of(slot(day.plusDays(5), day.plusDays(8))),
+                availability.freeSlots(1L, day.plusDays(3), day.plusDays(8), false));
+        assertEquals(List.of(), availability.freeSlots(1L, day.plusDays(2), day.plusDays(5), false));
+    }
+
+    @Test
+    void cacheAndEvict() {
+        availability.freeSlots(1L, day, day.plusDays(20), false);
+        availability.freeSlots(1L, day, day.plusDays(8), false);
+        Mockito.verify(repository, Mockito.times(1)).findPeriods(1L, BookingStatus.APPROVED);
+
+        //После изменения бронирований вещи интервалы загружаются заново
+        availability.evict(1L);
+        availability.freeSlots(1L, day, day.plusDays(20), false);
+        Mockito.verify(repository, Mockito.times(2)).findPeriods(1L, BookingStatus.APPROVED);
+    }
+
+    private AvailabilitySlotDto slot(LocalDateTime start, LocalDateTime end) {
+        return new AvailabilitySlotDto(start, end);
+    }
+
+    private BookingPeriod period(Long id, LocalDateTime start, LocalDateTime end) {
+        BookingPeriod period = mock(BookingPeriod.class);
+        Mockito.when(period.getId()).thenReturn(id);
+        Mockito.when(period.getItemId()).thenReturn(1L);
+        Mockito.when(period.getStart()).thenReturn(start);
+        Mockito.when(period.getEnd()).thenReturn(end);
+        return period;
+    }
+}
@@ -0,0 +1,72 @@
+package ru.practicum.shareit.booking.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import ru.practicum.shareit.booking.Booking;
+import ru.practicum.shareit.booking.BookingStatus;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.user.User;
+import ru.practicum.shareit.user.UserMapper;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+class BookingExporterTest {
+
+    @Autowired
+    private TestEntityManager em;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+
+    @Test
+    void exportOwnerBookings() throws Exception {
+        User owner = new User(0L, "Owner", "Owner@mail.tst");
+        User other = new User(0L, "Other", "Other@mail.tst");
+        User booker = new User(0L, "Booker", "Booker@mail.tst");
+        Item item = new Item(0L, "Дрель", "Аккумуляторная дрель", true, owner, null);
+        Item otherItem = new Item(0L, "Пила", "Пила", true, other, null);
+
+        LocalDateTime start = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS).plusDays(1);
+        em.persist(owner);
+        em.persist(other);
+        em.persist(booker);
+        em.persist(item);
+        em.persist(otherItem);
+        Booking older = em.persist(new Booking(0L, start, start.plusDays(1), item, booker, BookingStatus.APPROVED));
+        Booking newer = em.persist(new Booking(0L, start.plusDays(5), start.plusDays(6), item, booker,
+                BookingStatus.WAITING));
+        em.persist(new Booking(0L, start, start.plusDays(1), otherItem, booker, BookingStatus.WAITING));
+        em.flush();
+
+        BookingExporter exporter = new BookingExporter(dataSource, mapper, 1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.exportOwnerBookings(UserMapper.toUserDto(owner), out);
+
+        //По одному бронированию вещей владельца в строке, от более новых к более старым
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+
+        JsonNode first = mapper.readTree(lines[0]);
+        JsonNode second = mapper.readTree(lines[1]);
+        assertEquals(newer.getId(), first.get("id").asLong());
+        assertEquals(older.getId(), second.get("id").asLong());
+        assertEquals(start, LocalDateTime.parse(second.get("start").asText()));
+        assertEquals("APPROVED", second.get("status").asText());
+        assertEquals("Дрель", second.get("item").get("name").asText());
+        assertEquals(owner.getId(), second.get("item").get("owner").get("id").asLong());
+        assertEquals(booker.getEmail(), second.get("booker").get("email").asText());
+    }
+}
@@ -0,0 +1,120 @@
+package ru.practicum.shareit.booking.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import ru.practicum.shareit.errorHandle.exception.EntityAlreadyExistException;
+import ru.practicum.shareit.errorHandle.exception.ValidationException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class BookingHoldsTest {
+    Clock clock;
+    BookingHolds holds;
+
+    private final LocalDateTime now = LocalDateTime.of(2030, 1, 1, 12, 0);
+    private final LocalDateTime start = now.plusDays(1);
+    private final LocalDateTime end = now.plusDays(2);
+
+    @BeforeEach
+    void beforeEach() {
+        clock = mock(Clock.class);
+        Mockito.when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        Mockito.when(clock.instant()).thenReturn(now.toInstant(ZoneOffset.UTC));
+
+        holds = new BookingHolds(Duration.ofMinutes(5), 2, Duration.ofMinutes(12), clock);
+    }
+
+    @Test
+    void place() {
+        BookingHolds.Hold hold = holds.place(1L, 2L, start, end);
+        assertEquals(now.plusMinutes(5), hold.getExpires());
+
+        //Удержание другого пользователя на пересекающийся период отклоняется, на соседний период и другую вещь - нет
+        assertThrows(EntityAlreadyExistException.class, () -> holds.place(1L, 3L, end, end.plusDays(1)));
+        assertNotNull(holds.place(1L, 3L, end.plusHours(1), end.plusDays(1)));
+        assertNotNull(holds.place(2L, 3L, start, end));
+
+        assertTrue(holds.isHeldByOthers(1L, 3L, start, end));
+        assertFalse(holds.isHeldByOthers(1L, 2L, start, end));
+
+        //Токен действует только для своего пользователя, вещи и периода внутри удержания
+        assertTrue(holds.isHeld(hold.getToken(), 1L, 2L, start.plusHours(1), end));
+        assertFalse(holds.isHeld(hold.getToken(), 1L, 3L, start, end));
+        assertFalse(holds.isHeld(hold.getToken(), 2L, 2L, start, end));
+        assertFalse(holds.isHeld(hold.getToken(), 1L, 2L, start, end.plusHours(1)));
+        assertFalse(holds.isHeld(null, 1L, 2L, start, end));
+    }
+
+    @Test
+    void expireAndRelease() {
+        BookingHolds.Hold hold = holds.place(1L, 2L, start, end);
+
+        //Снять удержание может только его владелец
+        assertFalse(holds.release(hold.getToken(), 3L));
+        assertTrue(holds.release(hold.getToken(), 2L));
+        assertFalse(holds.isHeldByOthers(1L, 3L, start, end));
+        assertFalse(holds.release(hold.getToken(), 2L));
+
+        //Просроченное удержание не учитывается и удаляется
+        BookingHolds.Hold expiring = holds.place(1L, 2L, start, end);
+        Mockito.when(clock.instant()).thenReturn(now.plusMinutes(6).toInstant(ZoneOffset.UTC));
+        assertFalse(holds.isHeldByOthers(1L, 3L, start, end));
+        assertFalse(holds.isHeld(expiring.getToken(), 1L, 2L, start, end));
+        assertNotNull(holds.place(1L, 3L, start, end));
+
+        holds.purge();
+        assertFalse(holds.release(expiring.getToken(), 2L));
+    }
+
+    @Test
+    void maxPerUser() {
+        holds.place(1L, 2L, start, end);
+        holds.place(2L, 2L, start, end);
+
+        //Третий период сверх двух одновременных удержаний отклоняется, другой пользователь не ограничен
+        assertThrows(ValidationException.class, () -> holds.place(3L, 2L, start, end));
+        assertNotNull(holds.place(3L, 3L, start, end));
+
+        //Продление действующего удержания и удержание после снятия другого укладываются в ограничение
+        BookingHolds.Hold renewed = holds.place(1L, 2L, start.plusHours(1), end);
+        assertTrue(holds.release(renewed.getToken(), 2L));
+        assertNotNull(holds.place(4L, 2L, start, end));
+    }
+
+    @Test
+    void maxDuration() {
+        BookingHolds.Hold first = holds.place(1L, 2L, start, end);
+
+        //Продление заменяет прежнее удержание и отсчитывается от его начала
+        Mockito.when(clock.instant()).thenReturn(now.plusMinutes(4).toInstant(ZoneOffset.UTC));
+        BookingHolds.Hold renewed = holds.place(1L, 2L, start, end);
+        assertEquals(now.plusMinutes(9), renewed.getExpires());
+        assertFalse(holds.isHeld(first.getToken(), 1L, 2L, start, end));
+
+        //Последнее продление ограничено наибольшим временем удержания подряд
+        Mockito.when(clock.instant()).thenReturn(now.plusMinutes(8).toInstant(ZoneOffset.UTC));
+        assertEquals(now.plusMinutes(12), holds.place(1L, 2L, start, end).getExpires());
+
+        Mockito.when(clock.instant()).thenReturn(now.plusMinutes(11).toInstant(ZoneOffset.UTC));
+        assertEquals(now.plusMinutes(12), holds.place(1L, 2L, start, end).getExpires());
+        assertTrue(holds.isHeldByOthers(1L, 3L, start, end));
+
+        //После окончания вещь освобождается для других пользователей, а тот же пользователь
+        //может удержать её снова только через hold-ttl
+        Mockito.when(clock.instant()).thenReturn(now.plusMinutes(12).toInstant(ZoneOffset.UTC));
+        assertFalse(holds.isHeldByOthers(1L, 3L, start, end));
+        assertThrows(ValidationException.class, () -> holds.place(1L, 2L, start, end));
+        assertNotNull(holds.place(2L, 2L, start, end));
+        assertNotNull(holds.place(1L, 3L, end.plusHours(1), end.plusDays(1)));
+
+        Mockito.when(clock.instant()).thenReturn(now.plusMinutes(17).toInstant(ZoneOffset.UTC));
+        assertNotNull(holds.place(1L, 2L, start, end));
+    }
+}
@@ -0,0 +1,157 @@
+package ru.practicum.shareit.booking.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import ru.practicum.shareit.booking.BookingPeriod;
+import ru.practicum.shareit.booking.BookingRepository;
+import ru.practicum.shareit.booking.BookingStatus;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+
+class BookingIntervalIndexTest {
+    BookingRepository repository;
+    BookingIntervalIndex index;
+    Clock clock;
+
+    private final Instant started = Instant.parse("2030-01-01T12:00:00Z");
+    private final LocalDateTime now = LocalDateTime.ofInstant(started, ZoneOffset.UTC);
+    private final AtomicReference<Instant> time = new AtomicReference<>(started);
+
+    @BeforeEach
+    void beforeEach() {
+        repository = mock(BookingRepository.class);
+
+        List<BookingPeriod> periods = List.of(period(1L, now.plusHours(5), now.plusHours(10)),
+                                              period(2L, now.plusHours(12), now.plusHours(24)));
+        Mockito.when(repository.findPeriodsEndingFrom(eq(1L), eq(BookingStatus.APPROVED), any())).thenReturn(periods);
+
+        clock = mock(Clock.class);
+        Mockito.when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        Mockito.when(clock.instant()).then(invocation -> time.get());
+        Mockito.when(clock.millis()).then(invocation -> time.get().toEpochMilli());
+
+        index = new BookingIntervalIndex(repository, Duration.ofMinutes(5), clock);
+    }
+
+    @Test
+    void isBooked() {
+        //Пересечение с одним и с двумя бронированиями
+        assertTrue(index.isBooked(1L, now.plusHours(9), now.plusHours(13)));
+        assertTrue(index.isBooked(1L, now.plusHours(9), now.plusHours(10)));
+
+        //Запрошенный период полностью покрывает бронирование
+        assertTrue(index.isBooked(1L, now.plusHours(4), now.plusHours(30)));
+
+        //Свободные промежутки
+        assertFalse(index.isBooked(1L, now.plusHours(1), now.plusHours(4)));
+        assertFalse(index.isBooked(1L, now.plusHours(11), now.plusHours(11)));
+        assertFalse(index.isBooked(1L, now.plusHours(25), now.plusHours(30)));
+
+        //Интервалы загружаются из базы только один раз, закончившиеся интервалы не загружаются
+        Mockito.verify(repository, Mockito.times(1)).findPeriodsEndingFrom(1L, BookingStatus.APPROVED, now);
+        Mockito.verify(repository, Mockito.never()).isBooked(any(), any(), any());
+    }
+
+    @Test
+    void addAndRemove() {
+        assertFalse(index.isBooked(1L, now.plusHours(30), now.plusHours(31)));
+
+        index.add(1L, 3L, now.plusHours(29), now.plusHours(40));
+        assertTrue(index.isBooked(1L, now.plusHours(30), now.plusHours(31)));
+
+        index.remove(1L, 3L);
+        assertFalse(index.isBooked(1L, now.plusHours(30), now.plusHours(31)));
+
+        index.remove(1L, 1L);
+        assertFalse(index.isBooked(1L, now.plusHours(6), now.plusHours(7)));
+
+        //Сброшенные интервалы загружаются из базы заново
+        index.evict(1L);
+        assertTrue(index.isBooked(1L, now.plusHours(6), now.plusHours(7)));
+        Mockito.verify(repository, Mockito.times(2)).findPeriodsEndingFrom(1L, BookingStatus.APPROVED, now);
+    }
+
+    @Test
+    void expiry() {
+        assertTrue(index.isBooked(1L, now.plusHours(6), now.plusHours(7)));
+
+        //Изменения других экземпляров видны после истечения времени жизни записи
+        time.set(started.plus(Duration.ofMinutes(6)));
+        LocalDateTime later = now.plusMinutes(6);
+        Mockito.when(repository.findPeriodsEndingFrom(1L, BookingStatus.APPROVED, later)).thenReturn(List.of());
+        assertFalse(index.isBooked(1L, now.plusHours(6), now.plusHours(7)));
+        Mockito.verify(repository).findPeriodsEndingFrom(1L, BookingStatus.APPROVED, later);
+    }
+
+    @Test
+    void endedIntervals() {
+        index = new BookingIntervalIndex(repository, Duration.ofDays(1), clock);
+        assertFalse(index.isBooked(1L, now.plusHours(1), now.plusHours(2)));
+
+        //Закончившиеся к моменту изменения интервалы отбрасываются, прошедшие периоды проверяются запросом к базе
+        time.set(started.plus(Duration.ofHours(11)));
+        index.add(1L, 3L, now.plusHours(30), now.plusHours(31));
+        Mockito.when(repository.isBooked(1L, now.plusHours(6), now.plusHours(7))).thenReturn(1L);
+        assertTrue(index.isBooked(1L, now.plusHours(6), now.plusHours(7)));
+        Mockito.verify(repository).isBooked(1L, now.plusHours(6), now.plusHours(7));
+
+        assertTrue(index.isBooked(1L, now.plusHours(12), now.plusHours(13)));
+        assertTrue(index.isBooked(1L, now.plusHours(30), now.plusHours(30)));
+        Mockito.verify(repository, Mockito.times(1)).isBooked(any(), any(), any());
+    }
+
+    @Test
+    void sizeLimit() {
+        for (long itemId = 1; itemId <= BookingIntervalIndex.MAX_ENTRIES; itemId++) {
+            index.isBooked(itemId, now.plusHours(1), now.plusHours(2));
+        }
+        assertEquals(BookingIntervalIndex.MAX_ENTRIES, index.size());
+
+        //Новая вещь вытесняет записи, загруженные раньше остальных
+        time.set(started.plus(Duration.ofMinutes(3)));
+        index.isBooked(BookingIntervalIndex.MAX_ENTRIES + 1, now.plusHours(1), now.plusHours(2));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void preload() {
+        List<BookingPeriod> periods = List.of(period(1L, now.plusHours(5), now.plusHours(10)),
+                                              period(3L, 2L, now.plusHours(1), now.plusHours(2)));
+        Mockito.when(repository.findPeriodsByItems(List.of(1L, 2L), BookingStatus.APPROVED, now)).thenReturn(periods);
+
+        //Интервалы всех вещей загружаются одним запросом
+        index.preload(List.of(1L, 2L));
+        index.preload(List.of(1L, 2L));
+        assertTrue(index.isBooked(1L, now.plusHours(6), now.plusHours(7)));
+        assertTrue(index.isBooked(2L, now.plusHours(1), now.plusHours(3)));
+        assertFalse(index.isBooked(2L, now.plusHours(6), now.plusHours(7)));
+
+        Mockito.verify(repository, Mockito.times(1)).findPeriodsByItems(List.of(1L, 2L), BookingStatus.APPROVED, now);
+        Mockito.verify(repository, Mockito.never()).findPeriodsEndingFrom(Mockito.anyLong(), any(), any());
+    }
+
+    private BookingPeriod period(Long id, LocalDateTime start, LocalDateTime end) {
+        return period(id, 1L, start, end);
+    }
+
+    private BookingPeriod period(Long id, Long itemId, LocalDateTime start, LocalDateTime end) {
+        BookingPeriod period = mock(BookingPeriod.class);
+        Mockito.when(period.getId()).thenReturn(id);
+        Mockito.when(period.getItemId()).thenReturn(itemId);
+        Mockito.when(period.getStart()).thenReturn(start);
+        Mockito.when(period.getEnd()).thenReturn(end);
+        return period;
+    }
+}
@@ -0,0 +1,92 @@
+package ru.practicum.shareit.booking.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.mock;
+
+class BookingItemLocksTest {
+
+    @Test
+    void jvmLocks() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        BookingItemLocks locks = new BookingItemLocks("jvm", null, null, registry);
+        assertTrue(locks.isSingleInstance());
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger inside = new AtomicInteger();
+
+        CompletableFuture<Integer> holder = CompletableFuture.supplyAsync(() ->
+                locks.withItemLocks(List.of(1L), () -> {
+                    inside.incrementAndGet();
+                    locked.countDown();
+                    await(release);
+                    return inside.getAndDecrement();
+                }));
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+
+        //Бронирование другой вещи не ждёт блокировку первой
+        assertEquals(2L, locks.withItemLocks(List.of(2L), () -> 2L));
+
+        //Бронирование той же вещи ждёт, пока блокировка не будет освобождена
+        CompletableFuture<Integer> waiter = CompletableFuture.supplyAsync(() ->
+                locks.withItemLocks(List.of(3L, 1L), inside::incrementAndGet));
+        Thread.sleep(100);
+        assertFalse(waiter.isDone());
+
+        release.countDown();
+        assertEquals(1, holder.get(5, TimeUnit.SECONDS));
+        assertEquals(1, waiter.get(5, TimeUnit.SECONDS));
+
+        assertEquals(4, registry.get(BookingItemLocks.WAIT_METRIC).timer().count());
+    }
+
+    @Test
+    void advisoryLocks() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        Mockito.when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        BookingItemLocks locks = new BookingItemLocks("advisory",
+                jdbcTemplate,
+                transactionManager,
+                new SimpleMeterRegistry());
+
+        assertFalse(locks.isSingleInstance());
+        assertEquals("done", locks.withItemLocks(List.of(5L, 2L), () -> "done"));
+
+        //Блокировки берутся в порядке возрастания идентификаторов внутри транзакции
+        InOrder inOrder = Mockito.inOrder(transactionManager, jdbcTemplate);
+        inOrder.verify(transactionManager).getTransaction(any());
+        inOrder.verify(jdbcTemplate).query(eq("select pg_advisory_xact_lock(?)"),
+                ArgumentMatchers.<ResultSetExtractor<Object>>any(),
+                eq(2L));
+        inOrder.verify(jdbcTemplate).query(eq("select pg_advisory_xact_lock(?)"),
+                ArgumentMatchers.<ResultSetExtractor<Object>>any(),
+                eq(5L));
+        inOrder.verify(transactionManager).commit(any());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package ru.practicum.shareit.booking.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.shareit.PostgresTestDatabase;
+import ru.practicum.shareit.ShareItApp;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Перевод bookings на секции (partitions-postgresql.sql) на PostgreSQL: база создаётся приложением
+ * с выключенными секциями и заполняется, затем приложение дважды запускается с секциями.
+ * Без сервера PostgreSQL и Docker тест пропускается (PostgresTestDatabase).
+ */
+@EnabledIf("ru.practicum.shareit.PostgresTestDatabase#isAvailable")
+class BookingPartitionsMigrationTest {
+    private final PostgresTestDatabase database = PostgresTestDatabase.create();
+
+    private static final LocalDateTime START = LocalDateTime.of(2021, 1, 20, 12, 0);
+
+    @Test
+    void migrate() {
+        List<Map<String, Object>> bookings;
+        try (ConfigurableApplicationContext context = run(false)) {
+            JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+            assertEquals("r", relkind(jdbc));
+
+            jdbc.update("insert into users (name, email) values ('Owner', 'Owner@mail.tst'), " +
+                        "('Booker', 'Booker@mail.tst')");
+            jdbc.update("insert into items (name, description, is_available, owner_id) " +
+                        "select 'Дрель', 'Дрель', true, id from users where name = 'Owner'");
+            //Подтверждённое бронирование через границу месяца, ожидающее внутри него и два в других месяцах
+            insert(jdbc, START, START.plusDays(20), "APPROVED");
+            insert(jdbc, START.plusDays(1), START.plusDays(2), "WAITING");
+            insert(jdbc, START.plusMonths(3), START.plusMonths(3).plusDays(1), "APPROVED");
+            insert(jdbc, START.plusYears(1), START.plusYears(1).plusDays(1), "REJECTED");
+
+            //В несекционированной таблице пересечения запрещает ex_bookings_approved_overlap
+            assertThrows(DataIntegrityViolationException.class, () -> approveOverlapping(jdbc));
+            bookings = bookings(jdbc);
+        }
+
+        //Повторный запуск с секциями ничего не меняет
+        for (int i = 0; i < 2; i++) {
+            try (ConfigurableApplicationContext context = run(true)) {
+                JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+                assertEquals("p", relkind(jdbc));
+                assertEquals(bookings, bookings(jdbc));
+                assertEquals(List.of("bookings_2021_01", "bookings_2021_04", "bookings_2022_01"),
+                        jdbc.queryForList("select c.relname from pg_inherits i join pg_class c on c.oid = i.inhrelid " +
+                                          "where i.inhparent = 'bookings'::regclass and c.relname < 'bookings_2023' " +
+                                          "order by c.relname", String.class));
+                assertEquals(approved(bookings),
+                        jdbc.queryForObject("select count(*) from booking_periods", Long.class));
+
+                //Пересечения запрещает booking_periods, изменение откатывается вместе с бронированием
+                assertThrows(DataIntegrityViolationException.class, () -> approveOverlapping(jdbc));
+                assertEquals(bookings, bookings(jdbc));
+
+                //Идентификаторы новых бронирований продолжают идентификаторы перенесённых
+                if (i == 0) {
+                    context.getBean(BookingPartitions.class).ensure(List.of(START.plusYears(2)));
+                    insert(jdbc, START.plusYears(2), START.plusYears(2).plusDays(1), "APPROVED");
+                    assertTrue((Long) bookings(jdbc).get(bookings.size()).get("id") >
+                               (Long) bookings.get(bookings.size() - 1).get("id"));
+                    bookings = bookings(jdbc);
+                    assertEquals(approved(bookings),
+                            jdbc.queryForObject("select count(*) from booking_periods", Long.class));
+                }
+            }
+        }
+    }
+
+    private ConfigurableApplicationContext run(boolean partitions) {
+        return new SpringApplicationBuilder(ShareItApp.class)
+                .web(WebApplicationType.NONE)
+                .run(database.args("--shareit.postgres.extensions.enabled=true",
+                                   "--shareit.booking.partitions.enabled=" + partitions));
+    }
+
+    private static String relkind(JdbcTemplate jdbc) {
+        return jdbc.queryForObject("select relkind::text from pg_class where oid = 'bookings'::regclass", String.class);
+    }
+
+    private static void insert(JdbcTemplate jdbc, LocalDateTime start, LocalDateTime end, String status) {
+        jdbc.update("insert into bookings (start_date, end_date, item_id, booker_id, status, owner_id) " +
+                    "select ?, ?, i.id, u.id, ?, i.owner_id from items i, users u where u.name = 'Booker'",
+                start, end, status);
+    }
+
+    private static void approveOverlapping(JdbcTemplate jdbc) {
+        jdbc.update("update bookings set status = 'APPROVED' where status = 'WAITING'");
+    }
+
+    private static long approved(List<Map<String, Object>> bookings) {
+        return bookings.stream().filter(booking -> "APPROVED".equals(booking.get("status"))).count();
+    }
+
+    private static List<Map<String, Object>> bookings(JdbcTemplate jdbc) {
+        return jdbc.queryForList("select id, start_date, end_date, item_id, booker_id, status, owner_id " +
+                                 "from bookings order by id");
+    }
+}
@@ -0,0 +1,87 @@
+package ru.practicum.shareit.booking.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.shareit.db.PostgresExtensions;
+import ru.practicum.shareit.errorHandle.exception.ValidationException;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.mock;
+
+class BookingPartitionsTest {
+    private final Clock clock = Clock.fixed(LocalDateTime.of(2030, 1, 15, 12, 0).toInstant(ZoneOffset.UTC),
+                                            ZoneOffset.UTC);
+
+    @Test
+    void ensure() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        BookingPartitions partitions = new BookingPartitions(true, 12, 0, jdbcTemplate, null, clock);
+
+        //Секция создаётся один раз на месяц, пустые даты пропускаются
+        partitions.ensure(Arrays.asList(LocalDateTime.of(2030, 3, 1, 0, 0),
+                                        LocalDateTime.of(2030, 3, 31, 23, 0),
+                                        null));
+        partitions.ensure(List.of(LocalDateTime.of(2030, 3, 10, 0, 0)));
+
+        //Месяцы дальше months-ahead пропускаются, бронирования в них отклоняются
+        partitions.ensure(List.of(LocalDateTime.of(2031, 2, 1, 0, 0)));
+        partitions.checkStart(LocalDateTime.of(2031, 1, 31, 23, 0));
+        assertThrows(ValidationException.class, () -> partitions.checkStart(LocalDateTime.of(2031, 2, 1, 0, 0)));
+
+        Mockito.verify(jdbcTemplate, Mockito.times(1))
+                .queryForObject("select create_bookings_partition(?)", String.class, LocalDateTime.of(2030, 3, 1, 0, 0));
+        Mockito.verifyNoMoreInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void maintain() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        Mockito.when(jdbcTemplate.queryForList(eq("select detach_bookings_partitions(?)"), eq(String.class), any()))
+                .thenReturn(List.of("bookings_2029_06"));
+        BookingPartitions partitions = new BookingPartitions(true, 2, 6, jdbcTemplate, null, clock);
+
+        //Секции текущего и двух следующих месяцев, отсоединение секций старше шести месяцев
+        partitions.maintain();
+        Mockito.verify(jdbcTemplate, Mockito.times(3))
+                .queryForObject(eq("select create_bookings_partition(?)"), eq(String.class), any());
+        Mockito.verify(jdbcTemplate)
+                .queryForList("select detach_bookings_partitions(?)", String.class, LocalDateTime.of(2029, 7, 1, 0, 0));
+
+        //В выключенном режиме (H2) база не запрашивается
+        JdbcTemplate unused = mock(JdbcTemplate.class);
+        BookingPartitions disabled = new BookingPartitions(false, 12, 6, unused, null, clock);
+        disabled.init();
+        disabled.ensure(List.of(LocalDateTime.now()));
+        disabled.checkStart(LocalDateTime.of(2040, 1, 1, 0, 0));
+        disabled.maintain();
+        assertEquals(List.of(), disabled.detachBefore(YearMonth.of(2030, 1)));
+        Mockito.verifyNoInteractions(unused);
+    }
+
+    @Test
+    void initWithoutPrerequisites() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        PostgresExtensions extensions = mock(PostgresExtensions.class);
+        BookingPartitions partitions = new BookingPartitions(true, 12, 0, jdbcTemplate, extensions, clock);
+
+        //Без btree_gist таблица не переводится на секции
+        assertThrows(IllegalStateException.class, partitions::init);
+
+        //Пересекающиеся подтверждённые бронирования перечисляются, таблица не меняется
+        Mockito.when(extensions.isInstalled(PostgresExtensions.BTREE_GIST)).thenReturn(true);
+        Mockito.when(extensions.isPlainBookings()).thenReturn(true);
+        Mockito.when(extensions.findApprovedOverlaps()).thenReturn(List.of(1L, 2L));
+        IllegalStateException e = assertThrows(IllegalStateException.class, partitions::init);
+        assertTrue(e.getMessage().contains("[1, 2]"));
+        Mockito.verifyNoInteractions(jdbcTemplate);
+    }
+}
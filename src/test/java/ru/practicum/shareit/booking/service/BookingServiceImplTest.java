@@ -1,27 +1,50 @@
 package ru.practicum.shareit.booking.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
 import ru.practicum.shareit.booking.Booking;
+import ru.practicum.shareit.booking.BookingCursor;
 import ru.practicum.shareit.booking.BookingMapper;
+import ru.practicum.shareit.booking.BookingPeriod;
 import ru.practicum.shareit.booking.BookingRepository;
+import ru.practicum.shareit.booking.BookingSearchStatus;
 import ru.practicum.shareit.booking.BookingStatus;
+import ru.practicum.shareit.booking.OwnerInboxRepository;
+import ru.practicum.shareit.booking.dto.BookingBatchResultDto;
 import ru.practicum.shareit.booking.dto.BookingDto;
+import ru.practicum.shareit.booking.dto.BookingHoldDto;
 import ru.practicum.shareit.booking.dto.BookingInDto;
+import ru.practicum.shareit.errorHandle.exception.EntityAlreadyExistException;
 import ru.practicum.shareit.errorHandle.exception.EntityNotFoundException;
 import ru.practicum.shareit.errorHandle.exception.ValidationException;
 import ru.practicum.shareit.item.dto.ItemDto;
 import ru.practicum.shareit.item.model.Item;
 import ru.practicum.shareit.item.service.ItemService;
+import ru.practicum.shareit.outbox.OutboxEventType;
+import ru.practicum.shareit.outbox.OutboxRepository;
+import ru.practicum.shareit.paging.ApproximateCounter;
 import ru.practicum.shareit.user.User;
 import ru.practicum.shareit.user.dto.UserDto;
 import ru.practicum.shareit.user.service.UserService;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -32,6 +55,10 @@ class BookingServiceImplTest {
     BookingService bookingService;
     ItemService itemService;
     UserService userService;
+    OutboxRepository outboxRepository;
+    OwnerInboxRepository inboxRepository;
+    BookingExporter exporter;
+    BookingHolds holds;
 
     private final User userOne = new User(1L, "UserOne", "UserOne@mail.tst");
     private final User userTwo = new User(2L, "UserTwo", "UserTwo@mail.tst");
@@ -93,6 +120,10 @@ class BookingServiceImplTest {
         repository = mock(BookingRepository.class);
         userService = mock(UserService.class);
         itemService = mock(ItemService.class);
+        outboxRepository = mock(OutboxRepository.class);
+        inboxRepository = mock(OwnerInboxRepository.class);
+        exporter = mock(BookingExporter.class);
+        holds = new BookingHolds(Duration.ofMinutes(5), 5, Duration.ofMinutes(15));
 
         Mockito.when(repository.saveAndFlush(any())).then(invocation -> invocation.getArgument(0));
         Mockito.when(repository.findById(1L)).thenReturn(Optional.of(booking));
@@ -103,7 +134,21 @@ class BookingServiceImplTest {
         Mockito.when(itemService.getItem(1L)).thenReturn(item);
         Mockito.when(itemService.getItem(2L)).thenReturn(itemTwo);
 
-        bookingService = new BookingServiceImpl(repository, itemService, userService);
+        bookingService = new BookingServiceImpl(repository,
+                itemService,
+                userService,
+                new BookingIntervalIndex(repository, Duration.ofMinutes(5)),
+                new BookingAvailability(repository, Duration.ofSeconds(60)),
+                holds,
+                new BookerEligibility(1024, Duration.ofMinutes(5)),
+                new ApproximateCounter(Duration.ofSeconds(30)),
+                new BookingStateCounter(true, Duration.ofMinutes(5)),
+                new BookingItemLocks("jvm", null, null, new SimpleMeterRegistry()),
+                outboxRepository,
+                inboxRepository,
+                new BookingPartitions(false, 12, 0, null, null),
+                exporter,
+                false);
     }
 
     @Test
@@ -140,6 +185,28 @@ class BookingServiceImplTest {
         bookingInDto.setStart(startBooking);
         bookingInDto.setEnd(endBooking);
         assertEquals(bookingDto, bookingService.add(bookingInDto, 2L));
+
+        //Событие о новом бронировании записывается только для сохранённого бронирования
+        Mockito.verify(outboxRepository, Mockito.times(1))
+                .save(argThat(event -> event.getType() == OutboxEventType.BOOKING_CREATED &&
+                                       event.getOwnerId() == 1L &&
+                                       event.getBookerId() == 2L));
+        //Новое бронирование попадает в список ожидающих подтверждения владельцем
+        Mockito.verify(inboxRepository, Mockito.times(1))
+                .save(argThat(entry -> entry.getOwnerId() == 1L && entry.getStart().equals(startBooking)));
+    }
+
+    @Test
+    void addLongBooking() {
+        LocalDateTime startBooking = LocalDateTime.now().plusHours(2);
+        BookingInDto bookingInDto = BookingInDto.builder()
+                .itemId(1L)
+                .start(startBooking)
+                .end(startBooking.plusDays(400))
+                .build();
+
+        //Длительность бронирования не ограничена
+        assertEquals(startBooking.plusDays(400), bookingService.add(bookingInDto, 2L).getEnd());
     }
 
     @Test
@@ -170,6 +237,275 @@ class BookingServiceImplTest {
 
         bookingDto.setStatus("REJECTED");
         assertEquals(bookingDto, bookingService.updateStatus(1L, 1L, false));
+
+        Mockito.verify(outboxRepository).save(argThat(event -> event.getType() == OutboxEventType.BOOKING_APPROVED));
+        Mockito.verify(outboxRepository).save(argThat(event -> event.getType() == OutboxEventType.BOOKING_REJECTED));
+        //Рассмотренное бронирование удаляется из списка ожидающих
+        Mockito.verify(inboxRepository, Mockito.times(2)).deleteAllByBookingIdIn(List.of(1L));
+    }
+
+    @Test
+    void hold() {
+        User userThree = new User(3L, "UserThree", "UserThree@mail.tst");
+        Mockito.when(userService.getUser(3L)).thenReturn(userThree);
+        BookingInDto bookingInDto = BookingInDto.builder().itemId(1L).start(startBooking).end(endBooking).build();
+
+        //Удержание проходит те же проверки, что и бронирование
+        assertThrows(EntityNotFoundException.class, () -> bookingService.hold(bookingInDto, 1L));
+
+        BookingHoldDto hold = bookingService.hold(bookingInDto, 2L);
+        assertEquals(1L, hold.getItemId());
+
+        //Конкурирующее удержание отклоняется без обращения к вещам и пользователям
+        Mockito.clearInvocations(itemService, userService);
+        assertThrows(EntityAlreadyExistException.class, () -> bookingService.hold(bookingInDto, 3L));
+        Mockito.verifyNoInteractions(itemService, userService);
+
+        //Бронирование удерживаемого периода другим пользователем отклоняется
+        assertThrows(ValidationException.class, () -> bookingService.add(bookingInDto, 3L));
+
+        //Бронирование по токену снимает удержание
+        bookingInDto.setHoldToken(hold.getToken());
+        assertEquals(BookingStatus.WAITING.name(), bookingService.add(bookingInDto, 2L).getStatus());
+        assertThrows(EntityNotFoundException.class, () -> bookingService.releaseHold(hold.getToken(), 2L));
+        assertNotNull(bookingService.hold(bookingInDto, 3L));
+    }
+
+    @Test
+    void addAll() {
+        Mockito.when(itemService.getItems(any())).thenReturn(Map.of(1L, item, 2L, itemTwo));
+        Mockito.when(repository.saveAll(any())).then(invocation -> invocation.getArgument(0));
+
+        BookingInDto correct = BookingInDto.builder().itemId(1L).start(startBooking).end(endBooking).build();
+        BookingInDto unavailable = BookingInDto.builder().itemId(2L).start(startBooking).end(endBooking).build();
+        BookingInDto unknown = BookingInDto.builder().itemId(99L).start(startBooking).end(endBooking).build();
+
+        //Пустой пакет должен вызывать исключение
+        assertThrows(ValidationException.class, () -> bookingService.addAll(List.of(), 2L, true));
+
+        //Пустой элемент пакета отклоняет пакет в любом режиме до загрузки вещей
+        assertThrows(ValidationException.class,
+                () -> bookingService.addAll(Arrays.asList(correct, null), 2L, false));
+
+        //В атомарном режиме ошибка в одном бронировании отклоняет весь пакет
+        assertThrows(ValidationException.class,
+                () -> bookingService.addAll(List.of(correct, unavailable), 2L, true));
+        Mockito.verify(repository, Mockito.never()).saveAll(any());
+
+        //Иначе сохраняются корректные бронирования, для остальных возвращается причина отказа
+        List<BookingBatchResultDto> results = bookingService.addAll(List.of(correct, unavailable, unknown), 2L, false);
+        assertEquals(3, results.size());
+        assertEquals(BookingStatus.WAITING.name(), results.get(0).getBooking().getStatus());
+        assertNull(results.get(0).getError());
+        assertNull(results.get(1).getBooking());
+        assertNotNull(results.get(1).getError());
+        assertEquals(2, results.get(2).getIndex());
+        assertNotNull(results.get(2).getError());
+
+        //Вещи, пользователь и интервалы загружаются по одному разу на пакет
+        Mockito.verify(itemService, Mockito.never()).getItem(any());
+        Mockito.verify(repository, Mockito.times(1)).findPeriodsByItems(any(), eq(BookingStatus.APPROVED), any());
+        Mockito.verify(repository, Mockito.never()).findPeriodsEndingFrom(anyLong(), any(), any());
+    }
+
+    @Test
+    void addWithPartitions() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        Mockito.when(itemService.getItems(any())).thenReturn(Map.of(1L, item, 2L, itemTwo));
+        Mockito.when(repository.saveAll(any())).then(invocation -> invocation.getArgument(0));
+        BookingService partitionedService = new BookingServiceImpl(repository,
+                itemService,
+                userService,
+                new BookingIntervalIndex(repository, Duration.ofMinutes(5)),
+                new BookingAvailability(repository, Duration.ofSeconds(60)),
+                holds,
+                new BookerEligibility(1024, Duration.ofMinutes(5)),
+                new ApproximateCounter(Duration.ofSeconds(30)),
+                new BookingStateCounter(true, Duration.ofMinutes(5)),
+                new BookingItemLocks("jvm", null, null, new SimpleMeterRegistry()),
+                outboxRepository,
+                inboxRepository,
+                new BookingPartitions(true, 1, 0, jdbcTemplate, null),
+                exporter,
+                false);
+        BookingInDto correct = BookingInDto.builder().itemId(1L).start(startBooking).end(endBooking).build();
+        BookingInDto reversed = BookingInDto.builder().itemId(1L).start(endBooking).end(startBooking).build();
+        BookingInDto unavailable = BookingInDto.builder().itemId(2L).start(startBooking.plusYears(3))
+                .end(endBooking.plusYears(3)).build();
+        BookingInDto distant = BookingInDto.builder().itemId(1L).start(startBooking.plusMonths(3))
+                .end(endBooking.plusMonths(3)).build();
+
+        //Секции не создаются для отклонённых бронирований и месяцев дальше months-ahead
+        assertThrows(ValidationException.class, () -> partitionedService.add(reversed, 2L));
+        assertThrows(ValidationException.class, () -> partitionedService.add(distant, 2L));
+        Mockito.verifyNoInteractions(jdbcTemplate);
+
+        //В пакете секция создаётся только для принятого бронирования
+        List<BookingBatchResultDto> results = partitionedService.addAll(List.of(correct, reversed, unavailable,
+                                                                                distant), 2L, false);
+        assertNull(results.get(0).getError());
+        assertNotNull(results.get(3).getError());
+        Mockito.verify(jdbcTemplate).queryForObject("select create_bookings_partition(?)",
+                String.class,
+                startBooking.toLocalDate().withDayOfMonth(1).atStartOfDay());
+        Mockito.verifyNoMoreInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void updateStatuses() {
+        Booking second = new Booking(2L,
+                endBooking.plusHours(1),
+                endBooking.plusHours(2),
+                item,
+                userTwo,
+                BookingStatus.WAITING);
+        Booking approvedSecond = new Booking(2L,
+                second.getStart(),
+                second.getEnd(),
+                item,
+                userTwo,
+                BookingStatus.APPROVED);
+        Booking approvedFirst = new Booking(1L, startBooking, endBooking, item, userTwo, BookingStatus.APPROVED);
+        Mockito.when(repository.findAllByIdIn(any())).thenReturn(List.of(booking, second));
+
+        //Пустой список и чужие бронирования должны вызывать исключение
+        assertThrows(ValidationException.class, () -> bookingService.updateStatuses(List.of(), 1L, true));
+        assertThrows(EntityNotFoundException.class, () -> bookingService.updateStatuses(List.of(1L, 99L), 1L, true));
+        assertThrows(EntityNotFoundException.class, () -> bookingService.updateStatuses(List.of(1L, 2L), 2L, true));
+
+        Mockito.when(repository.findAllByIdIn(any()))
+                .thenReturn(List.of(booking, second))
+                .thenReturn(List.of(approvedFirst, approvedSecond));
+
+        assertEquals(List.of(1L, 2L), bookingService.updateStatuses(List.of(1L, 2L, 2L), 1L, true).stream()
+                .map(BookingDto::getId)
+                .collect(Collectors.toList()));
+        Mockito.verify(repository).updateOwnerStatus(Set.of(1L, 2L), 1L, BookingStatus.APPROVED);
+        Mockito.verify(repository, Mockito.never()).saveAndFlush(any());
+
+        //Подтверждённые бронирования попадают в индекс интервалов
+        assertThrows(ValidationException.class, () -> bookingService.add(BookingInDto.builder()
+                .itemId(1L)
+                .start(startBooking.plusHours(1))
+                .end(startBooking.plusHours(2))
+                .build(), 2L));
+    }
+
+    @Test
+    void updateStatusesConflict() {
+        Booking overlapping = new Booking(2L,
+                startBooking.plusHours(1),
+                endBooking.plusHours(1),
+                item,
+                userTwo,
+                BookingStatus.WAITING);
+        Mockito.when(repository.findAllByIdIn(any())).thenReturn(List.of(booking, overlapping));
+
+        //Подтверждаемые бронирования пересекаются друг с другом
+        assertThrows(ValidationException.class, () -> bookingService.updateStatuses(List.of(1L, 2L), 1L, true));
+
+        //Ошибка ограничения в базе также должна вызывать исключение
+        Mockito.when(repository.updateOwnerStatus(any(), any(), any()))
+                .thenThrow(new DataIntegrityViolationException("overlap"));
+        assertThrows(ValidationException.class, () -> bookingService.updateStatuses(List.of(1L, 2L), 1L, false));
+    }
+
+    @Test
+    void updateStatusConflict() {
+        Booking approved = new Booking(2L,
+                startBooking.minusHours(1),
+                startBooking.plusHours(1),
+                item,
+                userTwo,
+                BookingStatus.APPROVED);
+        Mockito.when(repository.findPeriodsEndingFrom(eq(1L), eq(BookingStatus.APPROVED), any()))
+                .thenReturn(List.of(toPeriod(approved)));
+
+        //Подтверждение бронирования, пересекающегося с подтверждённым, должно вызывать исключение
+        assertThrows(ValidationException.class,
+                () -> bookingService.updateStatus(1L, 1L, true));
+
+        //Нарушение ограничения в базе также должно вызывать исключение
+        Mockito.when(repository.saveAndFlush(any())).thenThrow(new DataIntegrityViolationException("overlap"));
+        BookingService rangeService = new BookingServiceImpl(repository,
+                itemService,
+                userService,
+                new BookingIntervalIndex(repository, Duration.ofMinutes(5)),
+                new BookingAvailability(repository, Duration.ofSeconds(60)),
+                holds,
+                new BookerEligibility(1024, Duration.ofMinutes(5)),
+                new ApproximateCounter(Duration.ofSeconds(30)),
+                new BookingStateCounter(true, Duration.ofMinutes(5)),
+                new BookingItemLocks("none", null, null, new SimpleMeterRegistry()),
+                outboxRepository,
+                inboxRepository,
+                new BookingPartitions(false, 12, 0, null, null),
+                exporter,
+                true);
+        assertThrows(ValidationException.class,
+                () -> rangeService.updateStatus(1L, 1L, true));
+    }
+
+    @Test
+    void updateStatusRollback() {
+        BookingService transactionalService = new BookingServiceImpl(repository,
+                itemService,
+                userService,
+                new BookingIntervalIndex(repository, Duration.ofMinutes(5)),
+                new BookingAvailability(repository, Duration.ofSeconds(60)),
+                holds,
+                new BookerEligibility(1024, Duration.ofMinutes(5)),
+                new ApproximateCounter(Duration.ofSeconds(30)),
+                new BookingStateCounter(true, Duration.ofMinutes(5)),
+                new BookingItemLocks("jvm", null, new NoOpTransactionManager(), new SimpleMeterRegistry()),
+                outboxRepository,
+                inboxRepository,
+                new BookingPartitions(false, 12, 0, null, null),
+                exporter,
+                false);
+        BookingInDto overlapping = BookingInDto.builder()
+                .itemId(1L)
+                .start(startBooking.plusHours(1))
+                .end(startBooking.plusHours(2))
+                .build();
+
+        //При откате транзакции подтверждения интервал в индекс не попадает
+        Mockito.when(outboxRepository.save(any())).thenThrow(new IllegalStateException("outbox is down"));
+        assertThrows(IllegalStateException.class, () -> transactionalService.updateStatus(1L, 1L, true));
+        Mockito.reset(outboxRepository);
+        assertEquals(BookingStatus.WAITING.name(), transactionalService.add(overlapping, 2L).getStatus());
+
+        //После фиксации подтверждённый интервал занимает вещь
+        booking.setStatus(BookingStatus.WAITING);
+        transactionalService.updateStatus(1L, 1L, true);
+        assertThrows(ValidationException.class, () -> transactionalService.add(overlapping, 2L));
+    }
+
+    @Test
+    void overlapsForSeveralInstances() {
+        BookingService sharedService = new BookingServiceImpl(repository,
+                itemService,
+                userService,
+                new BookingIntervalIndex(repository, Duration.ofMinutes(5)),
+                new BookingAvailability(repository, Duration.ofSeconds(60)),
+                holds,
+                new BookerEligibility(1024, Duration.ofMinutes(5)),
+                new ApproximateCounter(Duration.ofSeconds(30)),
+                new BookingStateCounter(true, Duration.ofMinutes(5)),
+                new BookingItemLocks("none", null, null, new SimpleMeterRegistry()),
+                outboxRepository,
+                inboxRepository,
+                new BookingPartitions(false, 12, 0, null, null),
+                exporter,
+                false);
+        BookingInDto bookingInDto = BookingInDto.builder().itemId(1L).start(startBooking).end(endBooking).build();
+
+        //Без блокировок jvm пересечения проверяются запросом к базе по вещи и периоду, интервалы вещи не загружаются
+        sharedService.add(bookingInDto, 2L);
+        Mockito.when(repository.isBooked(1L, startBooking, endBooking)).thenReturn(1L);
+        assertThrows(ValidationException.class, () -> sharedService.add(bookingInDto, 2L));
+        Mockito.verify(repository, Mockito.times(2)).isBooked(1L, startBooking, endBooking);
+        Mockito.verify(repository, Mockito.never()).findPeriodsEndingFrom(any(), any(), any());
     }
 
     @Test
@@ -192,71 +528,195 @@ class BookingServiceImplTest {
 
     @Test
     void findUserBookings() {
-        Mockito.when(repository.findAllByBooker_IdOrderByStartDesc(any(), any()))
-                .thenReturn(new PageImpl<>(List.of(booking)));
-        Mockito.when(repository.findAllByBooker_IdAndStartBeforeAndStatusOrderByStartDesc(any(), any(), any(), any()))
-                .thenReturn(new PageImpl<>(List.of(booking)));
-        Mockito.when(repository.findAllByBooker_IdAndStartAfterOrderByStartDesc(any(), any(), any()))
-                .thenReturn(new PageImpl<>(List.of(booking)));
-        Mockito.when(repository.findAllByBooker_IdAndStartBeforeAndEndAfterOrderByStartDesc(any(), any(), any(), any()))
-                .thenReturn(new PageImpl<>(List.of(booking)));
-        Mockito.when(repository.findAllByBooker_IdAndStatusOrderByStartDesc(any(), any(), any()))
+        Mockito.when(repository.findBookings(any(), any()))
                 .thenReturn(new PageImpl<>(List.of(booking)));
 
         //Некорректные параметры порции данных должны вызывать исключение
         assertThrows(IllegalArgumentException.class,
-                () -> bookingService.findUserBookings("ALL", 1L, -1, 1));
+                () -> bookingService.findUserBookings("ALL", 1L, -1, 1, null, null));
 
         assertThrows(IllegalArgumentException.class,
-                () -> bookingService.findUserBookings("ALL", 1L, 0, -1));
+                () -> bookingService.findUserBookings("ALL", 1L, 0, -1, null, null));
 
 
         //Некорректный статус должен вызывать исключение
         assertThrows(ValidationException.class,
-                () -> bookingService.findUserBookings("BAD_STATUS", 1L, 0, 1));
+                () -> bookingService.findUserBookings("BAD_STATUS", 1L, 0, 1, null, null));
 
-        assertEquals(List.of(bookingDto), bookingService.findUserBookings("ALL", 1L, 0, 1));
-        assertEquals(List.of(bookingDto), bookingService.findUserBookings("PAST", 1L, 0, 1));
-        assertEquals(List.of(bookingDto), bookingService.findUserBookings("FUTURE", 1L, 0, 1));
-        assertEquals(List.of(bookingDto), bookingService.findUserBookings("CURRENT", 1L, 0, 1));
-        assertEquals(List.of(bookingDto), bookingService.findUserBookings("WAITING", 1L, 0, 1));
+        assertEquals(List.of(bookingDto), bookingService.findUserBookings("ALL", 1L, 0, 1, null, null).getContent());
+        assertEquals(List.of(bookingDto), bookingService.findUserBookings("PAST", 1L, 0, 1, null, null).getContent());
+        assertEquals(List.of(bookingDto), bookingService.findUserBookings("FUTURE", 1L, 0, 1, null, null).getContent());
+        assertEquals(List.of(bookingDto), bookingService.findUserBookings("CURRENT", 1L, 0, 1, null, null).getContent());
+        assertEquals(List.of(bookingDto), bookingService.findUserBookings("WAITING", 1L, 0, 1, null, null).getContent());
     }
 
     @Test
     void findOwnerBookings() {
-        Mockito.when(repository.findAllByItem_Owner_IdOrderByStartDesc(any(), any()))
-                .thenReturn(new PageImpl<>(List.of(booking)));
-        Mockito.when(repository.findAllByItem_Owner_IdAndStartBeforeAndStatusOrderByStartDesc(any(), any(), any(), any()))
-                .thenReturn(new PageImpl<>(List.of(booking)));
-        Mockito.when(repository.findAllByItem_Owner_IdAndStartAfterOrderByStartDesc(any(), any(), any()))
-                .thenReturn(new PageImpl<>(List.of(booking)));
-        Mockito.when(repository.findAllByItem_Owner_IdAndStartBeforeAndEndAfterOrderByStartDesc(any(), any(), any(), any()))
-                .thenReturn(new PageImpl<>(List.of(booking)));
-        Mockito.when(repository.findAllByItem_Owner_IdAndStatusOrderByStartDesc(any(), any(), any()))
+        Mockito.when(repository.findBookings(any(), any()))
                 .thenReturn(new PageImpl<>(List.of(booking)));
 
         //Некорректные параметры порции данных должны вызывать исключение
         assertThrows(IllegalArgumentException.class,
-                () -> bookingService.findOwnerBookings("ALL", 1L, -1, 1));
+                () -> bookingService.findOwnerBookings("ALL", 1L, -1, 1, null, null));
 
         assertThrows(IllegalArgumentException.class,
-                () -> bookingService.findOwnerBookings("ALL", 1L, 0, -1));
+                () -> bookingService.findOwnerBookings("ALL", 1L, 0, -1, null, null));
 
         //Некорректный статус должен вызывать исключение
         assertThrows(ValidationException.class,
-                () -> bookingService.findOwnerBookings("BAD_STATUS", 1L, 0, 1));
+                () -> bookingService.findOwnerBookings("BAD_STATUS", 1L, 0, 1, null, null));
+
+        assertEquals(List.of(bookingDto), bookingService.findOwnerBookings("ALL", 1L, 0, 1, null, null).getContent());
+        assertEquals(List.of(bookingDto), bookingService.findOwnerBookings("PAST", 1L, 0, 1, null, null).getContent());
+        assertEquals(List.of(bookingDto), bookingService.findOwnerBookings("FUTURE", 1L, 0, 1, null, null).getContent());
+        assertEquals(List.of(bookingDto), bookingService.findOwnerBookings("CURRENT", 1L, 0, 1, null, null).getContent());
+        assertEquals(List.of(bookingDto), bookingService.findOwnerBookings("WAITING", 1L, 0, 1, null, null).getContent());
+
+        //Период начала передаётся в отбор, конец периода должен быть позже начала
+        LocalDateTime windowStart = LocalDateTime.now();
+        assertEquals(List.of(bookingDto),
+                bookingService.findOwnerBookings("ALL", 1L, 0, 1, windowStart, windowStart.plusDays(30)).getContent());
+        Mockito.verify(repository).findBookings(argThat(query -> windowStart.equals(query.getWindowStart()) &&
+                                                                 windowStart.plusDays(30).equals(query.getWindowEnd())),
+                any());
+        assertThrows(ValidationException.class,
+                () -> bookingService.findOwnerBookings("ALL", 1L, 0, 1, windowStart, windowStart));
 
-        assertEquals(List.of(bookingDto), bookingService.findOwnerBookings("ALL", 1L, 0, 1));
-        assertEquals(List.of(bookingDto), bookingService.findOwnerBookings("PAST", 1L, 0, 1));
-        assertEquals(List.of(bookingDto), bookingService.findOwnerBookings("FUTURE", 1L, 0, 1));
-        assertEquals(List.of(bookingDto), bookingService.findOwnerBookings("CURRENT", 1L, 0, 1));
-        assertEquals(List.of(bookingDto), bookingService.findOwnerBookings("WAITING", 1L, 0, 1));
+        //Все состояния выбираются одним методом репозитория, отбор передаётся в BookingQuery
+        Mockito.verify(repository).findBookings(argThat(query -> query.isByOwner() &&
+                                                                 query.getUserId() == 1L &&
+                                                                 query.getState() == BookingSearchStatus.CURRENT),
+                eq(PageRequest.of(0, 1)));
+    }
+
+    @Test
+    void findBookingsAfter() {
+        Mockito.when(repository.findPageAfter(any(), any(), anyInt()))
+                .thenReturn(List.of(booking));
+        String cursor = new BookingCursor(startBooking, 5L).encode();
+
+        //Некорректные параметры должны вызывать исключение
+        assertThrows(ValidationException.class,
+                () -> bookingService.findUserBookingsAfter("ALL", 1L, cursor, 0, null, null));
+        assertThrows(ValidationException.class,
+                () -> bookingService.findUserBookingsAfter("BAD_STATUS", 1L, cursor, 1, null, null));
+        assertThrows(ValidationException.class,
+                () -> bookingService.findOwnerBookingsAfter("ALL", 1L, "bad", 1, null, null));
+
+        assertEquals(List.of(bookingDto), bookingService.findUserBookingsAfter("ALL", 1L, cursor, 1, null, null).getContent());
+        assertEquals(List.of(bookingDto), bookingService.findOwnerBookingsAfter("WAITING", 1L, null, 1, null, null).getContent());
+
+        Mockito.verify(repository).findPageAfter(argThat(query -> !query.isByOwner() &&
+                                                                  query.getUserId() == 1L &&
+                                                                  query.getState() == BookingSearchStatus.ALL),
+                eq(new BookingCursor(startBooking, 5L)),
+                eq(2));
+    }
+
+    @Test
+    void findOwnerInbox() {
+        Booking second = new Booking(2L, startBooking.minusHours(1), endBooking, item, userTwo, BookingStatus.WAITING);
+        List<Long> firstPage = List.of(2L, 1L);
+        List<Booking> loaded = List.of(booking, second);
+        Mockito.when(inboxRepository.findBookingIds(1L, PageRequest.of(0, 2))).thenReturn(firstPage);
+        Mockito.when(inboxRepository.findBookingIdsAfter(1L, startBooking, 5L, PageRequest.of(0, 2)))
+                .thenReturn(List.of(1L));
+        Mockito.when(repository.findAllByIdIn(any())).thenReturn(loaded);
+
+        //Некорректные параметры должны вызывать исключение
+        assertThrows(ValidationException.class, () -> bookingService.findOwnerInbox(1L, null, 0));
+        assertThrows(ValidationException.class, () -> bookingService.findOwnerInbox(1L, "bad", 1));
+
+        //Бронирования выдаются в порядке идентификаторов из owner_inbox, лишняя запись только сообщает о продолжении
+        Slice<BookingDto> page = bookingService.findOwnerInbox(1L, null, 1);
+        assertEquals(List.of(2L), page.map(BookingDto::getId).getContent());
+        assertTrue(page.hasNext());
+        Mockito.verify(repository).findAllByIdIn(List.of(2L));
+
+        page = bookingService.findOwnerInbox(1L, new BookingCursor(startBooking, 5L).encode(), 1);
+        assertEquals(List.of(bookingDto), page.getContent());
+        assertFalse(page.hasNext());
+    }
+
+    @Test
+    void findCurrentBookingsInRangeMode() {
+        Mockito.when(repository.findCurrentByBookerInRange(any(), any(), any()))
+                .thenReturn(new PageImpl<>(List.of(toPeriod(booking))));
+        Mockito.when(repository.findCurrentByOwnerInRange(any(), any(), any()))
+                .thenReturn(new PageImpl<>(List.of(toPeriod(booking))));
+        Mockito.when(repository.findAllByIdIn(List.of(booking.getId()))).thenReturn(List.of(booking));
+
+        BookingService rangeService = new BookingServiceImpl(repository,
+                itemService,
+                userService,
+                new BookingIntervalIndex(repository, Duration.ofMinutes(5)),
+                new BookingAvailability(repository, Duration.ofSeconds(60)),
+                holds,
+                new BookerEligibility(1024, Duration.ofMinutes(5)),
+                new ApproximateCounter(Duration.ofSeconds(30)),
+                new BookingStateCounter(true, Duration.ofMinutes(5)),
+                new BookingItemLocks("none", null, null, new SimpleMeterRegistry()),
+                outboxRepository,
+                inboxRepository,
+                new BookingPartitions(false, 12, 0, null, null),
+                exporter,
+                true);
+
+        assertEquals(List.of(bookingDto), rangeService.findUserBookings("CURRENT", 1L, 0, 1, null, null).getContent());
+        assertEquals(List.of(bookingDto), rangeService.findOwnerBookings("CURRENT", 1L, 0, 1, null, null).getContent());
     }
 
     @Test
     void checkBooker() {
-        Mockito.when(repository.existsByItem_IdAndBooker_IdAndStatusAndEndBefore(any(), any(), any(), any()))
-                .thenReturn(true);
+        Mockito.when(repository.findFirstEnd(1L, 1L, BookingStatus.APPROVED))
+                .thenReturn(LocalDateTime.now().minusDays(1));
         assertEquals(true, bookingService.checkBooker(1L, 1L));
+
+        //Завершённое бронирование закэшировано, повторная проверка не обращается к базе
+        assertEquals(true, bookingService.checkBooker(1L, 1L));
+        Mockito.verify(repository, Mockito.times(1)).findFirstEnd(1L, 1L, BookingStatus.APPROVED);
+
+        //Без подтверждённого бронирования отзыв запрещён
+        assertEquals(false, bookingService.checkBooker(2L, 1L));
+    }
+
+    private BookingPeriod toPeriod(Booking booking) {
+        return new BookingPeriod() {
+            public Long getId() {
+                return booking.getId();
+            }
+
+            public Long getItemId() {
+                return booking.getItem().getId();
+            }
+
+            public LocalDateTime getStart() {
+                return booking.getStart();
+            }
+
+            public LocalDateTime getEnd() {
+                return booking.getEnd();
+            }
+        };
+    }
+
+    //Менеджер транзакций без базы: фиксация и откат только вызывают синхронизации транзакции
+    private static class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
     }
 }
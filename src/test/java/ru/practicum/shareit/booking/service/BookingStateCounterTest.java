@@ -0,0 +1,106 @@
+package ru.practicum.shareit.booking.service;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.shareit.booking.BookingSearchStatus;
+import ru.practicum.shareit.booking.BookingStateCounts;
+import ru.practicum.shareit.booking.BookingStatus;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookingStateCounterTest {
+    private final LocalDateTime now = LocalDateTime.of(2030, 1, 10, 12, 0);
+
+    private final MutableClock clock = new MutableClock(now.toInstant(ZoneOffset.UTC));
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void incremental() {
+        BookingStateCounter counter = new BookingStateCounter(true, Duration.ofMinutes(5), clock);
+        Supplier<BookingStateCounts> loader = loader(now.plusDays(10));
+
+        assertEquals(1L, counter.counts(false, 2L, loader).get(BookingSearchStatus.WAITING));
+
+        //Новое бронирование и смена статуса учитываются без повторного запроса
+        counter.created(2L, 1L, now.plusDays(1));
+        counter.statusChanged(2L, 1L, now.plusDays(1), BookingStatus.WAITING, BookingStatus.REJECTED);
+        Map<BookingSearchStatus, Long> counts = counter.counts(false, 2L, loader);
+        assertEquals(2L, counts.get(BookingSearchStatus.ALL));
+        assertEquals(2L, counts.get(BookingSearchStatus.FUTURE));
+        assertEquals(1L, counts.get(BookingSearchStatus.WAITING));
+        assertEquals(1L, counts.get(BookingSearchStatus.REJECTED));
+        assertEquals(1, loads.get());
+
+        //Записи владельца не было, она загружается при первом запросе
+        counter.counts(true, 1L, loader);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void expiresOnNextChange() {
+        BookingStateCounter counter = new BookingStateCounter(true, Duration.ofMinutes(5), clock);
+        Supplier<BookingStateCounts> loader = loader(now.plusMinutes(10));
+
+        counter.counts(false, 2L, loader);
+        counter.created(2L, 1L, now.plusMinutes(1));
+
+        //Новое бронирование начинается раньше прежнего ближайшего изменения
+        clock.instant = clock.instant.plusSeconds(61);
+        counter.counts(false, 2L, loader);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void notCached() {
+        BookingStateCounter counter = new BookingStateCounter(false, Duration.ofMinutes(5), clock);
+        Supplier<BookingStateCounts> loader = loader(null);
+
+        counter.counts(false, 2L, loader);
+        counter.counts(false, 2L, loader);
+        assertEquals(2, loads.get());
+    }
+
+    //Одно будущее бронирование, ожидающее подтверждения
+    private Supplier<BookingStateCounts> loader(LocalDateTime nextChange) {
+        return () -> {
+            loads.incrementAndGet();
+            BookingStateCounts counts = new BookingStateCounts(nextChange);
+            counts.add(BookingSearchStatus.ALL, 1);
+            counts.add(BookingSearchStatus.FUTURE, 1);
+            counts.add(BookingSearchStatus.WAITING, 1);
+            return counts;
+        };
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
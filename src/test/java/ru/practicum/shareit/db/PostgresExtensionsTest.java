@@ -0,0 +1,104 @@
+package ru.practicum.shareit.db;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.shareit.PostgresTestDatabase;
+import ru.practicum.shareit.ShareItApp;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Установка расширений и ограничения ex_bookings_approved_overlap на PostgreSQL (extensions-postgresql.sql):
+ * пересекающиеся подтверждённые бронирования и отсутствие прав на расширения не останавливают запуск.
+ * Без сервера PostgreSQL и Docker тест пропускается (PostgresTestDatabase).
+ */
+@EnabledIf("ru.practicum.shareit.PostgresTestDatabase#isAvailable")
+class PostgresExtensionsTest {
+    private static final LocalDateTime START = LocalDateTime.of(2021, 1, 20, 12, 0);
+
+    @Test
+    void approvedOverlaps() {
+        PostgresTestDatabase database = PostgresTestDatabase.create();
+        try (ConfigurableApplicationContext context = run(database, false)) {
+            JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+            jdbc.update("insert into users (name, email) values ('Owner', 'Owner@mail.tst'), " +
+                        "('Booker', 'Booker@mail.tst')");
+            jdbc.update("insert into items (name, description, is_available, owner_id) " +
+                        "select 'Дрель', 'Дрель', true, id from users where name = 'Owner'");
+            insert(jdbc, START, START.plusDays(2), "APPROVED");
+            insert(jdbc, START.plusDays(1), START.plusDays(3), "APPROVED");
+            insert(jdbc, START.plusDays(10), START.plusDays(11), "APPROVED");
+        }
+
+        //Пересечения перечисляются, приложение запускается без ограничения
+        List<Long> ids;
+        try (ConfigurableApplicationContext context = run(database, true)) {
+            JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+            PostgresExtensions extensions = context.getBean(PostgresExtensions.class);
+            assertTrue(extensions.isInstalled(PostgresExtensions.BTREE_GIST));
+            assertTrue(extensions.isInstalled(PostgresExtensions.PG_TRGM));
+            assertFalse(hasConstraint(jdbc));
+            ids = jdbc.queryForList("select id from bookings where start_date < ? order by id",
+                    Long.class, START.plusDays(5));
+            assertEquals(ids, extensions.findApprovedOverlaps());
+            assertTrue(hasIndex(jdbc, "ix_bookings_item_period"));
+            assertTrue(hasIndex(jdbc, "ix_items_text_trgm"));
+
+            jdbc.update("update bookings set status = 'REJECTED' where id = ?", ids.get(1));
+        }
+
+        //После отмены пересечения ограничение добавляется при следующем запуске
+        try (ConfigurableApplicationContext context = run(database, true)) {
+            JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+            assertTrue(hasConstraint(jdbc));
+            assertEquals(List.of(), context.getBean(PostgresExtensions.class).findApprovedOverlaps());
+            assertThrows(DataIntegrityViolationException.class,
+                    () -> jdbc.update("update bookings set status = 'APPROVED' where id = ?", ids.get(1)));
+        }
+    }
+
+    @Test
+    void withoutPrivileges() {
+        //Пользователь без права CREATE на базу не может установить расширения, запуск продолжается без них
+        try (ConfigurableApplicationContext context = run(PostgresTestDatabase.create().withLimitedUser(), true)) {
+            JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+            PostgresExtensions extensions = context.getBean(PostgresExtensions.class);
+            assertFalse(extensions.isInstalled(PostgresExtensions.BTREE_GIST));
+            assertFalse(extensions.isInstalled(PostgresExtensions.PG_TRGM));
+            assertFalse(hasConstraint(jdbc));
+            assertFalse(hasIndex(jdbc, "ix_bookings_item_period"));
+            assertFalse(hasIndex(jdbc, "ix_items_text_trgm"));
+            assertTrue(hasIndex(jdbc, "ix_items_search"));
+        }
+    }
+
+    private static ConfigurableApplicationContext run(PostgresTestDatabase database, boolean extensions) {
+        return new SpringApplicationBuilder(ShareItApp.class)
+                .web(WebApplicationType.NONE)
+                .run(database.args("--shareit.postgres.extensions.enabled=" + extensions));
+    }
+
+    private static void insert(JdbcTemplate jdbc, LocalDateTime start, LocalDateTime end, String status) {
+        jdbc.update("insert into bookings (start_date, end_date, item_id, booker_id, status, owner_id) " +
+                    "select ?, ?, i.id, u.id, ?, i.owner_id from items i, users u where u.name = 'Booker'",
+                start, end, status);
+    }
+
+    private static boolean hasConstraint(JdbcTemplate jdbc) {
+        return Boolean.TRUE.equals(jdbc.queryForObject(
+                "select exists (select 1 from pg_constraint where conname = 'ex_bookings_approved_overlap')",
+                Boolean.class));
+    }
+
+    private static boolean hasIndex(JdbcTemplate jdbc, String name) {
+        return jdbc.queryForObject("select to_regclass(?) is not null", Boolean.class, name);
+    }
+}
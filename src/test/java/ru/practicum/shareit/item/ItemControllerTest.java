@@ -1,21 +1,27 @@
 package ru.practicum.shareit.item;
 
+import ru.practicum.shareit.booking.dto.AvailabilitySlotDto;
+import ru.practicum.shareit.booking.service.BookingService;
 import ru.practicum.shareit.item.dto.CommentDto;
 import ru.practicum.shareit.item.dto.ItemDto;
 import ru.practicum.shareit.item.service.CommentService;
 import ru.practicum.shareit.item.service.ItemService;
+import ru.practicum.shareit.paging.SliceResponse;
 import ru.practicum.shareit.user.dto.UserDto;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.List;
 
 import org.mockito.Mockito;
@@ -41,6 +47,9 @@ class ItemControllerTest {
     @MockBean
     private CommentService commentService;
 
+    @MockBean
+    private BookingService bookingService;
+
     private final UserDto userDtoOne = UserDto.builder()
             .id(1L)
             .name("UserOne")
@@ -119,20 +128,36 @@ class ItemControllerTest {
 
     @Test
     void getAllUserItems() throws Exception {
-        Mockito.when(itemService.getAllUserItems(any(), any(), any())).thenReturn(List.of(itemDto, itemDtoTwo));
+        Mockito.when(itemService.getAllUserItems(any(), any(), any()))
+                .thenReturn(new SliceImpl<>(List.of(itemDto, itemDtoTwo), PageRequest.of(0, 2), true));
+        Mockito.when(itemService.countUserItems(1L)).thenReturn(5L);
+
+        mockMvc.perform(get("/items")
+                        .header("X-Sharer-User-Id", "1")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string(SliceResponse.HAS_MORE_HEADER, "true"))
+                .andExpect(header().doesNotExist(SliceResponse.TOTAL_COUNT_HEADER))
+                .andExpect(content().json(mapper.writeValueAsString(List.of(itemDto, itemDtoTwo))));
 
+        //Общее количество передаётся только по запросу
         mockMvc.perform(get("/items")
                         .header("X-Sharer-User-Id", "1")
+                        .param("total", "true")
                         .characterEncoding(StandardCharsets.UTF_8)
                         .contentType(MediaType.APPLICATION_JSON)
                         .accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
+                .andExpect(header().string(SliceResponse.TOTAL_COUNT_HEADER, "5"))
                 .andExpect(content().json(mapper.writeValueAsString(List.of(itemDto, itemDtoTwo))));
     }
 
     @Test
     void searchItems() throws Exception {
-        Mockito.when(itemService.searchItems(any(), any(), any())).thenReturn(List.of(itemDto, itemDtoTwo));
+        Mockito.when(itemService.searchItems(any(), any(), any(), anyBoolean()))
+                .thenReturn(new SliceImpl<>(List.of(itemDto, itemDtoTwo)));
 
         mockMvc.perform(get("/items/search")
                         .param("text", "")
@@ -145,6 +170,34 @@ class ItemControllerTest {
                 .andExpect(content().json(mapper.writeValueAsString(List.of(itemDto, itemDtoTwo))));
     }
 
+    @Test
+    void searchItemsFuzzy() throws Exception {
+        Mockito.when(itemService.searchItems("hammmer", 0, 10, true))
+                .thenReturn(new SliceImpl<>(List.of(itemDto)));
+
+        mockMvc.perform(get("/items/search")
+                        .param("text", "hammmer")
+                        .param("fuzzy", "true")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(mapper.writeValueAsString(List.of(itemDto))));
+    }
+
+    @Test
+    void suggestNames() throws Exception {
+        Mockito.when(itemService.suggestNames("дре", 5))
+                .thenReturn(List.of("Дрель", "Аккумуляторная дрель"));
+
+        mockMvc.perform(get("/items/suggest")
+                        .param("prefix", "дре")
+                        .param("size", "5")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(mapper.writeValueAsString(List.of("Дрель", "Аккумуляторная дрель"))));
+    }
+
     @Test
     void deleteItem() throws Exception {
         mockMvc.perform(delete("/items/" + 1)
@@ -168,4 +221,24 @@ class ItemControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().json(mapper.writeValueAsString(commentDto)));
     }
+
+    @Test
+    void getAvailability() throws Exception {
+        LocalDateTime from = LocalDateTime.of(2030, 1, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2030, 1, 31, 0, 0);
+        List<AvailabilitySlotDto> slots = List.of(new AvailabilitySlotDto(from, from.plusDays(2)),
+                                                  new AvailabilitySlotDto(from.plusDays(5), to));
+        Mockito.when(bookingService.getAvailability(1L, from, to, true)).thenReturn(slots);
+
+        mockMvc.perform(get("/items/" + 1 + "/availability")
+                        .param("from", "2030-01-01T00:00:00")
+                        .param("to", "2030-01-31T00:00:00")
+                        .param("waiting", "true")
+                        .header("X-Sharer-User-Id", "1")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].end", is("2030-01-03T00:00:00")))
+                .andExpect(content().json(mapper.writeValueAsString(slots)));
+    }
 }
@@ -0,0 +1,77 @@
+package ru.practicum.shareit.item;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import ru.practicum.shareit.PostgresTestDatabase;
+import ru.practicum.shareit.db.PostgresExtensions;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.item.model.ItemSearchHit;
+import ru.practicum.shareit.user.User;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Нечёткий поиск вещей по триграммам pg_trgm на PostgreSQL.
+ * Без сервера PostgreSQL и Docker тест пропускается (PostgresTestDatabase).
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(PostgresExtensions.class)
+@EnabledIf("ru.practicum.shareit.PostgresTestDatabase#isAvailable")
+class ItemFuzzySearchTest {
+    @DynamicPropertySource
+    static void postgres(DynamicPropertyRegistry registry) {
+        PostgresTestDatabase.create().register(registry);
+    }
+
+    @Autowired
+    private TestEntityManager em;
+
+    @Autowired
+    private ItemRepository repository;
+
+    @Test
+    void searchFuzzy() {
+        User owner = new User(0L, "Owner", "Owner@mail.tst");
+        em.persist(owner);
+        Item hammer = em.persist(new Item(0L, "Hammer", "Steel claw hammer", true, owner, null));
+        em.persist(new Item(0L, "Drill", "Cordless drill", true, owner, null));
+        em.persist(new Item(0L, "Hammer drill", "Hidden", false, owner, null));
+        em.flush();
+
+        //Слово с опечаткой находит доступную вещь, недоступные и непохожие вещи не находятся
+        assertEquals(List.of(hammer.getId()), repository.searchFuzzy("hamer", PageRequest.of(0, 10))
+                .getContent()
+                .stream()
+                .map(ItemSearchHit::getId)
+                .collect(Collectors.toList()));
+        assertEquals(1L, repository.countSearchFuzzy("hamer"));
+        assertEquals(0L, repository.countSearchFuzzy("saw"));
+    }
+
+    @Test
+    void searchEscaped() {
+        User owner = new User(0L, "Owner", "Owner@mail.tst");
+        em.persist(owner);
+        Item underscore = em.persist(new Item(0L, "snake_case", "Cable", true, owner, null));
+        em.persist(new Item(0L, "snakeXcase", "Cable", true, owner, null));
+        em.flush();
+
+        //Экранирование шаблона LIKE работает и в PostgreSQL
+        assertEquals(List.of(underscore.getId()),
+                repository.search(ItemRepository.escapeLike("e_c"), PageRequest.of(0, 10))
+                        .map(Item::getId)
+                        .getContent());
+    }
+}
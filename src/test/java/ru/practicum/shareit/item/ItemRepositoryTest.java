@@ -1,5 +1,7 @@
 package ru.practicum.shareit.item;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
@@ -9,12 +11,18 @@ import org.springframework.test.annotation.DirtiesContext;
 import ru.practicum.shareit.booking.Booking;
 import ru.practicum.shareit.booking.BookingStatus;
 import ru.practicum.shareit.item.dto.ItemDto;
+import ru.practicum.shareit.item.model.Comment;
 import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.item.model.ItemBookingRef;
+import ru.practicum.shareit.requests.ItemRequest;
 import ru.practicum.shareit.user.User;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -27,6 +35,9 @@ class ItemRepositoryTest {
     @Autowired
     private ItemRepository repository;
 
+    @Autowired
+    private CommentRepository commentRepository;
+
     @Test
     void search() {
         User userOne = new User(0L, "UserOne", "UserOne@mail.tst");
@@ -63,78 +74,126 @@ class ItemRepositoryTest {
     }
 
     @Test
-    void findLastBooking() {
-        User userOne = new User(0L, "UserOne", "UserOne@mail.tst");
-        User userTwo = new User(0L, "UserTwo", "UserTwo@mail.tst");
-
-        Item itemOne = new Item(0L,
-                "Аккумуляторная дрель",
-                "Аккумуляторная дрель + аккумулятор",
-                true,
-                userOne,
-                null);
-
-        Booking bookingOne = new Booking(0L,
-                LocalDateTime.now().minusHours(24),
-                LocalDateTime.now().minusHours(12),
-                itemOne,
-                userTwo,
-                BookingStatus.APPROVED);
-
-        Booking bookingTwo = new Booking(0L,
-                LocalDateTime.now().minusHours(10),
-                LocalDateTime.now().minusHours(5),
-                itemOne,
-                userTwo,
-                BookingStatus.APPROVED);
-
-        ItemDto.Booking lastBooking = new ItemDto.Booking(2L, 2L);
-
-        em.persist(userOne);
-        em.persist(userTwo);
-        em.persist(itemOne);
-        em.persist(bookingOne);
-        em.persist(bookingTwo);
+    void searchEscaped() {
+        User owner = em.persist(new User(0L, "Owner", "Owner@mail.tst"));
+        Item percent = em.persist(new Item(0L, "Футболка", "100% хлопок", true, owner, null));
+        em.persist(new Item(0L, "Рубашка", "100 хлопок", true, owner, null));
+        Item underscore = em.persist(new Item(0L, "snake_case", "Кабель", true, owner, null));
+        em.persist(new Item(0L, "snakeXcase", "Кабель", true, owner, null));
+        Item backslash = em.persist(new Item(0L, "Путь C:\\tmp", "Папка", true, owner, null));
+
+        //% и _ ищутся как обычные символы, как в индексе вещей в памяти
+        assertEquals(List.of(percent), searchEscaped("0%"));
+        assertEquals(List.of(underscore), searchEscaped("e_c"));
+        assertEquals(List.of(backslash), searchEscaped(":\\t"));
+        assertEquals(1L, repository.countSearch(ItemRepository.escapeLike("%")));
+        assertEquals(List.of("snake_case"),
+                repository.findNamesByPrefix(ItemRepository.escapeLike("snake_"), PageRequest.of(0, 10)));
+    }
 
-        Object[] o = repository.findLastBooking(1L, new Date()).get(0);
-        assertEquals(lastBooking, new ItemDto.Booking(Long.valueOf(o[0].toString()), Long.valueOf(o[1].toString())));
+    private List<Item> searchEscaped(String text) {
+        return repository.search(ItemRepository.escapeLike(text), PageRequest.of(0, 10)).getContent();
     }
 
     @Test
-    void findNextBooking() {
+    void findLastAndNextBookings() {
         User userOne = new User(0L, "UserOne", "UserOne@mail.tst");
         User userTwo = new User(0L, "UserTwo", "UserTwo@mail.tst");
+        User userThree = new User(0L, "UserThree", "UserThree@mail.tst");
 
-        Item itemOne = new Item(0L,
-                "Аккумуляторная дрель",
-                "Аккумуляторная дрель + аккумулятор",
-                true,
-                userOne,
-                null);
+        Item itemOne = new Item(0L, "Аккумуляторная дрель", "Аккумуляторная дрель + аккумулятор", true, userOne, null);
+        Item itemTwo = new Item(0L, "Отвертка", "Аккумуляторная отвертка", true, userOne, null);
+        Item itemThree = new Item(0L, "Пила", "Ножовка", true, userOne, null);
 
-        Booking bookingOne = new Booking(0L,
-                LocalDateTime.now().plusHours(12),
-                LocalDateTime.now().plusHours(24),
-                itemOne,
-                userTwo,
+        LocalDateTime now = LocalDateTime.now();
+        Booking pastOld = new Booking(0L, now.minusHours(24), now.minusHours(12), itemOne, userTwo,
                 BookingStatus.APPROVED);
-
-        Booking bookingTwo = new Booking(0L,
-                LocalDateTime.now().plusHours(5),
-                LocalDateTime.now().plusHours(10),
-                itemOne,
-                userTwo,
+        Booking pastLast = new Booking(0L, now.minusHours(10), now.minusHours(5), itemOne, userThree,
+                BookingStatus.APPROVED);
+        Booking futureFar = new Booking(0L, now.plusHours(12), now.plusHours(24), itemOne, userTwo,
+                BookingStatus.APPROVED);
+        Booking futureNext = new Booking(0L, now.plusHours(5), now.plusHours(10), itemOne, userThree,
+                BookingStatus.WAITING);
+        Booking otherNext = new Booking(0L, now.plusHours(1), now.plusHours(2), itemTwo, userTwo,
                 BookingStatus.APPROVED);
-
-        ItemDto.Booking nextBooking = new ItemDto.Booking(2L, 2L);
 
         em.persist(userOne);
         em.persist(userTwo);
+        em.persist(userThree);
         em.persist(itemOne);
-        em.persist(bookingOne);
-        em.persist(bookingTwo);
+        em.persist(itemTwo);
+        em.persist(itemThree);
+        em.persist(pastOld);
+        em.persist(pastLast);
+        em.persist(futureFar);
+        em.persist(futureNext);
+        em.persist(otherNext);
+
+        //По каждой вещи не больше одного прошлого и одного будущего бронирования, вещи без бронирований нет
+        Map<String, ItemDto.Booking> refs = new HashMap<>();
+        for (ItemBookingRef ref : repository.findLastAndNextBookings(
+                List.of(itemOne.getId(), itemTwo.getId(), itemThree.getId()), new Date())) {
+            assertNull(refs.put(ref.getItemId() + ":" + ref.getLast(),
+                    new ItemDto.Booking(ref.getId(), ref.getBookerId())));
+        }
+
+        assertEquals(Map.of(itemOne.getId() + ":true", new ItemDto.Booking(pastLast.getId(), userThree.getId()),
+                            itemOne.getId() + ":false", new ItemDto.Booking(futureNext.getId(), userThree.getId()),
+                            itemTwo.getId() + ":false", new ItemDto.Booking(otherNext.getId(), userTwo.getId())),
+                     refs);
+    }
 
-        Object[] o = repository.findNextBooking(1L, new Date()).get(0);
-        assertEquals(nextBooking, new ItemDto.Booking(Long.valueOf(o[0].toString()), Long.valueOf(o[1].toString())));
+    @Test
+    void ownerPageStatementCount() {
+        User owner = new User(0L, "Owner", "Owner@mail.tst");
+        User booker = new User(0L, "Booker", "Booker@mail.tst");
+        em.persist(owner);
+        em.persist(booker);
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            User requestor = new User(0L, "Requestor" + i, "Requestor" + i + "@mail.tst");
+            ItemRequest request = new ItemRequest(0L, "Нужна дрель", requestor, null);
+            Item item = new Item(0L, "Дрель " + i, "Дрель", true, owner, request);
+            em.persist(requestor);
+            em.persist(request);
+            em.persist(item);
+            em.persist(new Booking(0L, now.minusHours(i + 2), now.minusHours(1), item, booker,
+                    BookingStatus.APPROVED));
+            em.persist(new Booking(0L, now.plusHours(i + 1), now.plusHours(i + 2), item, booker,
+                    BookingStatus.APPROVED));
+            em.persist(new Comment(0L, "Отлично", item, booker, now));
+            ids.add(item.getId());
+        }
+        em.flush();
+        em.clear();
+
+        Statistics statistics = em.getEntityManager()
+                .getEntityManagerFactory()
+                .unwrap(SessionFactory.class)
+                .getStatistics();
+        statistics.setStatisticsEnabled(true);
+
+        //Порция вещей владельца, их бронирования и отзывы - по одному запросу независимо от размера порции
+        statistics.clear();
+        List<ItemDto> page = repository.findItemsByOwnerIdOrderById(owner.getId(), PageRequest.of(0, 5))
+                .map(ItemMapper::toItemDto)
+                .getContent();
+        assertEquals(5, page.size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        statistics.clear();
+        assertEquals(10, repository.findLastAndNextBookings(ids, new Date()).size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        em.clear();
+        statistics.clear();
+        List<Comment> comments = commentRepository.findAllByItem_IdIn(ids);
+        comments.forEach(CommentMapper::toCommentDto);
+        assertEquals(5, comments.size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        statistics.setStatisticsEnabled(false);
     }
 }
@@ -74,6 +74,7 @@ class CommentServiceImplTest {
 
         Mockito.when(repository.saveAndFlush(any())).then(invocation -> invocation.getArgument(0));
         Mockito.when(repository.findAllByItem_Id(any())).thenReturn(List.of(comm));
+        Mockito.when(repository.findAllByItem_IdIn(any())).thenReturn(List.of(comm));
         Mockito.when(userService.getUser(1L)).thenReturn(userOne);
         Mockito.when(userService.getUser(2L)).thenReturn(userTwo);
         Mockito.when(itemService.getItem(1L)).thenReturn(item);
@@ -110,4 +111,15 @@ class CommentServiceImplTest {
         comments.get(0).setCreated(null);
         assertEquals(List.of(commentDto), comments);
     }
+
+    @Test
+    void findItemsComments() {
+        Map<Long, List<CommentDto>> comments = commentService.findItemsComments(List.of(1L, 2L));
+        comments.get(1L).get(0).setCreated(null);
+        assertEquals(Map.of(1L, List.of(commentDto)), comments);
+
+        //Для пустого списка вещей запрос не выполняется
+        assertEquals(Map.of(), commentService.findItemsComments(List.of()));
+        Mockito.verify(repository, Mockito.times(1)).findAllByItem_IdIn(any());
+    }
 }
@@ -0,0 +1,217 @@
+package ru.practicum.shareit.item.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import ru.practicum.shareit.item.ItemRepository;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.item.model.ItemText;
+import ru.practicum.shareit.user.User;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+
+class ItemSearchIndexTest {
+    private final ItemRepository repository = mock(ItemRepository.class);
+    private final User owner = new User(1L, "Owner", "Owner@mail.tst");
+
+    @Test
+    void find() {
+        ItemSearchIndex index = built(text(1L, "Аккумуляторная дрель", "Дрель + аккумулятор"),
+                                      text(2L, "Отвертка", "Аккумуляторная отвертка"),
+                                      text(3L, "Кабель ABCD", "Переходник CDAB"));
+
+        //Подстрока ищется без учёта регистра и в названии, и в описании
+        assertEquals(List.of(1L, 2L), index.find("аККум", 0, 10));
+        assertEquals(List.of(2L), index.find("аккум", 1, 10));
+        assertEquals(List.of(1L), index.find("аккум", 0, 1));
+        assertEquals(2L, index.count("аккум"));
+
+        //Триграммы запроса есть в названии и описании вещи по отдельности, но подстроки нет
+        assertEquals(List.of(3L), index.find("abcd", 0, 10));
+        assertEquals(List.of(), index.find("abcdab", 0, 10));
+        assertEquals(List.of(), index.find("молоток", 0, 10));
+
+        //Короткие запросы индекс не обслуживает
+        assertFalse(index.covers("ак"));
+        assertTrue(index.covers("акк"));
+    }
+
+    @Test
+    void update() {
+        ItemSearchIndex index = built(text(1L, "Аккумуляторная дрель", "Дрель"),
+                                      text(2L, "Отвертка", "Аккумуляторная отвертка"));
+
+        //Недоступная вещь удаляется из индекса, изменённая переиндексируется
+        index.update(new Item(1L, "Аккумуляторная дрель", "Дрель", false, owner, null));
+        index.update(new Item(2L, "Шуруповёрт", "Ударный шуруповёрт", true, owner, null));
+        index.update(new Item(5L, "Дрель ударная", "Сетевая дрель", true, owner, null));
+        assertEquals(List.of(), index.find("аккум", 0, 10));
+        assertEquals(List.of(2L), index.find("шуруп", 0, 10));
+        assertEquals(List.of(5L), index.find("дрель", 0, 10));
+
+        index.delete(5L);
+        assertEquals(List.of(), index.find("дрель", 0, 10));
+    }
+
+    @Test
+    void rebuild() {
+        ItemSearchIndex index = built(text(1L, "Аккумуляторная дрель", "Дрель"),
+                                      text(2L, "Отвертка", "Аккумуляторная отвертка"));
+
+        //Перестроение учитывает вещи, изменённые другими экземплярами, и изменения во время построения
+        Mockito.when(repository.findAvailableTextsAfter(eq(0L), any())).then(invocation -> {
+            //Пока новый индекс строится, поиск обслуживает прежний
+            assertEquals(List.of(1L, 2L), index.find("аккум", 0, 10));
+            index.update(new Item(1L, "Аккумуляторная дрель", "Дрель", false, owner, null));
+            return List.of(text(1L, "Аккумуляторная дрель", "Дрель"),
+                           text(3L, "Аккумуляторный шуруповёрт", "Шуруповёрт"));
+        });
+        Mockito.doReturn(List.of()).when(repository).findAvailableTextsAfter(eq(3L), any());
+        index.rebuild();
+
+        assertTrue(index.isReady());
+        assertEquals(List.of(3L), index.find("аккум", 0, 10));
+        assertEquals(List.of("Аккумуляторный шуруповёрт"), index.suggest("акк", 10));
+    }
+
+    @Test
+    void overflow() {
+        ItemSearchIndex index = built(text(1L, "Аккумуляторная дрель", "Дрель"));
+        long bigId = Integer.MAX_VALUE + 1L;
+
+        //Недоступную вещь с большим идентификатором индекс пропускает
+        index.update(new Item(bigId, "Дрель", "Сетевая дрель", false, owner, null));
+        index.delete(bigId);
+        assertTrue(index.isReady());
+
+        //Доступную вещь индекс учесть не может и передаёт поиск базе
+        index.update(new Item(bigId, "Дрель", "Сетевая дрель", true, owner, null));
+        assertFalse(index.isReady());
+        assertFalse(index.covers("дрель"));
+    }
+
+    @Test
+    void findFuzzy() {
+        ItemSearchIndex index = built(text(1L, "Аккумуляторная дрель", "Дрель + аккумулятор"),
+                                      text(2L, "Hammer", "Steel claw hammer"),
+                                      text(3L, "Дрель ударная", "Сетевая"),
+                                      text(4L, "Hammock", "Garden"));
+
+        //Слово запроса совпадает с началом слова вещи или отличается от него опечатками
+        assertEquals(List.of(1L, 3L), index.findFuzzy("дрел", 0, 10));
+        assertEquals(List.of(2L), index.findFuzzy("hammmer", 0, 10));
+        assertEquals(List.of(2L), index.findFuzzy("hamer", 0, 10));
+
+        //Все слова запроса должны совпасть, более близкие совпадения выдаются первыми
+        assertEquals(List.of(3L), index.findFuzzy("дрель удрная", 0, 10));
+        assertEquals(List.of(1L, 3L), index.findFuzzy("дрль", 0, 10));
+        assertEquals(List.of(1L), index.findFuzzy("аккумуляторнея", 0, 10));
+        assertEquals(1L, index.countFuzzy("аккумуляторнея"));
+
+        //Слова короче трёх символов ищутся только по началу слова
+        assertEquals(List.of(2L, 4L), index.findFuzzy("ham", 0, 10));
+        assertEquals(List.of(), index.findFuzzy("hx", 0, 10));
+        assertEquals(List.of(), index.findFuzzy("!!", 0, 10));
+
+        //Нечёткий поиск учитывает изменения вещей
+        index.delete(3L);
+        assertEquals(List.of(1L), index.findFuzzy("дрел", 0, 10));
+    }
+
+    @Test
+    void suggest() {
+        ItemSearchIndex index = built(text(1L, "Аккумуляторная дрель", "Дрель"),
+                                      text(2L, "Дрель", "Сетевая дрель"),
+                                      text(3L, "дрель", "Ещё одна дрель"),
+                                      text(4L, "Дрожжи", "Не вещь"));
+
+        //Сначала самые частые названия, затем по алфавиту, префикс ищется с начала каждого слова
+        assertEquals(List.of("Дрель", "Аккумуляторная дрель"), index.suggest("дрел", 10));
+        assertEquals(List.of("Дрель", "Аккумуляторная дрель", "Дрожжи"), index.suggest("др", 10));
+        assertEquals(List.of("Дрель"), index.suggest("др", 1));
+        assertEquals(List.of("Аккумуляторная дрель"), index.suggest("  аккумуляторная   д", 10));
+        assertEquals(List.of(), index.suggest("пила", 10));
+
+        //Подсказки обновляются при изменении и удалении вещей
+        index.update(new Item(2L, "Пила", "Пила", true, owner, null));
+        index.update(new Item(3L, "дрель", "Ещё одна дрель", false, owner, null));
+        index.delete(1L);
+        assertEquals(List.of("Дрожжи"), index.suggest("др", 10));
+        assertEquals(List.of("Пила"), index.suggest("пила", 10));
+    }
+
+    @Test
+    void distance() {
+        assertEquals(0, ItemTermDictionary.distance("ДРЕЛЬ", "ДРЕЛЬ", 2));
+        assertEquals(1, ItemTermDictionary.distance("HAMMMER", "HAMMER", 2));
+        assertEquals(2, ItemTermDictionary.distance("HAMR", "HAMMER", 2));
+        //Дальше наибольшего расстояния расстояние не считается
+        assertEquals(2, ItemTermDictionary.distance("ПИЛА", "ДРЕЛЬ", 1));
+    }
+
+    @Test
+    void withFullTextSearch() {
+        ItemSearchIndex index = built(true,
+                                      text(1L, "Аккумуляторная дрель", "Дрель + аккумулятор"),
+                                      text(2L, "Дрель ударная", "Сетевая"));
+
+        //Подстроку ищет полнотекстовый поиск базы, индекс обслуживает только нечёткий поиск и подсказки
+        assertFalse(index.covers("дрель"));
+        assertEquals(List.of(), index.find("дрель", 0, 10));
+        assertEquals(List.of(1L, 2L), index.findFuzzy("дрль", 0, 10));
+        assertEquals(List.of("Аккумуляторная дрель", "Дрель ударная"), index.suggest("дрел", 10));
+
+        index.update(new Item(2L, "Дрель ударная", "Сетевая", false, owner, null));
+        assertEquals(List.of(1L), index.findFuzzy("дрль", 0, 10));
+    }
+
+    @Test
+    void disabled() {
+        ItemSearchIndex index = new ItemSearchIndex(false, false, repository);
+        index.build();
+
+        assertFalse(index.covers("дрель"));
+        Mockito.verifyNoInteractions(repository);
+    }
+
+    private ItemSearchIndex built(ItemText... texts) {
+        return built(false, texts);
+    }
+
+    private ItemSearchIndex built(boolean fullTextSearch, ItemText... texts) {
+        List<ItemText> batch = List.of(texts);
+        Mockito.when(repository.findAvailableTextsAfter(eq(0L), any())).thenReturn(batch);
+        Mockito.when(repository.findAvailableTextsAfter(eq(texts[texts.length - 1].getId()), any()))
+                .thenReturn(List.of());
+
+        ItemSearchIndex index = new ItemSearchIndex(true, fullTextSearch, repository);
+        assertFalse(index.covers("дрель"));
+        index.build();
+        Mockito.verify(repository, Mockito.times(1)).findAvailableTextsAfter(anyLong(), any());
+        return index;
+    }
+
+    private static ItemText text(long id, String name, String description) {
+        return new ItemText() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public String getDescription() {
+                return description;
+            }
+        };
+    }
+}
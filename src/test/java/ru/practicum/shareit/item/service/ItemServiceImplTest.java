@@ -4,6 +4,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import ru.practicum.shareit.db.PostgresExtensions;
 import ru.practicum.shareit.errorHandle.exception.AccessForbiddenException;
 import ru.practicum.shareit.errorHandle.exception.EntityNotFoundException;
 import ru.practicum.shareit.errorHandle.exception.ValidationException;
@@ -11,15 +13,19 @@ import ru.practicum.shareit.item.ItemRepository;
 import ru.practicum.shareit.item.dto.CommentDto;
 import ru.practicum.shareit.item.dto.ItemDto;
 import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.item.model.ItemBookingRef;
+import ru.practicum.shareit.item.model.ItemSearchHit;
+import ru.practicum.shareit.paging.ApproximateCounter;
 import ru.practicum.shareit.requests.ItemRequest;
 import ru.practicum.shareit.requests.service.ItemRequestService;
 import ru.practicum.shareit.user.User;
 import ru.practicum.shareit.user.dto.UserDto;
 import ru.practicum.shareit.user.service.UserService;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -32,6 +38,7 @@ class ItemServiceImplTest {
     UserService userService;
     ItemRequestService requestService;
     CommentService commentService;
+    PostgresExtensions extensions;
 
     private final UserDto userDto = UserDto.builder()
             .id(1L)
@@ -83,24 +90,33 @@ class ItemServiceImplTest {
         userService = mock(UserService.class);
         requestService = mock(ItemRequestService.class);
         commentService = mock(CommentService.class);
+        extensions = mock(PostgresExtensions.class);
 
         Mockito.when(repository.saveAndFlush(any())).then(invocation -> invocation.getArgument(0));
         Mockito.when(repository.findById(1L)).thenReturn(Optional.of(item));
         Mockito.when(repository.findById(99L)).thenReturn(Optional.empty());
-        Mockito.when(repository.findLastBooking(any(), any()))
-                .thenReturn(Collections.singletonList(List.of(1L, 2L).toArray()));
+        List<ItemBookingRef> bookings = List.of(bookingRef(1L, true), bookingRef(1L, false),
+                                                bookingRef(2L, true), bookingRef(2L, false));
+        Mockito.when(repository.findLastAndNextBookings(any(), any())).thenReturn(bookings);
         Mockito.when(repository.findItemsByOwnerIdOrderById(any(), any()))
                 .thenReturn(new PageImpl<>(List.of(item, itemTwo)));
-        Mockito.when(repository.findNextBooking(any(), any()))
-                .thenReturn(Collections.singletonList(List.of(1L, 2L).toArray()));
         Mockito.when(repository.search(any(), any())).thenReturn(new PageImpl<>(List.of(item, itemTwo)));
         Mockito.when(repository.findAllByRequest_Id(any())).thenReturn(List.of(item, itemTwo));
 
         Mockito.when(userService.getUser(1L)).thenReturn(userOne);
         Mockito.when(requestService.getItemRequest(any())).thenReturn(itemRequest);
         Mockito.when(commentService.findItemComments(any())).thenReturn(List.of(commentDto));
-
-        itemService = new ItemServiceImpl(userService, requestService, repository, commentService);
+        Mockito.when(commentService.findItemsComments(any()))
+                .thenReturn(Map.of(1L, List.of(commentDto), 2L, List.of(commentDto)));
+
+        itemService = new ItemServiceImpl(userService,
+                requestService,
+                repository,
+                commentService,
+                new ApproximateCounter(Duration.ofSeconds(30)),
+                new ItemSearchIndex(false, false, repository),
+                extensions,
+                false);
     }
 
     @Test
@@ -172,7 +188,12 @@ class ItemServiceImplTest {
         assertThrows(IllegalArgumentException.class, () -> itemService.getAllUserItems(1L, -1, 1));
         assertThrows(IllegalArgumentException.class, () -> itemService.getAllUserItems(1L, 0, -1));
 
-        assertEquals(List.of(itemDtoOne, itemDtoTwo), itemService.getAllUserItems(1L, 0, 1));
+        assertEquals(List.of(itemDtoOne, itemDtoTwo), itemService.getAllUserItems(1L, 0, 1).getContent());
+
+        //Бронирования и отзывы загружаются одним запросом на всю порцию
+        Mockito.verify(repository).findLastAndNextBookings(eq(List.of(1L, 2L)), any());
+        Mockito.verify(commentService).findItemsComments(List.of(1L, 2L));
+        Mockito.verify(commentService, Mockito.never()).findItemComments(any());
     }
 
     @Test
@@ -194,10 +215,86 @@ class ItemServiceImplTest {
                 .build();
 
         //Некорректные параметры порции данных должны вызывать исключение
-        assertThrows(IllegalArgumentException.class, () -> itemService.searchItems("test", -1, 1));
-        assertThrows(IllegalArgumentException.class, () -> itemService.searchItems("test", 0, -1));
+        assertThrows(IllegalArgumentException.class, () -> itemService.searchItems("test", -1, 1, false));
+        assertThrows(IllegalArgumentException.class, () -> itemService.searchItems("test", 0, -1, false));
+
+        assertEquals(List.of(itemDtoOne, itemDtoTwo), itemService.searchItems("test", 0, 1, false).getContent());
+    }
+
+    @Test
+    void searchItemsFullText() {
+        ItemService fullTextService = new ItemServiceImpl(userService,
+                requestService,
+                repository,
+                commentService,
+                new ApproximateCounter(Duration.ofSeconds(30)),
+                new ItemSearchIndex(false, false, repository),
+                extensions,
+                true);
+        List<Long> ids = List.of(2L, 1L);
+        List<Item> items = List.of(item, itemTwo);
+        List<ItemSearchHit> hits = List.of(hit(2L, 0.9f), hit(1L, 0.2f));
+        Mockito.when(repository.searchFullText(any(), any())).thenReturn(new PageImpl<>(hits));
+        Mockito.when(repository.findAllByIdIn(ids)).thenReturn(items);
+        Mockito.when(repository.countSearchFullText("дрели")).thenReturn(2L);
+
+        //Вещи выдаются в порядке релевантности из полнотекстового запроса
+        assertEquals(List.of(2L, 1L),
+                fullTextService.searchItems("дрели", 0, 2, false).map(ItemDto::getId).getContent());
+        assertEquals(2L, fullTextService.countSearchItems("дрели", false));
+        Mockito.verify(repository, Mockito.never()).search(any(), any());
+    }
+
+    @Test
+    void searchItemsFuzzyWithoutIndex() {
+        //Без индекса в памяти и без PostgreSQL нечёткий поиск отклоняется, а не подменяется обычным
+        assertThrows(ValidationException.class, () -> itemService.searchItems("дрль", 0, 2, true));
+        assertThrows(ValidationException.class, () -> itemService.countSearchItems("дрль", true));
+        Mockito.verify(repository, Mockito.never()).search(any(), any());
+
+        //С расширением pg_trgm до построения индекса нечёткий поиск выполняется в базе
+        Mockito.when(extensions.isInstalled(PostgresExtensions.PG_TRGM)).thenReturn(true);
+        ItemService fullTextService = new ItemServiceImpl(userService,
+                requestService,
+                repository,
+                commentService,
+                new ApproximateCounter(Duration.ofSeconds(30)),
+                new ItemSearchIndex(true, true, repository),
+                extensions,
+                true);
+        Mockito.when(repository.searchFuzzy(any(), any()))
+                .thenReturn(new PageImpl<>(List.of(hit(2L, 0.8f), hit(1L, 0.6f))));
+        Mockito.when(repository.findAllByIdIn(List.of(2L, 1L))).thenReturn(List.of(item, itemTwo));
+        Mockito.when(repository.countSearchFuzzy("дрль")).thenReturn(2L);
+
+        assertEquals(List.of(2L, 1L),
+                fullTextService.searchItems("дрль", 0, 2, true).map(ItemDto::getId).getContent());
+        assertEquals(2L, fullTextService.countSearchItems("дрль", true));
+        Mockito.verify(repository, Mockito.never()).searchFullText(any(), any());
+    }
+
+    private static ItemSearchHit hit(long id, float rank) {
+        return new ItemSearchHit() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public Float getRank() {
+                return rank;
+            }
+        };
+    }
 
-        assertEquals(List.of(itemDtoOne, itemDtoTwo), itemService.searchItems("test", 0, 1));
+    @Test
+    void suggestNames() {
+        Mockito.when(repository.findNamesByPrefix(any(), any())).thenReturn(List.of("Аккумуляторная дрель"));
+
+        //До построения индекса подсказки читаются из базы, размер ограничен числом подсказок в индексе
+        assertEquals(List.of(), itemService.suggestNames(" ", 5));
+        assertEquals(List.of("Аккумуляторная дрель"), itemService.suggestNames(" акк", 50));
+        Mockito.verify(repository).findNamesByPrefix("акк", PageRequest.of(0, ItemNameTrie.TOP_K));
     }
 
     @Test
@@ -252,4 +349,28 @@ class ItemServiceImplTest {
         Mockito.verify(repository, Mockito.times(1))
                 .deleteById(anyLong());
     }
+
+    private static ItemBookingRef bookingRef(long itemId, boolean last) {
+        return new ItemBookingRef() {
+            @Override
+            public Long getItemId() {
+                return itemId;
+            }
+
+            @Override
+            public Long getId() {
+                return 1L;
+            }
+
+            @Override
+            public Long getBookerId() {
+                return 2L;
+            }
+
+            @Override
+            public Boolean getLast() {
+                return last;
+            }
+        };
+    }
 }
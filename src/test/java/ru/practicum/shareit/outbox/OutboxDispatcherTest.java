@@ -0,0 +1,229 @@
+package ru.practicum.shareit.outbox;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OutboxDispatcherTest {
+    private static final Duration LOCK_TIME = Duration.ofMinutes(1);
+
+    @Autowired
+    private OutboxRepository repository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final List<OutboxEvent> received = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void beforeEach() {
+        repository.deleteAll();
+        for (long i = 1; i <= 5; i++) {
+            repository.save(new OutboxEvent(0L, OutboxEventType.BOOKING_CREATED, i % 3, 1L, 1L, 2L, null, 0, null, null));
+        }
+    }
+
+    @Test
+    void dispatch() {
+        OutboxDispatcher dispatcher = new OutboxDispatcher(repository, transactionManager, List.of(received::addAll),
+                2, 2, 3, LOCK_TIME);
+
+        //События отправляются пакетами по batch-size, пока таблица не опустеет
+        dispatcher.dispatch();
+        dispatcher.shutdown();
+
+        assertEquals(5, received.size());
+        assertEquals(0, repository.count());
+
+        //События одного бронирования отправляются в порядке создания
+        List<Long> sameBooking = received.stream()
+                .filter(event -> event.getBookingId() == 1L)
+                .map(OutboxEvent::getId)
+                .collect(Collectors.toList());
+        assertEquals(sameBooking.stream().sorted().collect(Collectors.toList()), sameBooking);
+    }
+
+    @Test
+    void dispatchFailure() {
+        OutboxSink failing = events -> {
+            received.addAll(events);
+            throw new IllegalStateException("sink is down");
+        };
+        MutableClock clock = new MutableClock(Instant.now());
+        OutboxDispatcher dispatcher = new OutboxDispatcher(repository, transactionManager, List.of(failing),
+                10, 2, 2, LOCK_TIME, clock);
+
+        //Недоставленные события остаются в таблице, счётчик попыток растёт,
+        //следующие события тех же бронирований не отправляются
+        assertEquals(0, dispatcher.dispatchBatch());
+        assertEquals(5, repository.count());
+        assertEquals(List.of(1, 1, 1, 0, 0), attempts());
+        assertEquals(3, received.size());
+
+        //До истечения захвата недоставленные события повторно не отправляются
+        assertEquals(0, dispatcher.dispatchBatch());
+        assertEquals(3, received.size());
+
+        //После max-attempts попыток событие переводится в состояние DEAD и больше не отправляется,
+        //как и следующие события того же бронирования
+        clock.plus(LOCK_TIME.multipliedBy(2));
+        assertEquals(0, dispatcher.dispatchBatch());
+        clock.plus(LOCK_TIME.multipliedBy(2));
+        assertEquals(0, dispatcher.dispatchBatch());
+        assertEquals(List.of(2, 2, 2, 0, 0), attempts());
+        assertEquals(List.of(OutboxStatus.DEAD, OutboxStatus.DEAD, OutboxStatus.DEAD,
+                             OutboxStatus.PENDING, OutboxStatus.PENDING), statuses());
+        assertEquals(6, received.size());
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void dispatchInOrderAfterFailure() {
+        AtomicInteger failures = new AtomicInteger(1);
+        OutboxSink flaky = events -> {
+            if (failures.getAndDecrement() > 0) {
+                throw new IllegalStateException("sink is down");
+            }
+            received.addAll(events);
+        };
+        List<Long> ids = repository.findAll().stream()
+                .map(OutboxEvent::getId)
+                .sorted()
+                .collect(Collectors.toList());
+        MutableClock clock = new MutableClock(Instant.now());
+        OutboxDispatcher dispatcher = new OutboxDispatcher(repository, transactionManager, List.of(flaky),
+                10, 1, 3, LOCK_TIME, clock);
+
+        //После сбоя события бронирований доставляются в порядке создания
+        assertEquals(0, dispatcher.dispatchBatch());
+        clock.plus(LOCK_TIME.multipliedBy(2));
+        dispatcher.dispatch();
+        dispatcher.shutdown();
+
+        assertEquals(ids, received.stream().map(OutboxEvent::getId).collect(Collectors.toList()));
+        assertEquals(0, repository.count());
+    }
+
+    @Test
+    void dispatchConcurrently() throws Exception {
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        OutboxSink slow = events -> {
+            received.addAll(events);
+            sending.countDown();
+            await(release);
+        };
+        OutboxDispatcher first = new OutboxDispatcher(repository, transactionManager, List.of(slow), 10, 1, 3, LOCK_TIME);
+        OutboxDispatcher second = new OutboxDispatcher(repository, transactionManager, List.of(received::addAll),
+                10, 1, 3, LOCK_TIME);
+
+        //Пакет, захваченный одним экземпляром, другой экземпляр не отправляет. Захват не удерживает
+        //блокировки строк во время отправки, поэтому второй экземпляр не ждёт её окончания
+        CompletableFuture<Integer> firstBatch = CompletableFuture.supplyAsync(first::dispatchBatch);
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+        assertEquals(0, second.dispatchBatch());
+        release.countDown();
+
+        assertEquals(3, firstBatch.get(5, TimeUnit.SECONDS));
+        first.dispatch();
+        assertEquals(5, received.size());
+        assertEquals(0, repository.count());
+        first.shutdown();
+        second.shutdown();
+    }
+
+    @Test
+    void dispatchAfterLockExpired() {
+        //События захвачены экземпляром, остановленным до окончания отправки
+        LocalDateTime now = LocalDateTime.now();
+        repository.lock(repository.findAll().stream()
+                        .map(OutboxEvent::getId)
+                        .collect(Collectors.toList()),
+                now.plus(LOCK_TIME));
+        OutboxDispatcher dispatcher = new OutboxDispatcher(repository, transactionManager, List.of(received::addAll),
+                10, 1, 3, LOCK_TIME);
+        OutboxDispatcher later = new OutboxDispatcher(repository, transactionManager, List.of(received::addAll),
+                10, 1, 3, LOCK_TIME, Clock.offset(Clock.systemDefaultZone(), LOCK_TIME.multipliedBy(2)));
+
+        //До истечения захвата события не отправляются, после него отправляются повторно
+        assertEquals(0, dispatcher.dispatchBatch());
+        later.dispatch();
+        assertEquals(5, received.size());
+        assertEquals(0, repository.count());
+        dispatcher.shutdown();
+        later.shutdown();
+    }
+
+    private List<Integer> attempts() {
+        return repository.findAll().stream()
+                .sorted(Comparator.comparing(OutboxEvent::getId))
+                .map(OutboxEvent::getAttempts)
+                .collect(Collectors.toList());
+    }
+
+    private List<OutboxStatus> statuses() {
+        return repository.findAll().stream()
+                .sorted(Comparator.comparing(OutboxEvent::getId))
+                .map(OutboxEvent::getStatus)
+                .collect(Collectors.toList());
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void plus(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package ru.practicum.shareit.paging;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ApproximateCounterTest {
+
+    @Test
+    void count() {
+        AtomicLong loads = new AtomicLong();
+        Clock start = Clock.fixed(Instant.parse("2022-09-01T10:00:00Z"), ZoneOffset.UTC);
+        ApproximateCounter counter = new ApproximateCounter(Duration.ofSeconds(30), start);
+
+        assertEquals(1, counter.count("key", loads::incrementAndGet));
+        //В пределах времени жизни значение берётся из кэша
+        assertEquals(1, counter.count("key", loads::incrementAndGet));
+        //Разные ключи считаются независимо
+        assertEquals(2, counter.count("other", loads::incrementAndGet));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void countExpired() {
+        AtomicLong loads = new AtomicLong();
+        Instant now = Instant.parse("2022-09-01T10:00:00Z");
+        ApproximateCounter first = new ApproximateCounter(Duration.ofSeconds(30),
+                Clock.fixed(now, ZoneOffset.UTC));
+        assertEquals(1, first.count("key", loads::incrementAndGet));
+
+        ApproximateCounter counter = new ApproximateCounter(Duration.ZERO, Clock.fixed(now, ZoneOffset.UTC));
+        assertEquals(2, counter.count("key", loads::incrementAndGet));
+        //С нулевым временем жизни значение каждый раз считается заново
+        assertEquals(3, counter.count("key", loads::incrementAndGet));
+    }
+}
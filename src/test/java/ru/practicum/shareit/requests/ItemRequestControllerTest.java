@@ -7,6 +7,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
@@ -87,7 +88,7 @@ class ItemRequestControllerTest {
     @Test
     void getOthersItemRequests() throws Exception {
         Mockito.when(itemRequestService.getOthers(any(), any(), any()))
-                .thenReturn(List.of(itemRequestDto, itemRequestDtoTwo));
+                .thenReturn(new SliceImpl<>(List.of(itemRequestDto, itemRequestDtoTwo)));
 
         mockMvc.perform(get("/requests/all")
                         .header("X-Sharer-User-Id", "2")
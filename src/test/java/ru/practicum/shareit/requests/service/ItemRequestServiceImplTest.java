@@ -8,6 +8,7 @@ import ru.practicum.shareit.errorHandle.exception.EntityNotFoundException;
 import ru.practicum.shareit.errorHandle.exception.ValidationException;
 import ru.practicum.shareit.item.dto.ItemDto;
 import ru.practicum.shareit.item.service.ItemService;
+import ru.practicum.shareit.paging.ApproximateCounter;
 import ru.practicum.shareit.requests.ItemRequest;
 import ru.practicum.shareit.requests.ItemRequestRepository;
 import ru.practicum.shareit.requests.dto.ItemRequestDto;
@@ -15,6 +16,7 @@ import ru.practicum.shareit.user.User;
 import ru.practicum.shareit.user.dto.UserDto;
 import ru.practicum.shareit.user.service.UserService;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
@@ -88,7 +90,10 @@ class ItemRequestServiceImplTest {
         Mockito.when(userService.getUser(1L)).thenReturn(userOne);
         Mockito.when(userService.getUser(2L)).thenReturn(userTwo);
 
-        itemRequestService = new ItemRequestServiceImpl(repository, userService, itemService);
+        itemRequestService = new ItemRequestServiceImpl(repository,
+                userService,
+                itemService,
+                new ApproximateCounter(Duration.ofSeconds(30)));
     }
 
     @Test
@@ -129,6 +134,6 @@ class ItemRequestServiceImplTest {
         assertThrows(IllegalArgumentException.class, () -> itemRequestService.getOthers(2L, -1, 1));
         assertThrows(IllegalArgumentException.class, () -> itemRequestService.getOthers(2L, 0, -1));
 
-        assertEquals(List.of(itemRequestDto), itemRequestService.getOthers(2L, 0, 1));
+        assertEquals(List.of(itemRequestDto), itemRequestService.getOthers(2L, 0, 1).getContent());
     }
 }